@@ -0,0 +1,59 @@
+package benchmarks;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+
+import controllers.CodeManager;
+import models.RedeemCode;
+import storage.Storage;
+
+// Measures CodeManager.generateCodes throughput with 1 thread and with every core.
+//   java -cp bin benchmarks.CodeGenerationBenchmark [codeCount...]
+// Each run starts from an empty code file in the temp folder and checks that no code came out twice.
+public class CodeGenerationBenchmark {
+	public static void main(String[] args) {
+		int[] codeCounts = { 100_000, 1_000_000 };
+		if (args.length > 0) {
+			codeCounts = new int[args.length];
+			for (int i = 0; i < args.length; i++) {
+				codeCounts[i] = Integer.parseInt(args[i]);
+			}
+		}
+
+		// Keep the real codes file out of it
+		Storage.setFormat(Storage.Format.MEMORY);
+
+		int cores = Runtime.getRuntime().availableProcessors();
+		int[] threadCounts = cores > 1 ? new int[] { 1, cores } : new int[] { 1 };
+		File dir = new File(System.getProperty("java.io.tmpdir"), "hangpies-code-generation");
+		dir.mkdirs();
+
+		System.out.printf("%12s %8s %12s %14s %10s%n", "codes", "threads", "time(ms)", "codes/sec", "unique");
+
+		for (int codeCount : codeCounts) {
+			for (int threads : threadCounts) {
+				File codeFile = new File(dir, "codes-" + codeCount + "-" + threads + ".dat");
+				codeFile.delete();
+
+				CodeManager codeManager = new CodeManager(codeFile.getPath());
+				codeManager.setGeneratorThreads(threads);
+
+				long start = System.nanoTime();
+				int created = codeManager.generateCodes(codeCount, 100);
+				long elapsed = System.nanoTime() - start;
+
+				Set<String> unique = new HashSet<>();
+				for (RedeemCode code : codeManager.getAllCodes()) {
+					unique.add(code.getCodeString());
+				}
+
+				System.out.printf("%12d %8d %12d %14.0f %10s%n", created, threads, elapsed / 1_000_000,
+						codeManager.getLastGenerationRate(), unique.size() == created ? "yes" : "NO");
+
+				codeManager.shutdown();
+				codeFile.delete();
+			}
+		}
+	}
+}
@@ -0,0 +1,426 @@
+package benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import storage.ListingCodec;
+import utils.WordBank;
+
+// Writes a complete, consistent set of data files for load testing: users, their inventories,
+// listings, purchases, redeem codes, battle saves and the activity log, in the same text formats
+// the controllers read. Everything refers to things that exist: pets use products from
+// products.txt, listed pets and saved battles belong to their user, log lines and purchases
+// belong to real players. Everything is written as it is generated (only one user's pets are
+// held at a time), so the size is limited by the disk, not the heap.
+//   java -cp bin benchmarks.DataGenerator <folder> [setting=value...]
+// e.g. java -cp bin benchmarks.DataGenerator /tmp/big users=2000000 petsMax=50000 logLinesPerUser=100
+// Settings (see the fields below for what they mean): users, petsMin, petsAlpha, petsMax,
+// listingShare, listingsMax, purchasesPerUser, codes, usedCodeShare, saveShare, logLinesPerUser,
+// activitySkew, days, seed, products.
+// Binary storage (-Dhangpies.storage=binary) reads these .txt files on first start and converts them.
+public class DataGenerator {
+	private static final DateTimeFormatter LOG_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+	private static final String CODE_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+	private static final String[][] ENEMIES = { { "Riekling Scout", "enemies/enemies/goblin" },
+			{ "Spriggan", "enemies/enemies/mushroom" }, { "Draugr", "enemies/enemies/skeleton" },
+			{ "Frost Atronach", "enemies/enemies/blue" }, { "Molag Bal", "enemies/boss/boss2" } };
+	private static final String[] FIRST_NAMES = { "King", "Lydia", "Ulfric", "Serana", "Farkas", "Aela", "Brynjolf",
+			"Delphine", "Esbern", "Mjoll" };
+	private static final String[] LAST_NAMES = { "Septim", "Stormcloak", "Black-Briar", "Gray-Mane", "Snow-Shod",
+			"Battle-Born", "Shatter-Shield", "Silver-Blood" };
+
+	private int users = 1000;
+
+	// Pets per user follow a Pareto distribution: most players own a few (at least petsMin),
+	// a few own thousands. Lower petsAlpha = heavier tail. Nobody owns more than petsMax.
+	private int petsMin = 1;
+	private double petsAlpha = 1.5;
+	private int petsMax = 10_000;
+
+	// Share of users with pets on the marketplace, each with 1 to listingsMax of them
+	private double listingShare = 0.1;
+	private int listingsMax = 3;
+
+	// Shop purchases and log lines are spread over the players, the active ones getting more:
+	// activitySkew 1 is even, higher puts more of it on the first players
+	private double purchasesPerUser = 3;
+	private double logLinesPerUser = 10;
+	private double activitySkew = 2;
+
+	// Redeem codes; -1 means one per ten users
+	private int codes = -1;
+	private double usedCodeShare = 0.5;
+
+	// Share of users in the middle of a battle
+	private double saveShare = 0.05;
+
+	// Purchases and log lines are spread over this many days, ending today
+	private int days = 30;
+	private long seed = 42;
+	private String products = "products.txt";
+
+	private Random random;
+	private List<String[]> productRows;
+
+	// What was written, for the summary
+	private long petCount;
+	private long listingCount;
+	private long purchaseCount;
+	private long saveCount;
+	private long logLineCount;
+	private int largestInventory;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("Usage: java -cp bin benchmarks.DataGenerator <folder> [setting=value...]");
+			return;
+		}
+
+		DataGenerator generator = new DataGenerator();
+		for (int i = 1; i < args.length; i++) {
+			generator.set(args[i]);
+		}
+
+		File dir = new File(args[0]);
+		long start = System.nanoTime();
+		generator.generate(dir);
+		System.out.println(generator.getSummary());
+		System.out.printf("Written to %s in %d ms%n", dir, (System.nanoTime() - start) / 1_000_000);
+	}
+
+	public void setUsers(int users) {
+		this.users = users;
+	}
+
+	// Applies a "setting=value" argument, e.g. "petsMax=50000"
+	public void set(String setting) {
+		int equals = setting.indexOf('=');
+		if (equals < 0) {
+			throw new IllegalArgumentException("Expected setting=value, got " + setting);
+		}
+		String value = setting.substring(equals + 1);
+
+		switch (setting.substring(0, equals)) {
+		case "users":
+			users = Integer.parseInt(value);
+			break;
+		case "petsMin":
+			petsMin = Integer.parseInt(value);
+			break;
+		case "petsAlpha":
+			petsAlpha = Double.parseDouble(value);
+			break;
+		case "petsMax":
+			petsMax = Integer.parseInt(value);
+			break;
+		case "listingShare":
+			listingShare = Double.parseDouble(value);
+			break;
+		case "listingsMax":
+			listingsMax = Integer.parseInt(value);
+			break;
+		case "purchasesPerUser":
+			purchasesPerUser = Double.parseDouble(value);
+			break;
+		case "logLinesPerUser":
+			logLinesPerUser = Double.parseDouble(value);
+			break;
+		case "activitySkew":
+			activitySkew = Double.parseDouble(value);
+			break;
+		case "codes":
+			codes = Integer.parseInt(value);
+			break;
+		case "usedCodeShare":
+			usedCodeShare = Double.parseDouble(value);
+			break;
+		case "saveShare":
+			saveShare = Double.parseDouble(value);
+			break;
+		case "days":
+			days = Integer.parseInt(value);
+			break;
+		case "seed":
+			seed = Long.parseLong(value);
+			break;
+		case "products":
+			products = value;
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown setting " + setting.substring(0, equals));
+		}
+	}
+
+	/**
+	 * Writes all data files into 'dir', replacing what's there (other files are left alone).
+	 * The same settings and seed always give the same users, pets and codes.
+	 */
+	public void generate(File dir) throws IOException {
+		File productFile = new File(products);
+		if (!productFile.exists()) {
+			throw new IOException("No products found at " + productFile.getAbsolutePath());
+		}
+
+		productRows = new ArrayList<>();
+		for (String line : Files.readAllLines(productFile.toPath())) {
+			if (!line.isBlank() && !line.startsWith("//")) {
+				productRows.add(line.split("\\|"));
+			}
+		}
+		if (productRows.isEmpty()) {
+			throw new IOException(productFile + " has no products");
+		}
+
+		dir.mkdirs();
+		if (!productFile.getAbsoluteFile().equals(new File(dir, "products.txt").getAbsoluteFile())) {
+			Files.copy(productFile.toPath(), new File(dir, "products.txt").toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		random = new Random(seed);
+		petCount = listingCount = purchaseCount = saveCount = logLineCount = 0;
+		largestInventory = 0;
+
+		writeUsers(dir);
+		writeCodes(dir);
+
+		LocalDateTime end = LocalDateTime.now().withNano(0);
+		writePurchases(dir, end.minusDays(days), end);
+		writeActivityLog(dir, end.minusDays(days), end);
+	}
+
+	// users.txt, inventories.txt, listings.txt and saves.txt, one user at a time
+	private void writeUsers(File dir) throws IOException {
+		try (PrintWriter userOut = writer(dir, "users.txt");
+				PrintWriter inventoryOut = writer(dir, "inventories.txt");
+				PrintWriter listingOut = writer(dir, "listings.txt");
+				PrintWriter saveOut = writer(dir, "saves.txt")) {
+			userOut.println("// FORMAT: username|password|isAdmin|firstName|lastName|contactNum|goldBalance|worldLvl|progressLvl");
+			inventoryOut.println("// uniqueId|ownerUsername|productId|customName|level|currentExp");
+			listingOut.println(new ListingCodec().getHeader());
+			saveOut.println("// FORMAT: username|secretWord|clue|guessedLetters|enemyName|enemyHp|enemyMaxHp|enemyAtk|enemyImageFolder|enemyLevel|playerPetId|playerPetHp");
+
+			userOut.println("admin|admin123|true|Admin|User|09123456789|0.0|1|1");
+
+			List<String[]> pets = new ArrayList<>();
+			for (int i = 0; i < users; i++) {
+				String username = username(i);
+				int worldLevel = 1 + random.nextInt(5);
+				int progressLevel = 1 + random.nextInt(5);
+
+				userOut.println(username + "|password" + i + "|false|" + pick(FIRST_NAMES) + "|" + pick(LAST_NAMES) + "|09"
+						+ (100_000_000 + random.nextInt(900_000_000)) + "|" + random.nextInt(100_000) + ".0|" + worldLevel
+						+ "|" + progressLevel);
+
+				// The pets this user ever got; the listed ones left the inventory when they went on sale
+				pets.clear();
+				int petTotal = petCountForUser();
+				for (int p = 0; p < petTotal; p++) {
+					pets.add(newPet(worldLevel));
+				}
+
+				int listed = 0;
+				if (petTotal > 1 && random.nextDouble() < listingShare) {
+					listed = Math.min(petTotal - 1, 1 + random.nextInt(listingsMax));
+				}
+				for (int p = 0; p < listed; p++) {
+					writeListing(listingOut, username, pets.get(p));
+				}
+
+				for (int p = listed; p < pets.size(); p++) {
+					String[] pet = pets.get(p);
+					inventoryOut.println(pet[0] + "|" + username + "|" + pet[1] + "|" + pet[2] + "|" + pet[3] + "|" + pet[4]);
+				}
+				petCount += petTotal - listed;
+				largestInventory = Math.max(largestInventory, petTotal - listed);
+
+				if (petTotal > listed && random.nextDouble() < saveShare) {
+					writeSave(saveOut, username, pets.get(listed), worldLevel, progressLevel);
+				}
+			}
+		}
+	}
+
+	// Pareto: petsMin / U^(1 / alpha), capped at petsMax
+	private int petCountForUser() {
+		double u = 1 - random.nextDouble();
+		return (int) Math.min(petsMax, Math.floor(petsMin / Math.pow(u, 1 / petsAlpha)));
+	}
+
+	// { uniqueId, productId, name, level, currentExp, maxHealth, attack, description }
+	private String[] newPet(int worldLevel) {
+		String[] product = pick(productRows);
+		int level = 1 + random.nextInt(worldLevel);
+		int exp = random.nextInt(level * 10);
+
+		// +1 HP and +1 ATK per level, like Hangpie.levelUp()
+		int maxHealth = Integer.parseInt(product[4]) + level - 1;
+		int attack = Integer.parseInt(product[6]) + level - 1;
+		return new String[] { new UUID(random.nextLong(), random.nextLong()).toString(), product[0], product[1],
+				String.valueOf(level), String.valueOf(exp), String.valueOf(maxHealth), String.valueOf(attack), product[2] };
+	}
+
+	private void writeListing(PrintWriter out, String seller, String[] pet) {
+		out.println(pet[0] + "|" + seller + "|" + (100 + random.nextInt(9_900)) + ".0|" + pet[1] + "|" + pet[2] + "|"
+				+ pet[3] + "|" + pet[5] + "|" + pet[6] + "|" + pet[7] + "|" + pet[4]);
+		listingCount++;
+	}
+
+	// A battle left halfway, with some letters guessed and some HP lost
+	private void writeSave(PrintWriter out, String username, String[] pet, int worldLevel, int progressLevel) {
+		WordBank.WordData word = WordBank.getRandomWord(worldLevel, progressLevel);
+		String secretWord = word.word.toUpperCase();
+
+		StringBuilder guessed = new StringBuilder();
+		for (char c : secretWord.toCharArray()) {
+			if (c != ' ' && random.nextInt(3) == 0 && guessed.indexOf(String.valueOf(c)) < 0) {
+				guessed.append(c);
+			}
+		}
+
+		String[] enemy = progressLevel == 5 ? ENEMIES[ENEMIES.length - 1] : ENEMIES[random.nextInt(ENEMIES.length - 1)];
+		int enemyMaxHp = 10 + (worldLevel - 1) * 5 + (progressLevel == 5 ? 5 : 0);
+		int enemyAtk = 1 + (worldLevel - 1) + (progressLevel == 5 ? 1 : 0);
+		int petMaxHp = Integer.parseInt(pet[5]);
+
+		out.println(username + "|" + secretWord + "|" + word.clue + "|" + guessed + "|" + enemy[0] + "|"
+				+ (1 + random.nextInt(enemyMaxHp)) + "|" + enemyMaxHp + "|" + enemyAtk + "|" + enemy[1] + "|" + worldLevel
+				+ "|" + pet[0] + "|" + (1 + random.nextInt(petMaxHp)));
+		saveCount++;
+	}
+
+	// codes.txt, the used ones mixed in with the rest
+	private void writeCodes(File dir) throws IOException {
+		int count = codes < 0 ? Math.max(1, users / 10) : codes;
+
+		try (PrintWriter out = writer(dir, "codes.txt")) {
+			out.println("// Format: codeString|goldValue|isUsed");
+			char[] code = new char[14];
+
+			for (int i = 0; i < count; i++) {
+				// Same shape as CodeManager's codes (XXXX-XXXX-XXXX), with the number in the last part
+				// so no two codes can be the same
+				for (int c = 0; c < 9; c++) {
+					code[c] = c == 4 ? '-' : CODE_CHARS.charAt(random.nextInt(CODE_CHARS.length()));
+				}
+				code[9] = '-';
+				int n = i;
+				for (int c = 13; c >= 10; c--) {
+					code[c] = CODE_CHARS.charAt(n % CODE_CHARS.length());
+					n /= CODE_CHARS.length();
+				}
+				if (n > 0) {
+					// Over 36^4 codes: let the middle part carry the rest of the number
+					for (int c = 8; c >= 5 && n > 0; c--) {
+						code[c] = CODE_CHARS.charAt(n % CODE_CHARS.length());
+						n /= CODE_CHARS.length();
+					}
+				}
+
+				out.println(new String(code) + "|" + (100 * (1 + random.nextInt(10))) + ".0|"
+						+ (random.nextDouble() < usedCodeShare));
+			}
+		}
+	}
+
+	// purchases.txt, oldest first, at the prices in products.txt
+	private void writePurchases(File dir, LocalDateTime from, LocalDateTime to) throws IOException {
+		long total = Math.round(users * purchasesPerUser);
+		long stepNanos = users == 0 || total == 0 ? 0 : Duration.between(from, to).toNanos() / total;
+		LocalDateTime time = from;
+
+		try (PrintWriter out = writer(dir, "purchases.txt")) {
+			out.println();
+			for (long i = 0; i < total && users > 0; i++) {
+				String[] product = pick(productRows);
+				time = time.plusNanos(1 + (long) (random.nextDouble() * 2 * stepNanos));
+				if (time.isAfter(to)) {
+					time = to;
+				}
+				out.println(username(activeUser()) + "|" + product[0] + "|" + product[1] + "|" + product[3] + "|" + time);
+				purchaseCount++;
+			}
+		}
+	}
+
+	// activity_log.txt, oldest first
+	private void writeActivityLog(File dir, LocalDateTime from, LocalDateTime to) throws IOException {
+		long total = Math.round(users * logLinesPerUser);
+		long stepMillis = users == 0 || total == 0 ? 0 : Duration.between(from, to).toMillis() / total;
+		LocalDateTime time = from;
+
+		try (PrintWriter out = writer(dir, "activity_log.txt")) {
+			for (long i = 0; i < total && users > 0; i++) {
+				time = time.plusNanos((long) (random.nextDouble() * 2 * stepMillis) * 1_000_000);
+				if (time.isAfter(to)) {
+					time = to;
+				}
+				out.println("[" + LOG_TIME.format(time) + "] | " + username(activeUser()) + " | " + logMessage());
+				logLineCount++;
+			}
+		}
+	}
+
+	// The same messages the views log
+	private String logMessage() {
+		int kind = random.nextInt(10);
+		if (kind < 5) {
+			return "Logged in successfully.";
+		} else if (kind < 7) {
+			String[] product = pick(productRows);
+			return "Bought " + product[1] + " from the Shop for " + product[3] + "G.";
+		} else if (kind < 8) {
+			return "Listed " + pick(productRows)[1] + " on the P2P Marketplace for " + (100 + random.nextInt(9_900))
+					+ ".0G.";
+		} else if (kind < 9) {
+			return "Redeemed code " + randomCode() + " for " + (100 * (1 + random.nextInt(10))) + ".0G.";
+		}
+		return "Sold " + pick(productRows)[1] + " to the Shop for " + (50 + random.nextInt(250)) + ".0G.";
+	}
+
+	private String randomCode() {
+		StringBuilder code = new StringBuilder();
+		for (int c = 0; c < 14; c++) {
+			code.append(c == 4 || c == 9 ? '-' : CODE_CHARS.charAt(random.nextInt(CODE_CHARS.length())));
+		}
+		return code.toString();
+	}
+
+	// Index of a player, the lower indexes being the more active ones
+	private int activeUser() {
+		return (int) Math.min(users - 1, users * Math.pow(random.nextDouble(), activitySkew));
+	}
+
+	private static String username(int index) {
+		return "player" + index;
+	}
+
+	private <T> T pick(List<T> items) {
+		return items.get(random.nextInt(items.size()));
+	}
+
+	private <T> T pick(T[] items) {
+		return items[random.nextInt(items.length)];
+	}
+
+	private static PrintWriter writer(File dir, String fileName) throws IOException {
+		return new PrintWriter(new BufferedWriter(new FileWriter(new File(dir, fileName)), 1 << 16));
+	}
+
+	public String getSummary() {
+		return String.format("%,d users, %,d pets (largest inventory %,d), %,d listings, %,d purchases, %,d codes, "
+				+ "%,d saves, %,d log lines", users, petCount, largestInventory, listingCount, purchaseCount,
+				codes < 0 ? Math.max(1, users / 10) : codes, saveCount, logLineCount);
+	}
+}
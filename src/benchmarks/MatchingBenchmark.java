@@ -0,0 +1,138 @@
+package benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+import controllers.BuyOrderManager;
+import controllers.GoldLedger;
+import controllers.ListingManager;
+import controllers.LogManager;
+import controllers.MarketEngine;
+import controllers.ProductManager;
+import controllers.PurchaseManager;
+import controllers.TransactionManager;
+import controllers.UnitOfWork;
+import controllers.UserManager;
+import models.BuyOrder;
+import models.Hangpie;
+import models.User;
+import storage.Storage;
+
+// Measures the MarketEngine with one product's order book:
+//   place+cancel  buy orders below every listing, so they rest in the book, then cancelled
+//   match         buy orders above the listings, so each one fills a listing right away
+// Every order is sent at once and the time runs until the last result is in, so "syncs/op" shows
+// how the fills share the TransactionManager's group commit.
+//   java -cp bin benchmarks.MatchingBenchmark [listings] [buyers]   (default 20000 1000)
+// Run from the project folder (it needs products.txt).
+public class MatchingBenchmark {
+	public static void main(String[] args) throws Exception {
+		int listingCount = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+		int buyerCount = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+
+		ProductManager productManager = new ProductManager();
+		if (productManager.getProductCount() == 0) {
+			System.err.println("No products found. Run this from the folder that contains products.txt");
+			return;
+		}
+		Hangpie product = productManager.getAllProducts().iterator().next();
+
+		// Listings and orders stay in memory, the journal goes to the temp folder
+		Storage.setFormat(Storage.Format.MEMORY);
+		File dir = new File(System.getProperty("java.io.tmpdir"), "hangpies-matching");
+		dir.mkdirs();
+		for (File file : dir.listFiles()) {
+			file.delete();
+		}
+
+		// Every fill writes two activity log lines, kept out of the real log
+		LogManager.useDirectory(dir.getPath());
+
+		UserManager userManager = new UserManager(productManager, new File(dir, "users.txt").getPath(),
+				new File(dir, "inventories.txt").getPath());
+		PurchaseManager purchaseManager = new PurchaseManager(new File(dir, "purchases.txt").getPath(),
+				new File(dir, "purchase_counts.txt").getPath(), new File(dir, "purchases.idx").getPath());
+		ListingManager listingManager = new ListingManager(new File(dir, "listings.txt").getPath());
+		BuyOrderManager buyOrderManager = new BuyOrderManager(new File(dir, "buy_orders.txt").getPath());
+
+		List<User> sellers = createUsers(userManager, "seller", 100);
+		List<User> buyers = createUsers(userManager, "buyer", buyerCount);
+
+		GoldLedger goldLedger = new GoldLedger(userManager, new File(dir, "gold_ledger.txt").getPath());
+		TransactionManager transactionManager = new TransactionManager(userManager, listingManager, purchaseManager,
+				goldLedger, buyOrderManager);
+
+		// Listed before the engine starts, so it picks them all up when it loads its books
+		Random random = new Random(42);
+		UnitOfWork listings = transactionManager.begin();
+		for (int i = 0; i < listingCount; i++) {
+			listings.createListing(sellers.get(i % sellers.size()), new Hangpie(product), 100 + random.nextInt(100));
+		}
+		listings.commit();
+
+		MarketEngine engine = new MarketEngine(userManager, productManager, listingManager, buyOrderManager,
+				goldLedger, transactionManager);
+
+		System.out.printf("%,d listings, %,d buyers%n", listingManager.getListingCount(), buyerCount);
+		System.out.printf("%-14s %10s %10s %12s %10s%n", "phase", "ops", "time(ms)", "ops/sec", "syncs/op");
+
+		// 1. Orders that rest in the book, then cancelled
+		long groups = transactionManager.getGroupCount();
+		long start = System.nanoTime();
+
+		List<CompletableFuture<MarketEngine.Result>> placed = new ArrayList<>();
+		for (int i = 0; i < listingCount; i++) {
+			placed.add(engine.placeOrder(buyers.get(i % buyerCount), product.getId(), 1 + random.nextInt(50), 0));
+		}
+		CompletableFuture.allOf(placed.toArray(new CompletableFuture<?>[0])).join();
+
+		List<CompletableFuture<MarketEngine.Result>> cancelled = new ArrayList<>();
+		for (User buyer : buyers) {
+			for (BuyOrder order : buyOrderManager.getOrdersOf(buyer.getUsername())) {
+				cancelled.add(engine.cancelOrder(buyer, order.getId()));
+			}
+		}
+		CompletableFuture.allOf(cancelled.toArray(new CompletableFuture<?>[0])).join();
+
+		report("place+cancel", placed.size() + cancelled.size(), start, transactionManager.getGroupCount() - groups);
+
+		// 2. Orders that each fill the best listing
+		groups = transactionManager.getGroupCount();
+		long matches = engine.getMatchCount();
+		start = System.nanoTime();
+
+		List<CompletableFuture<MarketEngine.Result>> filled = new ArrayList<>();
+		for (int i = 0; i < listingCount; i++) {
+			filled.add(engine.placeOrder(buyers.get(i % buyerCount), product.getId(), 250, 0));
+		}
+		CompletableFuture.allOf(filled.toArray(new CompletableFuture<?>[0])).join();
+
+		report("match", engine.getMatchCount() - matches, start, transactionManager.getGroupCount() - groups);
+
+		engine.shutdown();
+		transactionManager.shutdown();
+		userManager.shutdown();
+		purchaseManager.shutdown();
+		LogManager.shutdown();
+	}
+
+	private static List<User> createUsers(UserManager userManager, String prefix, int count) {
+		List<User> users = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			User user = new User(prefix + i, "password", false, "First", "Last", "09000000000");
+			user.addGold(10_000_000);
+			userManager.createAccount(user);
+			users.add(user);
+		}
+		return users;
+	}
+
+	private static void report(String phase, long ops, long start, long groups) {
+		long elapsed = System.nanoTime() - start;
+		System.out.printf("%-14s %10d %10d %12.0f %10.3f%n", phase, ops, elapsed / 1_000_000, ops * 1e9 / elapsed,
+				(double) groups / Math.max(1, ops));
+	}
+}
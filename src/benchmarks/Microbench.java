@@ -0,0 +1,323 @@
+package benchmarks;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * A small microbenchmark harness in the spirit of JMH (which needs a build tool we don't have).
+ * Every benchmark runs at each of its sizes in fresh JVMs (forks), with warmup iterations that are
+ * thrown away and measured iterations that are averaged over all forks. Reports time and bytes
+ * allocated per operation, with the 99.9% confidence interval of the time, and writes a CSV.
+ *
+ * Options (all optional, in any order):
+ *   regex       only run benchmarks whose name matches
+ *   -f n        forks per benchmark and size (default 2)
+ *   -wi n       warmup iterations per fork (default 3)
+ *   -i n        measured iterations per fork (default 5)
+ *   -r ms       length of one iteration (default 1000)
+ *   -s a,b,c    run at these sizes instead of the benchmark's own
+ *   -o file     CSV report (default microbenchmarks.csv)
+ * JVM options given to the harness (e.g. -Xms2g -Xmx2g) are passed on to the forks.
+ * Allocation is only counted on the benchmark thread, not in background writers.
+ */
+public class Microbench {
+	// One benchmark. A new instance is made in every fork.
+	public interface Benchmark {
+		// Builds the data for 'size' in an empty folder. Not timed.
+		default void setup(int size, File dir) throws Exception {
+		}
+
+		// Called before every iteration. Not timed.
+		default void beforeIteration() throws Exception {
+		}
+
+		// The measured operation. Return what it produced so the JIT can't drop the work.
+		Object run() throws Exception;
+
+		// Operations that can only run a limited number of times (e.g. redeeming codes) return how
+		// many each iteration runs instead of running for the iteration time. 0 = time based.
+		default int getBatchSize(int iterations) {
+			return 0;
+		}
+
+		default void tearDown() throws Exception {
+		}
+	}
+
+	private static class Entry {
+		private String name;
+		private int[] sizes;
+		private Supplier<Benchmark> factory;
+	}
+
+	// Student's t for a two-sided 99.9% interval, by degrees of freedom (like JMH reports)
+	private static final int[] T_DEGREES = { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 12, 15, 20, 30, 60 };
+	private static final double[] T_VALUES = { 636.62, 31.60, 12.92, 8.61, 6.87, 5.96, 5.41, 5.04, 4.78, 4.59, 4.32,
+			4.07, 3.85, 3.65, 3.46 };
+	private static final String RESULT_PREFIX = "ITERATION|";
+
+	private final List<Entry> entries = new ArrayList<>();
+	private long sink;
+
+	public void add(String name, int[] sizes, Supplier<Benchmark> factory) {
+		Entry entry = new Entry();
+		entry.name = name;
+		entry.sizes = sizes;
+		entry.factory = factory;
+		entries.add(entry);
+	}
+
+	/**
+	 * Runs the benchmarks the arguments ask for. 'mainClass' is the suite whose main() registered
+	 * them; the forks start it again with "--fork name size ..." and report back their iterations.
+	 */
+	public void run(String[] args, Class<?> mainClass) throws Exception {
+		if (args.length > 0 && args[0].equals("--fork")) {
+			runFork(args);
+			return;
+		}
+
+		Pattern filter = null;
+		int forks = 2;
+		int warmups = 3;
+		int iterations = 5;
+		int iterationMillis = 1000;
+		int[] sizes = null;
+		String reportFile = "microbenchmarks.csv";
+
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-f":
+				forks = Integer.parseInt(args[++i]);
+				break;
+			case "-wi":
+				warmups = Integer.parseInt(args[++i]);
+				break;
+			case "-i":
+				iterations = Integer.parseInt(args[++i]);
+				break;
+			case "-r":
+				iterationMillis = Integer.parseInt(args[++i]);
+				break;
+			case "-s":
+				String[] parts = args[++i].split(",");
+				sizes = new int[parts.length];
+				for (int p = 0; p < parts.length; p++) {
+					sizes[p] = Integer.parseInt(parts[p].trim());
+				}
+				break;
+			case "-o":
+				reportFile = args[++i];
+				break;
+			default:
+				filter = Pattern.compile(args[i]);
+			}
+		}
+
+		System.out.printf("%d forks, %d warmup + %d measured iterations of %d ms%n%n", forks, warmups, iterations,
+				iterationMillis);
+		System.out.printf("%-28s %10s %14s %12s %14s%n", "benchmark", "size", "ns/op", "error", "bytes/op");
+
+		try (PrintWriter report = new PrintWriter(new BufferedWriter(new FileWriter(reportFile)))) {
+			report.println("benchmark,size,forks,iterations,ns_per_op,error_ns,bytes_per_op,ops");
+
+			for (Entry entry : entries) {
+				if (filter != null && !filter.matcher(entry.name).find()) {
+					continue;
+				}
+
+				for (int size : sizes != null ? sizes : entry.sizes) {
+					List<double[]> results = new ArrayList<>();
+					for (int fork = 0; fork < forks; fork++) {
+						results.addAll(runInFork(mainClass, entry.name, size, warmups, iterations, iterationMillis));
+					}
+
+					if (results.isEmpty()) {
+						System.out.printf("%-28s %10d %14s%n", entry.name, size, "FAILED");
+						continue;
+					}
+
+					double[] time = new double[results.size()];
+					double bytes = 0;
+					long ops = 0;
+					for (int r = 0; r < results.size(); r++) {
+						time[r] = results.get(r)[0];
+						bytes += results.get(r)[1];
+						ops += (long) results.get(r)[2];
+					}
+					bytes /= results.size();
+
+					double mean = mean(time);
+					double error = error(time, mean);
+					System.out.printf("%-28s %10d %14.1f %12s %14.0f%n", entry.name, size, mean,
+							Double.isNaN(error) ? "" : String.format("+- %.1f", error), bytes);
+					report.printf("%s,%d,%d,%d,%.1f,%.1f,%.0f,%d%n", entry.name, size, forks, results.size(), mean,
+							Double.isNaN(error) ? 0 : error, bytes, ops);
+					report.flush();
+				}
+			}
+		}
+		System.out.println("\nReport written to " + reportFile);
+	}
+
+	// Starts a fresh JVM for one fork and collects its measured iterations: { ns/op, bytes/op, ops }
+	private List<double[]> runInFork(Class<?> mainClass, String name, int size, int warmups, int iterations,
+			int iterationMillis) throws IOException, InterruptedException {
+		List<String> command = new ArrayList<>();
+		command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+		command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(mainClass.getName());
+		command.add("--fork");
+		command.add(name);
+		command.add(String.valueOf(size));
+		command.add(String.valueOf(warmups));
+		command.add(String.valueOf(iterations));
+		command.add(String.valueOf(iterationMillis));
+
+		Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+		List<double[]> results = new ArrayList<>();
+
+		try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.startsWith(RESULT_PREFIX)) {
+					String[] parts = line.substring(RESULT_PREFIX.length()).split("\\|");
+					results.add(new double[] { Double.parseDouble(parts[0]), Double.parseDouble(parts[1]),
+							Double.parseDouble(parts[2]) });
+				} else if (!line.startsWith("[System]")) {
+					// Anything else is a warning or an exception from the fork
+					System.err.println("  " + line);
+				}
+			}
+		}
+
+		if (process.waitFor() != 0) {
+			System.err.println("[Warning]: " + name + " (" + size + ") exited with code " + process.exitValue());
+		}
+		return results;
+	}
+
+	// The fork side: one benchmark at one size, printing one line per measured iteration
+	private void runFork(String[] args) throws Exception {
+		String name = args[1];
+		int size = Integer.parseInt(args[2]);
+		int warmups = Integer.parseInt(args[3]);
+		int iterations = Integer.parseInt(args[4]);
+		long iterationNanos = Long.parseLong(args[5]) * 1_000_000;
+
+		Entry entry = null;
+		for (Entry candidate : entries) {
+			if (candidate.name.equals(name)) {
+				entry = candidate;
+			}
+		}
+		if (entry == null) {
+			throw new IllegalArgumentException("No benchmark called " + name);
+		}
+
+		File dir = new File(System.getProperty("java.io.tmpdir"), "hangpies-microbench-" + ProcessHandle.current().pid());
+		deleteFolder(dir);
+		dir.mkdirs();
+
+		Benchmark benchmark = entry.factory.get();
+		try {
+			benchmark.setup(size, dir);
+			int batchSize = benchmark.getBatchSize(warmups + iterations);
+
+			for (int i = 0; i < warmups + iterations; i++) {
+				benchmark.beforeIteration();
+
+				long allocatedBefore = allocatedBytes();
+				long start = System.nanoTime();
+				long ops = 0;
+				long elapsed;
+
+				do {
+					sink ^= System.identityHashCode(benchmark.run());
+					ops++;
+					elapsed = System.nanoTime() - start;
+				} while (batchSize > 0 ? ops < batchSize : elapsed < iterationNanos);
+
+				long allocated = allocatedBytes() - allocatedBefore;
+				if (i >= warmups) {
+					System.out.println(RESULT_PREFIX + ((double) elapsed / ops) + "|" + ((double) allocated / ops) + "|" + ops);
+				}
+			}
+		} finally {
+			benchmark.tearDown();
+			deleteFolder(dir);
+		}
+
+		// Keeps the results alive as far as the JIT can tell
+		if (sink == 42) {
+			System.out.println("[System]: " + sink);
+		}
+		Runtime.getRuntime().halt(0);
+	}
+
+	private static long allocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getCurrentThreadAllocatedBytes();
+		}
+		return 0;
+	}
+
+	private static double mean(double[] values) {
+		double sum = 0;
+		for (double value : values) {
+			sum += value;
+		}
+		return sum / values.length;
+	}
+
+	// Half-width of the 99.9% confidence interval of the mean, NaN with a single iteration
+	private static double error(double[] values, double mean) {
+		if (values.length < 2) {
+			return Double.NaN;
+		}
+
+		double squares = 0;
+		for (double value : values) {
+			squares += (value - mean) * (value - mean);
+		}
+		double deviation = Math.sqrt(squares / (values.length - 1));
+
+		int degrees = values.length - 1;
+		double t = 3.29;
+		for (int i = 0; i < T_DEGREES.length; i++) {
+			if (degrees <= T_DEGREES[i]) {
+				t = T_VALUES[i];
+				break;
+			}
+		}
+		return t * deviation / Math.sqrt(values.length);
+	}
+
+	static void deleteFolder(File dir) {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.isDirectory()) {
+					deleteFolder(file);
+				} else {
+					file.delete();
+				}
+			}
+		}
+		dir.delete();
+	}
+}
@@ -0,0 +1,374 @@
+package benchmarks;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import controllers.CodeManager;
+import controllers.GoldLedger;
+import controllers.ListingPage;
+import controllers.ListingQuery;
+import controllers.ListingManager;
+import controllers.ProductManager;
+import controllers.PurchaseManager;
+import controllers.SaveManager;
+import controllers.UserManager;
+import models.BattleState;
+import models.Hangpie;
+import models.LedgerEntry;
+import models.Listing;
+import models.RedeemCode;
+import models.User;
+import storage.InventoryRow;
+import storage.InventoryRowCodec;
+import storage.TextRecordStore;
+import storage.UserCodec;
+
+// Microbenchmarks for the persistence paths, each at a few data sizes (see Microbench for options).
+//   java -Xms2g -Xmx2g -cp bin benchmarks.PersistenceBenchmark [regex] [-f 2] [-wi 3] [-i 5] [-s sizes]
+// Run from the project folder (it needs products.txt). The data comes from DataGenerator with a
+// fixed seed, so every run measures the same files.
+//   users.load / users.save             UserManager startup / compaction (full rewrite) at n users
+//   gold.post                           n gold transfers between users, saved with one GoldLedger.post
+//   listings.load / listings.save       ListingManager startup / one listing saved, n listings
+//   listings.page                       two ListingManager.query pages from a random cursor, n listings
+//   codes.redeem                        CodeManager.redeemCode with n codes
+//   purchases.forUser / .topMostBought  PurchaseManager queries over n purchases
+//   saves.saveBattle                    SaveManager.saveBattle + flush with n saves
+//   parse.users / parse.inventories     the text codecs' parsing of n rows
+public class PersistenceBenchmark {
+	public static void main(String[] args) throws Exception {
+		Microbench bench = new Microbench();
+
+		bench.add("users.load", new int[] { 1_000, 10_000, 100_000 }, () -> new Microbench.Benchmark() {
+			private ProductManager productManager;
+			private File dir;
+
+			@Override
+			public void setup(int size, File dir) throws Exception {
+				this.dir = dir;
+				productManager = new ProductManager();
+				generate(dir, "users=" + size);
+			}
+
+			@Override
+			public Object run() {
+				UserManager userManager = new UserManager(productManager, file(dir, "users.txt"),
+						file(dir, "inventories.txt"));
+				userManager.shutdown();
+				return userManager;
+			}
+		});
+
+		bench.add("users.save", new int[] { 1_000, 10_000, 100_000 }, () -> new Microbench.Benchmark() {
+			private UserManager userManager;
+			private User user;
+
+			@Override
+			public void setup(int size, File dir) throws Exception {
+				generate(dir, "users=" + size);
+				userManager = new UserManager(new ProductManager(), file(dir, "users.txt"), file(dir, "inventories.txt"));
+				user = userManager.getUserByUsername("player0");
+			}
+
+			@Override
+			public Object run() {
+				user.addGold(1);
+				userManager.updateUser(user);
+				userManager.compact();
+				return user;
+			}
+
+			@Override
+			public void tearDown() {
+				userManager.shutdown();
+			}
+		});
+
+		bench.add("gold.post", new int[] { 100, 1_000, 10_000 }, () -> new Microbench.Benchmark() {
+			private UserManager userManager;
+			private GoldLedger goldLedger;
+			private User[] users;
+			private int count;
+
+			@Override
+			public void setup(int size, File dir) throws Exception {
+				count = size;
+				generate(dir, "users=1000");
+				userManager = new UserManager(new ProductManager(), file(dir, "users.txt"), file(dir, "inventories.txt"));
+				goldLedger = new GoldLedger(userManager, file(dir, "gold_ledger.txt"));
+				users = userManager.getAllUsers().toArray(new User[0]);
+				for (User user : users) {
+					user.addGold(size);
+				}
+			}
+
+			@Override
+			public Object run() {
+				// Passes one gold along the users, so the balances barely change between runs
+				List<LedgerEntry> entries = new ArrayList<>(count * 2);
+				for (int i = 0; i < count; i++) {
+					User from = users[i % users.length];
+					User to = users[(i + 1) % users.length];
+					entries.addAll(goldLedger.transfer(from, to, 1, LedgerEntry.Reason.MARKET_BUY,
+							LedgerEntry.Reason.MARKET_SALE, "bench"));
+				}
+				goldLedger.post(entries);
+				return entries;
+			}
+
+			@Override
+			public void tearDown() {
+				userManager.shutdown();
+			}
+		});
+
+		bench.add("listings.load", new int[] { 1_000, 10_000, 100_000 }, () -> new Microbench.Benchmark() {
+			private File dir;
+
+			@Override
+			public void setup(int size, File dir) throws Exception {
+				this.dir = dir;
+				generate(dir, "users=" + size, "petsMin=2", "listingShare=1", "listingsMax=1");
+			}
+
+			@Override
+			public Object run() {
+				return new ListingManager(file(dir, "listings.txt"));
+			}
+		});
+
+		bench.add("listings.save", new int[] { 1_000, 10_000, 100_000 }, () -> new Microbench.Benchmark() {
+			private ListingManager listingManager;
+			private User seller;
+			private Hangpie pet;
+
+			@Override
+			public void setup(int size, File dir) throws Exception {
+				generate(dir, "users=" + size, "petsMin=2", "listingShare=1", "listingsMax=1");
+				listingManager = new ListingManager(file(dir, "listings.txt"));
+				seller = new User("player0", "password0", false, "First", "Last", "09000000000");
+				pet = new Hangpie(new ProductManager().getAllProducts().iterator().next());
+			}
+
+			@Override
+			public Object run() {
+				// Replaces the same listing every time, so the file stays the same size
+				listingManager.createListing(seller, pet, 500);
+				return listingManager;
+			}
+		});
+
+		bench.add("listings.page", new int[] { 1_000, 10_000, 100_000 }, () -> new Microbench.Benchmark() {
+			private ListingManager listingManager;
+			private Listing[] cursors;
+			private String[] products;
+			private int next;
+
+			@Override
+			public void setup(int size, File dir) throws Exception {
+				generate(dir, "users=" + size, "petsMin=2", "listingShare=1", "listingsMax=1");
+				listingManager = new ListingManager(file(dir, "listings.txt"));
+
+				// Starts pages at random places in the list, like someone deep into browsing
+				cursors = listingManager.getAllListings().toArray(new Listing[0]);
+				Collections.shuffle(Arrays.asList(cursors), new Random(42));
+				products = new ProductManager().getAllProducts().stream().map(Hangpie::getId).toArray(String[]::new);
+			}
+
+			@Override
+			public Object run() {
+				// One page of all listings by price, then one of a single product by level
+				Listing cursor = cursors[next++ % cursors.length];
+				ListingPage page = listingManager.query(new ListingQuery().limit(15).after(cursor));
+				ListingPage byProduct = listingManager.query(new ListingQuery().product(products[next % products.length])
+						.sort(ListingQuery.Sort.LEVEL_HIGH).limit(15).after(cursor));
+				return page.getListings().size() + byProduct.getListings().size();
+			}
+		});
+
+		bench.add("codes.redeem", new int[] { 10_000, 100_000, 1_000_000 }, () -> new Microbench.Benchmark() {
+			private CodeManager codeManager;
+			private String[] codes;
+			private int next;
+
+			@Override
+			public void setup(int size, File dir) {
+				codeManager = new CodeManager(file(dir, "codes.dat"));
+				codeManager.generateCodes(size, 100);
+
+				List<String> created = new ArrayList<>();
+				for (RedeemCode code : codeManager.getAllCodes()) {
+					created.add(code.getCodeString());
+				}
+				codes = created.toArray(new String[0]);
+			}
+
+			// Every code can only be redeemed once, so the iterations share the codes
+			@Override
+			public int getBatchSize(int iterations) {
+				return codes.length / iterations;
+			}
+
+			@Override
+			public Object run() {
+				return codeManager.redeemCode(codes[next++]);
+			}
+
+			@Override
+			public void tearDown() {
+				codeManager.shutdown();
+			}
+		});
+
+		bench.add("purchases.forUser", new int[] { 10_000, 100_000, 1_000_000 }, () -> new Microbench.Benchmark() {
+			private PurchaseManager purchaseManager;
+			private Random random = new Random(42);
+			private int users;
+
+			@Override
+			public void setup(int size, File dir) throws Exception {
+				users = Math.max(1, size / 10);
+				purchaseManager = purchases(dir, users);
+			}
+
+			@Override
+			public Object run() {
+				return purchaseManager.getPurchasesForUser("player" + random.nextInt(users));
+			}
+
+			@Override
+			public void tearDown() {
+				purchaseManager.shutdown();
+			}
+		});
+
+		bench.add("purchases.topMostBought", new int[] { 10_000, 100_000, 1_000_000 }, () -> new Microbench.Benchmark() {
+			private PurchaseManager purchaseManager;
+
+			@Override
+			public void setup(int size, File dir) throws Exception {
+				purchaseManager = purchases(dir, Math.max(1, size / 10));
+			}
+
+			@Override
+			public Object run() {
+				return purchaseManager.getTopMostBought();
+			}
+
+			@Override
+			public void tearDown() {
+				purchaseManager.shutdown();
+			}
+		});
+
+		bench.add("saves.saveBattle", new int[] { 100, 1_000, 10_000 }, () -> new Microbench.Benchmark() {
+			private SaveManager saveManager;
+			private BattleState state;
+
+			@Override
+			public void setup(int size, File dir) throws Exception {
+				generate(dir, "users=" + size, "saveShare=1");
+				saveManager = new SaveManager(file(dir, "saves.txt"));
+				saveManager.setDebounceMillis(0);
+				state = saveManager.getAllSaves().iterator().next();
+			}
+
+			// Leaving the arena: the save is written before the player moves on
+			@Override
+			public Object run() {
+				saveManager.saveBattle(state);
+				saveManager.flush();
+				return state;
+			}
+
+			@Override
+			public void tearDown() {
+				saveManager.shutdown();
+			}
+		});
+
+		bench.add("parse.users", new int[] { 1_000, 10_000, 100_000 }, () -> new Microbench.Benchmark() {
+			private TextRecordStore<User> store;
+			private List<String> lines;
+
+			@Override
+			public void setup(int size, File dir) throws Exception {
+				generate(dir, "users=" + size);
+				store = new TextRecordStore<>(file(dir, "users.txt"), new UserCodec());
+				lines = rows(dir, "users.txt");
+			}
+
+			@Override
+			public Object run() {
+				User last = null;
+				for (String line : lines) {
+					last = store.decode(line);
+				}
+				return last;
+			}
+		});
+
+		bench.add("parse.inventories", new int[] { 1_000, 10_000, 100_000 }, () -> new Microbench.Benchmark() {
+			private TextRecordStore<InventoryRow> store;
+			private List<String> lines;
+
+			@Override
+			public void setup(int size, File dir) throws Exception {
+				// About 'size' rows: everyone owns exactly one pet
+				generate(dir, "users=" + size, "petsAlpha=1000");
+				store = new TextRecordStore<>(file(dir, "inventories.txt"), new InventoryRowCodec());
+				lines = rows(dir, "inventories.txt");
+			}
+
+			@Override
+			public Object run() {
+				InventoryRow last = null;
+				for (String line : lines) {
+					last = store.decode(line);
+				}
+				return last;
+			}
+		});
+
+		bench.run(args, PersistenceBenchmark.class);
+	}
+
+	// Writes a data folder; only what the setting asks for, no purchases, codes or log
+	private static void generate(File dir, String... settings) throws Exception {
+		DataGenerator generator = new DataGenerator();
+		generator.set("purchasesPerUser=0");
+		generator.set("logLinesPerUser=0");
+		generator.set("codes=0");
+		generator.set("saveShare=0");
+		for (String setting : settings) {
+			generator.set(setting);
+		}
+		generator.generate(dir);
+	}
+
+	// Ten purchases per user, indexed once before the measurement starts
+	private static PurchaseManager purchases(File dir, int users) throws Exception {
+		generate(dir, "users=" + users, "purchasesPerUser=10");
+		return new PurchaseManager(file(dir, "purchases.txt"), file(dir, "purchase_counts.txt"),
+				file(dir, "purchases.idx"));
+	}
+
+	private static List<String> rows(File dir, String fileName) throws Exception {
+		List<String> rows = new ArrayList<>();
+		for (String line : Files.readAllLines(new File(dir, fileName).toPath())) {
+			if (!line.startsWith("//") && !line.isBlank()) {
+				rows.add(line);
+			}
+		}
+		return rows;
+	}
+
+	private static String file(File dir, String fileName) {
+		return new File(dir, fileName).getPath();
+	}
+}
@@ -0,0 +1,66 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import controllers.ProductManager;
+import models.Hangpie;
+import models.PetId;
+
+// Measures how much heap one owned pet takes. Builds 'count' pets the way inventories.txt is
+// loaded (a copy of the product with its stored ID, name, level and EXP) and compares the used
+// heap after a GC before and after. The pet IDs are measured separately, so the two columns show
+// what the Hangpie objects cost and what their IDs cost.
+// Run from the project folder (it needs products.txt), with a heap that fits the pets:
+//   java -Xmx2g -cp bin benchmarks.PetHeapBenchmark [count]   (default 1000000)
+public class PetHeapBenchmark {
+	public static void main(String[] args) {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+		List<Hangpie> products = new ArrayList<>(new ProductManager().getAllProducts());
+		if (products.isEmpty()) {
+			System.err.println("No products found. Run this from the folder that contains products.txt");
+			return;
+		}
+
+		long before = usedHeapAfterGc();
+		PetId[] ids = new PetId[count];
+		for (int i = 0; i < count; i++) {
+			ids[i] = PetId.random();
+		}
+		long withIds = usedHeapAfterGc();
+
+		Hangpie[] pets = new Hangpie[count];
+		for (int i = 0; i < count; i++) {
+			Hangpie product = products.get(i % products.size());
+			Hangpie pet = new Hangpie(product, ids[i]);
+			pet.setName(product.getName());
+			pet.setLevel(1 + i % 5);
+			pet.setCurrentExp(i % 10);
+			pet.setCurrentHealth(pet.getMaxHealth());
+			pets[i] = pet;
+		}
+		long withPets = usedHeapAfterGc();
+
+		double idBytes = (double) (withIds - before) / count;
+		double petBytes = (double) (withPets - withIds) / count;
+		System.out.printf("%,d pets%n", count);
+		System.out.printf("%-16s %10s%n", "", "bytes/pet");
+		System.out.printf("%-16s %10.1f%n", "Hangpie", petBytes);
+		System.out.printf("%-16s %10.1f%n", "ID", idBytes);
+		System.out.printf("%-16s %10.1f%n", "total", petBytes + idBytes);
+
+		// Keeps both arrays reachable until the last measurement
+		if (pets.length != ids.length) {
+			System.out.println("[System]: " + pets[0]);
+		}
+	}
+
+	private static long usedHeapAfterGc() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,202 @@
+package benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.DoubleAdder;
+
+import controllers.CodeManager;
+import models.RedeemCode;
+import storage.Storage;
+
+// Hammers CodeManager from many threads at once and checks that every code pays out exactly once.
+//   java -cp bin benchmarks.RedeemStressBenchmark [threads] [rounds] [codes]
+// 1. Same code:  'threads' sessions redeem ONE code at the same moment, 'rounds' times. Exactly one may win.
+// 2. Throughput: 'threads' sessions redeem 'codes' different codes, every code twice.
+// 3. Mixed:      generating, deleting and redeeming all at once, then the code file is reopened and compared.
+public class RedeemStressBenchmark {
+	private static int failures;
+
+	public static void main(String[] args) throws Exception {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+		int codeCount = args.length > 2 ? Integer.parseInt(args[2]) : 20_000;
+
+		// Keep the real codes file out of it
+		Storage.setFormat(Storage.Format.MEMORY);
+
+		File codeFile = new File(System.getProperty("java.io.tmpdir"), "hangpies-redeem-stress.dat");
+		codeFile.delete();
+		CodeManager codeManager = new CodeManager(codeFile.getPath());
+
+		sameCode(codeManager, threads, rounds);
+		throughput(codeManager, threads, codeCount);
+		mixed(codeManager, codeFile, threads, codeCount);
+
+		codeFile.delete();
+		System.out.println(failures == 0 ? "All checks passed." : failures + " check(s) FAILED.");
+	}
+
+	private static void sameCode(CodeManager codeManager, int threads, int rounds) throws InterruptedException {
+		int doublePayouts = 0;
+
+		for (int round = 0; round < rounds; round++) {
+			codeManager.generateCodes(1, 100);
+			String codeString = findActiveCode(codeManager);
+
+			AtomicInteger payouts = new AtomicInteger();
+			runAll(threads, i -> {
+				if (codeManager.redeemCode(codeString) > 0) {
+					payouts.incrementAndGet();
+				}
+			});
+
+			if (payouts.get() != 1) {
+				doublePayouts++;
+			}
+		}
+
+		check("Same code: " + threads + " threads x " + rounds + " rounds", doublePayouts == 0,
+				doublePayouts + " round(s) did not pay out exactly once");
+	}
+
+	private static void throughput(CodeManager codeManager, int threads, int codeCount) throws InterruptedException {
+		codeManager.generateCodes(codeCount, 10);
+
+		List<String> codes = new ArrayList<>();
+		for (RedeemCode code : codeManager.getAllCodes()) {
+			if (!code.isUsed()) {
+				codes.add(code.getCodeString());
+			}
+		}
+
+		AtomicInteger next = new AtomicInteger();
+		DoubleAdder paid = new DoubleAdder();
+
+		long start = System.nanoTime();
+		runAll(threads, i -> {
+			int n;
+			while ((n = next.getAndIncrement()) < codes.size() * 2) {
+				// Every code is tried twice, by whichever threads get there
+				double value = codeManager.redeemCode(codes.get(n % codes.size()));
+				if (value > 0) {
+					paid.add(value);
+				}
+			}
+		});
+		long elapsed = System.nanoTime() - start;
+
+		System.out.printf("Throughput: %d attempts in %d ms (%.0f redemptions/sec)%n", codes.size() * 2,
+				elapsed / 1_000_000, codes.size() * 2 * 1e9 / elapsed);
+		check("Throughput payouts", paid.sum() == codes.size() * 10.0,
+				"paid " + paid.sum() + " instead of " + codes.size() * 10.0);
+	}
+
+	private static void mixed(CodeManager codeManager, File codeFile, int threads, int codeCount)
+			throws InterruptedException {
+		codeManager.generateCodes(codeCount, 1);
+
+		List<String> codes = new ArrayList<>();
+		for (RedeemCode code : codeManager.getAllCodes()) {
+			if (!code.isUsed()) {
+				codes.add(code.getCodeString());
+			}
+		}
+
+		Map<String, AtomicInteger> payoutsByCode = new ConcurrentHashMap<>();
+		Set<String> deleted = ConcurrentHashMap.newKeySet();
+
+		runAll(threads, i -> {
+			if (i == 0) {
+				// One admin keeps generating while the others play
+				for (int n = 0; n < 10; n++) {
+					codeManager.generateCodes(1_000, 1);
+				}
+			} else if (i == 1) {
+				// One admin deletes every 10th code
+				for (int n = 0; n < codes.size(); n += 10) {
+					if (codeManager.deleteCode(codes.get(n))) {
+						deleted.add(codes.get(n));
+					}
+				}
+			} else {
+				for (String codeString : codes) {
+					if (codeManager.redeemCode(codeString) > 0) {
+						payoutsByCode.computeIfAbsent(codeString, key -> new AtomicInteger()).incrementAndGet();
+					}
+				}
+			}
+		});
+
+		long doublePaid = payoutsByCode.values().stream().filter(count -> count.get() > 1).count();
+		check("Mixed: no code paid twice", doublePaid == 0, doublePaid + " code(s) paid more than once");
+		long missed = codes.stream().filter(code -> !payoutsByCode.containsKey(code) && !deleted.contains(code)).count();
+		check("Mixed: every code redeemed or deleted", missed == 0, missed + " code(s) were neither");
+
+		// What is on disk must match what is in memory
+		int expectedCodes = codeManager.getAllCodes().size();
+		int expectedActive = codeManager.getActiveCodeCount();
+		codeManager.shutdown();
+
+		CodeManager reopened = new CodeManager(codeFile.getPath());
+		check("Mixed: code file matches after reopening",
+				reopened.getAllCodes().size() == expectedCodes && reopened.getActiveCodeCount() == expectedActive,
+				reopened.getAllCodes().size() + "/" + reopened.getActiveCodeCount() + " instead of " + expectedCodes
+						+ "/" + expectedActive);
+		reopened.shutdown();
+	}
+
+	private static String findActiveCode(CodeManager codeManager) {
+		for (RedeemCode code : codeManager.getAllCodes()) {
+			if (!code.isUsed()) {
+				return code.getCodeString();
+			}
+		}
+		throw new IllegalStateException("No active code");
+	}
+
+	private interface Task {
+		void run(int threadIndex) throws Exception;
+	}
+
+	// Starts every thread at the same moment and waits for all of them
+	private static void runAll(int threads, Task task) throws InterruptedException {
+		CountDownLatch ready = new CountDownLatch(threads);
+		CountDownLatch go = new CountDownLatch(1);
+		List<Thread> workers = new ArrayList<>();
+
+		for (int i = 0; i < threads; i++) {
+			int threadIndex = i;
+			Thread worker = new Thread(() -> {
+				ready.countDown();
+				try {
+					go.await();
+					task.run(threadIndex);
+				} catch (Exception e) {
+					System.err.println("Worker failed: " + e);
+				}
+			});
+			workers.add(worker);
+			worker.start();
+		}
+
+		ready.await();
+		go.countDown();
+
+		for (Thread worker : workers) {
+			worker.join();
+		}
+	}
+
+	private static void check(String name, boolean passed, String detail) {
+		System.out.println((passed ? "[PASS] " : "[FAIL] ") + name + (passed ? "" : ": " + detail));
+		if (!passed) {
+			failures++;
+		}
+	}
+}
@@ -0,0 +1,188 @@
+package benchmarks;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import controllers.LogManager;
+import main.Main;
+import utils.TaskGraph;
+
+// Measures how startup time and memory grow with the data files. For every scale it writes a
+// data folder with DataGenerator to the temp folder, then starts a fresh JVM in it that builds
+// the controllers exactly like Main does, and records each controller's wall time, allocated
+// bytes and retained heap.
+//   java -cp bin benchmarks.StartupBenchmark [users...] [setting=value...]   (default 1000 100000 1000000)
+// The settings shape the data, see DataGenerator.
+// Run from the project folder (it needs products.txt). JVM options such as -Xmx or -Dhangpies.*
+// are passed on to the measured JVMs. Results go to startup_benchmark.csv, one row per controller:
+//   scale,run,controller,wall_ms,allocated_bytes,retained_bytes
+// Runs per scale:
+//   cold       one at a time, first start on fresh files (codes.dat, indexes etc. still to be built)
+//   warm       one at a time, second start
+//   parallel   like a normal start of the game, only total times (the controllers overlap)
+public class StartupBenchmark {
+	private static final String REPORT_FILE = "startup_benchmark.csv";
+	private static final String RESULT_PREFIX = "RESULT|";
+
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0 && args[0].equals("--child")) {
+			runChild(args[1]);
+			return;
+		}
+
+		// Numbers are scales, anything else a DataGenerator setting
+		List<Integer> scales = new ArrayList<>();
+		DataGenerator generator = new DataGenerator();
+		for (String arg : args) {
+			if (arg.contains("=")) {
+				generator.set(arg);
+			} else {
+				scales.add(Integer.parseInt(arg));
+			}
+		}
+		if (scales.isEmpty()) {
+			scales = List.of(1_000, 100_000, 1_000_000);
+		}
+
+		if (!new File("products.txt").exists()) {
+			System.err.println("No products found. Run this from the folder that contains products.txt");
+			return;
+		}
+
+		try (PrintWriter report = new PrintWriter(new BufferedWriter(new FileWriter(REPORT_FILE)))) {
+			report.println("scale,run,controller,wall_ms,allocated_bytes,retained_bytes");
+
+			for (int users : scales) {
+				File dir = new File(System.getProperty("java.io.tmpdir"), "hangpies-startup-" + users);
+				long start = System.nanoTime();
+				deleteFolder(dir);
+				generator.setUsers(users);
+				generator.generate(dir);
+				System.out.printf("%n%s%nWritten to %s in %d ms (%,d KB)%n", generator.getSummary(), dir,
+						(System.nanoTime() - start) / 1_000_000, folderSize(dir) / 1024);
+
+				for (String run : new String[] { "cold", "warm", "parallel" }) {
+					for (String[] result : runInChild(dir, run)) {
+						report.println(users + "," + run + "," + String.join(",", result));
+						System.out.printf("  %-9s %-14s %8s ms %,16d alloc %,16d retained%n", run, result[0],
+								result[1], Long.parseLong(result[2]), Long.parseLong(result[3]));
+					}
+					report.flush();
+				}
+			}
+		}
+		System.out.println("\nReport written to " + REPORT_FILE);
+	}
+
+	// Starts a JVM with the same classpath and options in the data folder and collects its RESULT lines
+	private static List<String[]> runInChild(File dir, String run) throws IOException, InterruptedException {
+		List<String> command = new ArrayList<>();
+		command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+		command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+		command.add("-cp");
+		command.add(new File(System.getProperty("java.class.path")).getAbsolutePath());
+		command.add("-Dhangpies.parallelStartup=" + run.equals("parallel"));
+		command.add(StartupBenchmark.class.getName());
+		command.add("--child");
+		command.add(run);
+
+		Process process = new ProcessBuilder(command).directory(dir).redirectErrorStream(true).start();
+		List<String[]> results = new ArrayList<>();
+
+		try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.startsWith(RESULT_PREFIX)) {
+					results.add(line.substring(RESULT_PREFIX.length()).split("\\|"));
+				} else if (line.startsWith("CRITICAL") || line.startsWith("[Warning]") || line.startsWith("Exception")
+						|| line.startsWith("\tat ")) {
+					System.err.println("  " + line);
+				}
+			}
+		}
+
+		if (process.waitFor() != 0) {
+			System.err.println("[Warning]: The " + run + " run exited with code " + process.exitValue());
+		}
+		return results;
+	}
+
+	// The measured side: builds the controllers in the working folder and prints one RESULT line each
+	private static void runChild(String run) {
+		boolean parallel = run.equals("parallel");
+
+		TaskGraph startup = new TaskGraph("Startup-Loader", parallel);
+		if (!parallel) {
+			startup.measureRetainedHeap();
+		}
+		Main.loadControllers(startup);
+
+		// The activity log isn't read at startup, but its index is built the first time anyone opens it
+		TaskGraph log = new TaskGraph("Log-Loader", false);
+		if (!parallel) {
+			log.measureRetainedHeap();
+		}
+		log.add("activity log", () -> LogManager.getUserEntryCount("admin"));
+		log.await();
+
+		long allocated = 0;
+		long millis = 0;
+		for (TaskGraph graph : new TaskGraph[] { startup, log }) {
+			for (TaskGraph.Task task : graph.getTasks()) {
+				allocated += Math.max(task.getAllocatedBytes(), 0);
+				millis += task.millis();
+				System.out.println(RESULT_PREFIX + task.getName() + "|" + task.millis() + "|" + task.getAllocatedBytes()
+						+ "|" + task.getRetainedBytes());
+			}
+		}
+
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		long usedHeap = runtime.totalMemory() - runtime.freeMemory();
+
+		// Whole startup, and the whole process up to here (includes JVM start and class loading).
+		// One at a time the sum of the tasks is used, so the GCs for the heap numbers don't count.
+		if (parallel) {
+			millis = startup.getTotalMillis() + log.getTotalMillis();
+		}
+		System.out.println(RESULT_PREFIX + "controllers|" + millis + "|"
+				+ allocated + "|" + usedHeap);
+		System.out.println(RESULT_PREFIX + "process|" + ManagementFactory.getRuntimeMXBean().getUptime() + "|"
+				+ allocated + "|" + usedHeap);
+
+		// Don't let any shutdown work (snapshots, compaction) touch the data for the next run
+		Runtime.getRuntime().halt(0);
+	}
+
+	private static void deleteFolder(File dir) {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.isDirectory()) {
+					deleteFolder(file);
+				} else {
+					file.delete();
+				}
+			}
+		}
+		dir.delete();
+	}
+
+	private static long folderSize(File dir) {
+		long size = 0;
+		for (File file : dir.listFiles()) {
+			size += file.isDirectory() ? folderSize(file) : file.length();
+		}
+		return size;
+	}
+}
@@ -0,0 +1,115 @@
+package benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import controllers.BuyOrderManager;
+import controllers.GoldLedger;
+import controllers.ListingManager;
+import controllers.ProductManager;
+import controllers.PurchaseManager;
+import controllers.TransactionManager;
+import controllers.UserManager;
+import models.Hangpie;
+import models.LedgerEntry;
+import models.Purchase;
+import models.User;
+import storage.Storage;
+
+// Measures shop purchases committed through the TransactionManager, with more and more
+// sessions buying at the same time. Each purchase is one transaction (user + purchase record);
+// "syncs/txn" shows how group commit shares one disk sync between transactions.
+//   java -cp bin benchmarks.TransactionBenchmark [purchasesPerSession] [sessions...]
+// Run from the project folder (it needs products.txt).
+public class TransactionBenchmark {
+	public static void main(String[] args) throws InterruptedException {
+		int purchasesPerSession = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+
+		int[] sessionCounts = { 1, 4, 16, 64 };
+		if (args.length > 1) {
+			sessionCounts = new int[args.length - 1];
+			for (int i = 1; i < args.length; i++) {
+				sessionCounts[i - 1] = Integer.parseInt(args[i]);
+			}
+		}
+
+		ProductManager productManager = new ProductManager();
+		if (productManager.getProductCount() == 0) {
+			System.err.println("No products found. Run this from the folder that contains products.txt");
+			return;
+		}
+		Hangpie product = productManager.getAllProducts().iterator().next();
+
+		// Listings stay in memory, the rest goes to the temp folder
+		Storage.setFormat(Storage.Format.MEMORY);
+		File dir = new File(System.getProperty("java.io.tmpdir"), "hangpies-transactions");
+		dir.mkdirs();
+
+		System.out.printf("%10s %12s %12s %12s %10s%n", "sessions", "txns", "time(ms)", "txns/sec", "syncs/txn");
+
+		for (int sessions : sessionCounts) {
+			File usersFile = new File(dir, "users.txt");
+			File inventoryFile = new File(dir, "inventories.txt");
+			File purchaseFile = new File(dir, "purchases.txt");
+			for (File file : dir.listFiles()) {
+				file.delete();
+			}
+
+			UserManager userManager = new UserManager(productManager, usersFile.getPath(), inventoryFile.getPath());
+			PurchaseManager purchaseManager = new PurchaseManager(purchaseFile.getPath(),
+					new File(dir, "purchase_counts.txt").getPath(), new File(dir, "purchases.idx").getPath());
+
+			List<User> users = new ArrayList<>();
+			for (int i = 0; i < sessions; i++) {
+				User user = new User("player" + i, "password", false, "First", "Last", "09000000000");
+				user.addGold(1_000_000);
+				userManager.createAccount(user);
+				users.add(user);
+			}
+
+			// Created after the users, so their starting gold becomes the opening entries
+			GoldLedger goldLedger = new GoldLedger(userManager, new File(dir, "gold_ledger.txt").getPath());
+			TransactionManager transactionManager = new TransactionManager(userManager, new ListingManager(),
+					purchaseManager, goldLedger, new BuyOrderManager());
+
+			List<Thread> threads = new ArrayList<>();
+			long start = System.nanoTime();
+
+			for (User user : users) {
+				Thread thread = new Thread(() -> {
+					for (int i = 0; i < purchasesPerSession; i++) {
+						LedgerEntry payment = goldLedger.debit(user, product.getPrice(), LedgerEntry.Reason.SHOP_BUY,
+								product.getId());
+						Hangpie pet = new Hangpie(product);
+						user.addToInventory(pet);
+
+						transactionManager.begin()
+								.updateUser(user)
+								.gold(List.of(payment))
+								.addPurchase(new Purchase(user.getUsername(), pet.getId(), pet.getName(), pet.getPrice()))
+								.commit();
+
+						// Keep the inventory small so only the commit is measured
+						user.removeToInventory(pet);
+					}
+				});
+				threads.add(thread);
+				thread.start();
+			}
+
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			long elapsed = System.nanoTime() - start;
+
+			long commits = transactionManager.getCommitCount();
+			System.out.printf("%10d %12d %12d %12.0f %10.3f%n", sessions, commits, elapsed / 1_000_000,
+					commits * 1e9 / elapsed, (double) transactionManager.getGroupCount() / commits);
+
+			transactionManager.shutdown();
+			userManager.shutdown();
+			purchaseManager.shutdown();
+		}
+	}
+}
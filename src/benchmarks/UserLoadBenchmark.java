@@ -0,0 +1,91 @@
+package benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import controllers.ProductManager;
+import controllers.UserManager;
+import models.Hangpie;
+
+// Measures how UserManager startup grows with the size of users.txt and inventories.txt.
+// Run from the project folder (it needs products.txt):
+//   java -cp bin benchmarks.UserLoadBenchmark [petsPerUser] [userCount...]
+// With single-pass inventory loading the "ns/row" column should stay roughly flat.
+public class UserLoadBenchmark {
+	public static void main(String[] args) throws IOException {
+		int petsPerUser = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+
+		int[] userCounts = { 1_000, 10_000, 100_000 };
+		if (args.length > 1) {
+			userCounts = new int[args.length - 1];
+			for (int i = 1; i < args.length; i++) {
+				userCounts[i - 1] = Integer.parseInt(args[i]);
+			}
+		}
+
+		ProductManager productManager = new ProductManager();
+		List<String> productIds = new ArrayList<>();
+		for (Hangpie product : productManager.getAllProducts()) {
+			productIds.add(product.getId());
+		}
+
+		if (productIds.isEmpty()) {
+			System.err.println("No products found. Run this from the folder that contains products.txt");
+			return;
+		}
+
+		File dir = new File(System.getProperty("java.io.tmpdir"), "hangpies-user-load");
+		dir.mkdirs();
+
+		System.out.printf("%10s %12s %12s %12s %10s%n", "users", "pets", "users(ms)", "pets(ms)", "ns/row");
+
+		for (int userCount : userCounts) {
+			File usersFile = new File(dir, "users-" + userCount + ".txt");
+			File inventoryFile = new File(dir, "inventories-" + userCount + ".txt");
+			writeData(usersFile, inventoryFile, userCount, petsPerUser, productIds);
+
+			// Warm up once so the JIT does not skew the first size
+			new UserManager(productManager, usersFile.getPath(), inventoryFile.getPath());
+
+			long start = System.nanoTime();
+			UserManager userManager = new UserManager(productManager, usersFile.getPath(), inventoryFile.getPath());
+			long elapsed = System.nanoTime() - start;
+
+			long rows = (long) userManager.getUserRowCount() + userManager.getInventoryRowCount();
+			System.out.printf("%10d %12d %12d %12d %10d%n", userManager.getUserRowCount(),
+					userManager.getInventoryRowCount(), userManager.getUserLoadMillis(),
+					userManager.getInventoryLoadMillis(), rows == 0 ? 0 : elapsed / rows);
+
+			usersFile.delete();
+			inventoryFile.delete();
+		}
+	}
+
+	private static void writeData(File usersFile, File inventoryFile, int userCount, int petsPerUser,
+			List<String> productIds) throws IOException {
+		try (BufferedWriter users = new BufferedWriter(new FileWriter(usersFile));
+				BufferedWriter pets = new BufferedWriter(new FileWriter(inventoryFile))) {
+			users.write("// FORMAT: username|password|isAdmin|firstName|lastName|contactNum|goldBalance|worldLvl|progressLvl");
+			users.newLine();
+			pets.write("// uniqueId|ownerUsername|productId|customName|level|currentExp");
+			pets.newLine();
+
+			for (int i = 0; i < userCount; i++) {
+				String username = "player" + i;
+				users.write(username + "|password|false|First|Last|09000000000|1000.0|1|1");
+				users.newLine();
+
+				for (int j = 0; j < petsPerUser; j++) {
+					String productId = productIds.get((i + j) % productIds.size());
+					pets.write(UUID.randomUUID() + "|" + username + "|" + productId + "|Pet" + j + "|1|0");
+					pets.newLine();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package controllers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import models.BuyOrder;
+import storage.BuyOrderCodec;
+import storage.RecordStore;
+import storage.Storage;
+
+// The open buy orders of the marketplace, saved in buy_orders.txt.
+// Works like the listings: orders are placed, filled and cancelled through the TransactionManager
+// (O+ / O- records in the users journal), and the file is rewritten on compaction.
+// The matching itself is done by the MarketEngine.
+public class BuyOrderManager
+{
+	private Map<Long, BuyOrder> orderMap;
+	private RecordStore<BuyOrder> store;
+	private AtomicLong lastId = new AtomicLong();
+
+	// Changed by a committed transaction but not saved to the file yet
+	private boolean dirty;
+
+	public BuyOrderManager()
+	{
+		this("buy_orders.txt");
+	}
+
+	// Like the listings, the file is opened in the current storage format (.txt or .bin)
+	public BuyOrderManager(String databaseFile)
+	{
+		this.store = Storage.open(databaseFile.replaceFirst("\\.txt$", ""), new BuyOrderCodec());
+		this.orderMap = new ConcurrentHashMap<>();
+		loadOrders();
+	}
+
+	private void loadOrders()
+	{
+		// No orders were ever placed
+		if (!store.exists())
+		{
+			return;
+		}
+
+		try
+		{
+			store.load(this::put);
+		}
+		catch (IOException e)
+		{
+			System.err.println("Error loading buy orders: " + e.getMessage());
+		}
+	}
+
+	private void put(BuyOrder order)
+	{
+		orderMap.put(order.getId(), order);
+		lastId.accumulateAndGet(order.getId(), Math::max);
+	}
+
+	// A new order with the next free ID. Not open until a transaction places it (UnitOfWork.placeOrder).
+	public BuyOrder newOrder(String buyerUsername, String productId, double maxPrice, int minLevel)
+	{
+		return new BuyOrder(lastId.incrementAndGet(), System.currentTimeMillis(), buyerUsername, productId, maxPrice,
+				minLevel);
+	}
+
+	public Collection<BuyOrder> getAllOrders()
+	{
+		return orderMap.values();
+	}
+
+	public BuyOrder getOrder(long id)
+	{
+		return orderMap.get(id);
+	}
+
+	// A user's open orders, oldest first
+	public List<BuyOrder> getOrdersOf(String buyerUsername)
+	{
+		List<BuyOrder> orders = new ArrayList<>();
+		for (BuyOrder order : orderMap.values())
+		{
+			if (order.getBuyerUsername().equals(buyerUsername))
+			{
+				orders.add(order);
+			}
+		}
+
+		orders.sort((a, b) -> Long.compare(a.getId(), b.getId()));
+		return orders;
+	}
+
+	public int getOrderCount()
+	{
+		return orderMap.size();
+	}
+
+	// --- Used by the TransactionManager ---
+	// These only change memory; the journal already holds the change
+
+	synchronized void applyCreate(BuyOrder order)
+	{
+		put(order);
+		dirty = true;
+	}
+
+	synchronized void applyRemove(long id)
+	{
+		if (orderMap.remove(id) != null)
+		{
+			dirty = true;
+		}
+	}
+
+	// Saves the orders file if a transaction changed it. Returns false if the save failed.
+	public synchronized boolean saveIfDirty()
+	{
+		if (!dirty)
+		{
+			return true;
+		}
+
+		try
+		{
+			store.saveAll(orderMap.values());
+			dirty = false;
+			return true;
+		}
+		catch (IOException e)
+		{
+			System.err.println("CRITICAL ERROR: Could not save buy orders: " + e.getMessage());
+			return false;
+		}
+	}
+}
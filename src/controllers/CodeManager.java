@@ -1,103 +1,268 @@
 package controllers;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import models.RedeemCode;
+import storage.CodeSlotStore;
+import storage.RecordStore;
+import storage.RedeemCodeCodec;
+import storage.Storage;
+import utils.BloomFilter;
 
 public class CodeManager {
+	private static final String CODE_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+	private static final int CODE_LENGTH = 14; // XXXX-XXXX-XXXX
+	private static final int PARALLEL_THRESHOLD = 10_000;
+	private static final int BATCH_SIZE = 1024;
+	private static final int RANDOM_BUFFER_SIZE = 4096;
+
 	private Map<String, RedeemCode> codeMap;
-	private String databaseFile = "codes.txt";
-	private Random random;
+
+	// codes.dat: one fixed-width slot per code, redeemed in place
+	private CodeSlotStore slotStore;
+	private SecureRandom random;
+
+	// Every code ever generated or loaded, to rule out duplicates without a map lookup
+	private BloomFilter seenCodes;
+	private long bloomCapacity;
+	private int generatorThreads = Runtime.getRuntime().availableProcessors();
+	private double lastGenerationRate;
 
 	public CodeManager() {
-		this.codeMap = new HashMap<>();
-		this.random = new Random();
-		loadCodes();
+		this("codes.dat");
 	}
 
-	private void loadCodes() {
-		try (BufferedReader reader = new BufferedReader(new FileReader(databaseFile))) {
-			String line;
-			while ((line = reader.readLine()) != null) {
-				if (line.startsWith("//") || line.trim().isEmpty()) {
-					continue;
+	// 'slotFile' is the fixed-size slot file. If it is new, the old codes file is imported from the working folder.
+	public CodeManager(String slotFile) {
+		this.codeMap = new ConcurrentHashMap<>();
+		this.random = newRandom();
+		loadCodes(slotFile);
+	}
+
+	private void loadCodes(String slotFile) {
+		try {
+			slotStore = new CodeSlotStore(slotFile);
+		} catch (IOException e) {
+			// Nothing can be redeemed without it
+			throw new IllegalStateException("Could not open " + slotFile + ": " + e.getMessage(), e);
+		}
+
+		if (slotStore.isCreated()) {
+			importCodes();
+		}
+
+		slotStore.load(code -> codeMap.put(code.getCodeString(), code));
+	}
+
+	// First run with codes.dat: copy the codes over from the old codes file (codes.txt or codes.bin)
+	private void importCodes() {
+		RecordStore<RedeemCode> oldStore = Storage.open("codes", new RedeemCodeCodec());
+		if (!oldStore.exists()) {
+			return;
+		}
+
+		try {
+			oldStore.load(code -> {
+				try {
+					slotStore.add(code);
+				} catch (IllegalArgumentException e) {
+					System.err.println("[Warning]: Bad data in " + oldStore.getName() + ": " + e.getMessage());
 				}
+			});
+			slotStore.force();
+			System.out.println("[System]: Imported " + slotStore.size() + " codes from " + oldStore.getName() + " into "
+					+ slotStore.getName() + ".");
+		} catch (IOException e) {
+			// Inform user of error loading
+			System.err.println("Error loading code database: " + e.getMessage());
+		}
+	}
 
-				String[] parts = line.split("\\|");
+	// Generates 'quantity' new unique codes worth 'goldValue' each.
+	// Big batches are generated on every core; this thread checks each candidate for
+	// duplicates (Bloom filter first, the map only when it says "maybe") and writes it
+	// straight into codes.dat, so no big list of codes is built up in between.
+	// Two admins generating at once take turns; redeeming and deleting never wait on it.
+	public synchronized int generateCodes(int quantity, double goldValue) {
+		long start = System.nanoTime();
+		int threads = quantity < PARALLEL_THRESHOLD ? 1 : generatorThreads;
+		ensureBloomFilter(codeMap.size() + (long) quantity);
+
+		BlockingQueue<String[]> batches = new ArrayBlockingQueue<>(threads * 4);
+		AtomicBoolean done = new AtomicBoolean();
+		ExecutorService pool = null;
+		List<Future<?>> generators = new ArrayList<>();
+
+		if (threads > 1) {
+			pool = Executors.newFixedThreadPool(threads, runnable -> {
+				Thread thread = new Thread(runnable, "CodeManager-Generator");
+				thread.setDaemon(true);
+				return thread;
+			});
+
+			for (int i = 0; i < threads; i++) {
+				generators.add(pool.submit(() -> runGenerator(batches, done)));
+			}
+		}
 
-				if (parts.length < 3) {
-					continue;
+		int codeCreated = 0;
+		char[] chars = new char[CODE_LENGTH];
+		byte[] randomBytes = new byte[RANDOM_BUFFER_SIZE];
+
+		try {
+			while (codeCreated < quantity) {
+				String[] batch = pool != null ? nextBatch(batches, generators)
+						: generateBatch(random, Math.min(BATCH_SIZE, quantity - codeCreated), chars, randomBytes);
+
+				for (String newCodeString : batch) {
+					if (codeCreated == quantity) {
+						break;
+					}
+
+					// A "no" from the filter means it is new for sure, so only a "maybe" looks in the map
+					RedeemCode newCode = new RedeemCode(newCodeString, goldValue);
+					if (!seenCodes.mightContain(newCodeString)) {
+						codeMap.put(newCodeString, newCode);
+					} else if (codeMap.putIfAbsent(newCodeString, newCode) != null) {
+						continue; // Duplicate
+					}
+
+					slotStore.add(newCode);
+					seenCodes.add(newCodeString);
+					codeCreated++;
 				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IllegalStateException e) {
+			// The codes made so far are kept
+			System.err.println("CRITICAL ERROR: Code generation stopped after " + codeCreated + " codes: " + e.getMessage());
+		} finally {
+			done.set(true);
+			if (pool != null) {
+				pool.shutdownNow();
+			}
+		}
 
-				try {
-					String codeString = parts[0];
-					double goldValue = Double.parseDouble(parts[1]);
-					boolean isUsed = Boolean.parseBoolean(parts[2]);
+		slotStore.force();
 
-					RedeemCode code = new RedeemCode(codeString, goldValue);
-					code.setUsed(isUsed);
+		long elapsed = Math.max(1, System.nanoTime() - start);
+		lastGenerationRate = codeCreated * 1_000_000_000.0 / elapsed;
+		return codeCreated;
+	}
 
-					codeMap.put(codeString, code);
+	// Waits for the generators' next batch. Throws IllegalStateException if one of them stopped
+	// (it only stops on its own when it failed), instead of waiting forever.
+	private static String[] nextBatch(BlockingQueue<String[]> batches, List<Future<?>> generators)
+			throws InterruptedException {
+		while (true) {
+			String[] batch = batches.poll(100, TimeUnit.MILLISECONDS);
+			if (batch != null) {
+				return batch;
+			}
 
-				} catch (NumberFormatException e) {
-					// Use System.err.println for unrecoverable data corruption warning during
-					// loading
-					System.err.println("[Warning]: Bad data in codes.txt for line: " + line);
+			for (Future<?> generator : generators) {
+				if (!generator.isDone()) {
+					continue;
 				}
+
+				try {
+					generator.get();
+				} catch (ExecutionException e) {
+					throw new IllegalStateException("A generator thread failed: " + e.getCause(), e.getCause());
+				}
+				throw new IllegalStateException("A generator thread stopped");
 			}
-		} catch (IOException e) {
-			// Inform user of error loading
-			System.err.println("Error loading code database: " + e.getMessage());
 		}
 	}
 
-	private void saveCodes() {
-		try (BufferedWriter writer = new BufferedWriter(new FileWriter(databaseFile))) {
-			writer.write("// FORMAT: codeString|goldValue|isUsed");
-			writer.newLine();
+	// A generator thread: fills batches with random codes until the writer has enough
+	private static void runGenerator(BlockingQueue<String[]> batches, AtomicBoolean done) {
+		SecureRandom random = newRandom();
+		char[] chars = new char[CODE_LENGTH];
+		byte[] randomBytes = new byte[RANDOM_BUFFER_SIZE];
 
-			for (RedeemCode code : codeMap.values()) {
-				String line = String.join("|", code.getCodeString(), String.valueOf(code.getGoldValue()),
-						String.valueOf(code.isUsed()));
+		try {
+			while (!done.get()) {
+				String[] batch = generateBatch(random, BATCH_SIZE, chars, randomBytes);
 
-				writer.write(line);
-				writer.newLine();
+				while (!done.get() && !batches.offer(batch, 10, TimeUnit.MILLISECONDS)) {
+					// Queue full, the writer is behind. Wait for it.
+				}
 			}
-		} catch (IOException e) {
-			// Use System.err.println for critical save failure
-			System.err.println("CRITICAL ERROR: Could not save code database: " + e.getMessage());
+		} catch (InterruptedException e) {
+			// Told to stop
 		}
 	}
 
-	public int generateCodes(int quantity, double goldValue) {
-		int codeCreated = 0;
+	// Builds 'count' codes like XXXX-XXXX-XXXX. Random bytes are pulled in bulk and mapped to
+	// the 36 characters by rejection (bytes >= 252 are thrown away), so no character is favoured.
+	private static String[] generateBatch(SecureRandom random, int count, char[] chars, byte[] randomBytes) {
+		String[] batch = new String[count];
+		int position = randomBytes.length;
+
+		for (int n = 0; n < count; n++) {
+			int i = 0;
+			while (i < CODE_LENGTH) {
+				if (i == 4 || i == 9) {
+					chars[i++] = '-';
+					continue;
+				}
+
+				if (position == randomBytes.length) {
+					random.nextBytes(randomBytes);
+					position = 0;
+				}
 
-		for (int i = 0; i < quantity; i++) {
-			String newCodeString;
+				int value = randomBytes[position++] & 0xFF;
+				if (value < 252) {
+					chars[i++] = CODE_CHARS.charAt(value % 36);
+				}
+			}
+			batch[n] = new String(chars);
+		}
 
-			do {
-				newCodeString = generateRandomCodeString();
-			} while (codeMap.containsKey(newCodeString));
+		return batch;
+	}
 
-			RedeemCode newCode = new RedeemCode(newCodeString, goldValue);
-			codeMap.put(newCodeString, newCode);
-			codeCreated++;
+	// One generator per thread, so the threads never share (or wait on) a SecureRandom
+	private static SecureRandom newRandom() {
+		try {
+			return SecureRandom.getInstance("DRBG");
+		} catch (NoSuchAlgorithmException e) {
+			return new SecureRandom();
 		}
+	}
 
-		saveCodes();
-		return codeCreated;
+	// Keeps the Bloom filter big enough for every code we know of plus the new ones
+	private void ensureBloomFilter(long expectedCodes) {
+		if (seenCodes != null && expectedCodes <= bloomCapacity) {
+			return;
+		}
+
+		bloomCapacity = Math.max(expectedCodes * 2, 1024);
+		seenCodes = new BloomFilter(bloomCapacity, 0.01);
+		for (String codeString : codeMap.keySet()) {
+			seenCodes.add(codeString);
+		}
 	}
 
 	public String generateRandomCodeString() {
-		String chars = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
 		StringBuilder sb = new StringBuilder();
 
 		for (int i = 0; i < 12; i++) {
@@ -105,41 +270,61 @@ public class CodeManager {
 									// XXXX-XXXXX-XXX
 				sb.append('-');
 			}
-			sb.append(chars.charAt(random.nextInt(chars.length())));
+			sb.append(CODE_CHARS.charAt(random.nextInt(CODE_CHARS.length())));
 		}
 		return sb.toString();
 	}
 
+	// Codes per second of the last generateCodes call
+	public double getLastGenerationRate() {
+		return lastGenerationRate;
+	}
+
+	// How many threads generate codes for big batches (defaults to the number of cores)
+	public void setGeneratorThreads(int generatorThreads) {
+		this.generatorThreads = Math.max(1, generatorThreads);
+	}
+
+	// Safe to call from many sessions at once: each code pays out exactly once
 	public double redeemCode(String codeString) {
 		RedeemCode code = codeMap.get(codeString);
 
-		// IF the codeString inputted by the user is not found from the codes.txt, then
+		// IF the codeString inputted by the user is not found from the codes file, then
 		// code is null
 		// IF code is null, then redeemCode method will return -1
 		if (code == null) {
 			return -1;
 		}
 
-		// IF code is used, the return -1
-		if (code.isUsed()) {
+		// Flip ACTIVE -> USED in one atomic step. If another session got there first
+		// (or the code is used or deleted), the flip fails and we return -1
+		if (!code.tryRedeem()) {
 			return -1;
 		}
 
-		// IF the code is unused, set its status to isUsed
-		code.setUsed(true);
-
-		// Update database
-		saveCodes();
+		// Update database: only this code's status byte is written
+		slotStore.markUsed(codeString);
 
 		// redeemCode method will return with the code's goldValue
 		return code.getGoldValue();
 	}
 
+	// Gives back a code whose gold could not be saved, so it can be redeemed again
+	public void releaseCode(String codeString) {
+		RedeemCode code = codeMap.get(codeString);
+
+		if (code != null && code.tryRelease()) {
+			slotStore.markActive(codeString);
+		}
+	}
+
 	public boolean deleteCode(String codeString) {
 		RedeemCode removedCode = codeMap.remove(codeString);
 
 		if (removedCode != null) {
-			saveCodes();
+			// A session that looked the code up just before the remove can no longer redeem it
+			removedCode.markDeleted();
+			slotStore.delete(codeString);
 			return true;
 		}
 
@@ -150,6 +335,11 @@ public class CodeManager {
 		return codeMap.values();
 	}
 
+	// Called on exit
+	public void shutdown() {
+		slotStore.close();
+	}
+
 	public int getActiveCodeCount() {
 		int count = 0;
 		for (RedeemCode code : codeMap.values()) {
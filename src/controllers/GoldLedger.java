@@ -0,0 +1,320 @@
+package controllers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import models.Gold;
+import models.LedgerEntry;
+import models.LedgerEntry.Reason;
+import models.User;
+import storage.LedgerEntryCodec;
+import storage.TextRecordStore;
+import utils.RecordReader;
+
+// Every credit and debit of a user's gold, as an append-only ledger.
+//
+// A transfer becomes a LedgerEntry, saved as a "G|" record in the users journal: on its own
+// with post() (a batch of transfers is one append), or as part of a UnitOfWork, so it is saved
+// together with the rest of a purchase. The entry is numbered when it is written and applied to
+// the User right after, both under the UserManager lock, so a balance never includes an entry
+// that is not on disk and entries reach the journal in the order of their numbers. Until then a
+// debit only holds the gold, so it cannot be spent twice. users.txt is only rewritten on
+// compaction, like for any other change. On compaction the entries move from the journal to
+// gold_ledger.txt, which is never rewritten.
+//
+// Every user row stores the number of the last entry its balance includes (User.getGoldSeq()),
+// so on startup an entry from the journal is applied only to users whose saved row is older,
+// whatever order the user and gold records were written in.
+//
+// gold_ledger.txt starts with an OPENING entry per user holding gold, so adding up a user's
+// entries in the file and in the journal always gives their balance (see replayBalances).
+public class GoldLedger {
+	public static final String RECORD_TYPE = "G";
+
+	private UserManager userManager;
+	private Journal journal;
+	private TextRecordStore<LedgerEntry> store;
+	private LedgerEntryCodec codec = new LedgerEntryCodec();
+
+	// Number of the next entry. Guarded by the UserManager lock, like the journal writes.
+	private long nextSeq = 1;
+
+	// Saved in the journal but not in gold_ledger.txt yet. Guarded by the UserManager lock,
+	// which journal writes and compaction also hold.
+	private List<LedgerEntry> journaled = new ArrayList<>();
+	private long archivedSeq;
+
+	public GoldLedger(UserManager userManager) {
+		this(userManager, "gold_ledger.txt");
+	}
+
+	// 'ledgerFile' gets the entries moved out of the journal on compaction (always text)
+	public GoldLedger(UserManager userManager, String ledgerFile) {
+		this.userManager = userManager;
+		this.journal = userManager.getJournal();
+		this.store = new TextRecordStore<>(ledgerFile, codec);
+
+		boolean isNew = !store.exists();
+		archivedSeq = isNew ? 0 : readLastSeq(new File(ledgerFile));
+		// A user row can include entries that never made it to the ledger file (e.g. it was
+		// saved, then the ledger file was lost), so never hand out a number already used
+		nextSeq = Math.max(archivedSeq, userManager.getMaxGoldSeq()) + 1;
+
+		recover();
+
+		if (isNew) {
+			writeOpeningBalances();
+		}
+
+		// The journal may only be emptied once its entries are in the ledger file
+		userManager.addCompactionHook(this::archive);
+	}
+
+	// --- Transfers ---
+	// Not applied until saved: save the entries with post() or UnitOfWork.gold(), and revert()
+	// them if that fails.
+
+	public LedgerEntry credit(User user, double amount, Reason reason, String reference) {
+		return newEntry(user, Gold.toMinor(amount), reason, reference);
+	}
+
+	// Returns null (and changes nothing) if the user does not have enough gold.
+	// Otherwise the gold is held until the entry is saved or reverted.
+	public LedgerEntry debit(User user, double amount, Reason reason, String reference) {
+		long minor = Gold.toMinor(amount);
+		if (!user.holdGold(minor)) {
+			return null;
+		}
+		return newEntry(user, -minor, reason, reference);
+	}
+
+	// Moves gold from one user to another: both entries, or null if 'from' does not have enough
+	public List<LedgerEntry> transfer(User from, User to, double amount, Reason fromReason, Reason toReason,
+			String reference) {
+		LedgerEntry debit = debit(from, amount, fromReason, reference);
+		if (debit == null) {
+			return null;
+		}
+
+		List<LedgerEntry> entries = new ArrayList<>(2);
+		entries.add(debit);
+		entries.add(credit(to, amount, toReason, reference));
+		return entries;
+	}
+
+	private LedgerEntry newEntry(User user, long amount, Reason reason, String reference) {
+		// Keeps the user loaded (lazy mode) until their new balance is saved
+		userManager.markChanged(user);
+		return new LedgerEntry(0, System.currentTimeMillis(), user.getUsername(), amount, reason, reference);
+	}
+
+	// Saves entries that are not part of a UnitOfWork, all with one journal append.
+	// Returns false if they could not be written.
+	public boolean post(List<LedgerEntry> entries) {
+		if (entries.isEmpty()) {
+			return true;
+		}
+
+		synchronized (userManager) {
+			List<String> records = new ArrayList<>(entries.size());
+			for (LedgerEntry entry : entries) {
+				records.add(toRecord(number(entry)));
+			}
+
+			if (!journal.appendAll(List.of(records), false)) {
+				return false;
+			}
+			journaled(entries);
+		}
+		return true;
+	}
+
+	// Drops entries whose save failed (gives back the gold their debits held)
+	public void revert(List<LedgerEntry> entries) {
+		for (LedgerEntry entry : entries) {
+			User user = userManager.getUserByUsername(entry.getUsername());
+			if (user != null && entry.getAmount() < 0) {
+				user.releaseGold(-entry.getAmount());
+			}
+		}
+	}
+
+	// --- Used by the TransactionManager ---
+
+	// Called with the UserManager lock held, right before the entry is written
+	LedgerEntry number(LedgerEntry entry) {
+		entry.setSeq(nextSeq++);
+		return entry;
+	}
+
+	String toRecord(LedgerEntry entry) {
+		return RECORD_TYPE + "|" + String.join("|", codec.toFields(entry));
+	}
+
+	// Called with the UserManager lock held, right after the entries' batch was written
+	void journaled(List<LedgerEntry> entries) {
+		for (LedgerEntry entry : entries) {
+			User user = userManager.getUserByUsername(entry.getUsername());
+			if (user != null) {
+				user.applyGold(entry.getAmount(), entry.getSeq());
+			}
+		}
+		journaled.addAll(entries);
+	}
+
+	// --- Startup and compaction ---
+
+	// Applies the G records of the journal that the users' saved rows do not include yet
+	private void recover() {
+		int[] recovered = new int[1];
+		RecordReader fields = new RecordReader();
+
+		synchronized (userManager) {
+			journal.replay(batch -> {
+				for (String record : batch) {
+					if (!record.startsWith(RECORD_TYPE + "|")) {
+						continue;
+					}
+
+					try {
+						fields.reset(record, 2, record.length() - 2);
+						LedgerEntry entry = codec.fromRecord(fields);
+						nextSeq = Math.max(nextSeq, entry.getSeq() + 1);
+
+						User user = userManager.getUserByUsername(entry.getUsername());
+						if (user != null && entry.getSeq() > user.getGoldSeq()) {
+							user.setGold(user.getGold() + entry.getAmount(), entry.getSeq());
+							userManager.markChanged(user);
+							recovered[0]++;
+						}
+
+						// Not in the ledger file yet if the last compaction did not get that far
+						if (entry.getSeq() > archivedSeq) {
+							journaled.add(entry);
+						}
+					} catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+						System.err.println("[Warning]: Bad journal record: " + record);
+					}
+				}
+			});
+		}
+
+		if (recovered[0] > 0) {
+			System.out.println("[System]: Replayed " + recovered[0] + " gold ledger records from the journal.");
+		}
+	}
+
+	// First start with a ledger: records everyone's current balance, so the ledger adds up.
+	// Anything the journal already had goes in first, so the last line keeps the highest number.
+	private void writeOpeningBalances() {
+		List<LedgerEntry> openings = new ArrayList<>();
+		long now = System.currentTimeMillis();
+
+		Map<String, Long> pending = new HashMap<>();
+		for (LedgerEntry entry : journaled) {
+			pending.merge(entry.getUsername(), entry.getAmount(), Long::sum);
+		}
+
+		synchronized (userManager) {
+			for (User user : userManager.getAllUsers()) {
+				long opening = user.getGold() - pending.getOrDefault(user.getUsername(), 0L);
+				if (opening != 0) {
+					openings.add(new LedgerEntry(nextSeq++, now, user.getUsername(), opening, Reason.OPENING, ""));
+				}
+			}
+		}
+
+		try {
+			List<LedgerEntry> entries = new ArrayList<>(journaled);
+			entries.addAll(openings);
+			store.appendAll(entries);
+			archivedSeq = nextSeq - 1;
+			journaled.clear();
+		} catch (IOException e) {
+			System.err.println("CRITICAL ERROR: Could not write the gold ledger: " + e.getMessage());
+		}
+	}
+
+	// Compaction hook: moves the journaled entries to the ledger file before the journal is emptied
+	private boolean archive() {
+		if (journaled.isEmpty()) {
+			return true;
+		}
+
+		try {
+			store.appendAll(journaled);
+			archivedSeq = journaled.get(journaled.size() - 1).getSeq();
+			journaled.clear();
+			return true;
+		} catch (IOException e) {
+			System.err.println("CRITICAL ERROR: Could not write the gold ledger: " + e.getMessage());
+			return false;
+		}
+	}
+
+	// Number of the last entry in the ledger file, read from its last line (0 if there is none)
+	private long readLastSeq(File file) {
+		try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+			long length = in.length();
+			byte[] tail = new byte[(int) Math.min(length, 4096)];
+			in.seek(length - tail.length);
+			in.readFully(tail);
+
+			String[] lines = new String(tail, StandardCharsets.UTF_8).split("\n");
+			for (int i = lines.length - 1; i >= 0; i--) {
+				String line = lines[i].trim();
+				int bar = line.indexOf('|');
+				if (bar > 0 && !line.startsWith("//")) {
+					return Long.parseLong(line.substring(0, bar));
+				}
+			}
+		} catch (IOException | NumberFormatException e) {
+			System.err.println("[Warning]: Could not read the end of " + file.getName() + ", reading all of it");
+			return scanLastSeq();
+		}
+		return 0;
+	}
+
+	private long scanLastSeq() {
+		long[] last = new long[1];
+		try {
+			store.load(entry -> last[0] = Math.max(last[0], entry.getSeq()));
+		} catch (IOException e) {
+			System.err.println("Error reading the gold ledger: " + e.getMessage());
+		}
+		return last[0];
+	}
+
+	// --- Reading the ledger ---
+
+	// Streams every entry, oldest first: the ledger file, then what is still only in the journal
+	// (holds off compaction meanwhile, so no entry is read twice or missed)
+	public void replay(Consumer<LedgerEntry> sink) throws IOException {
+		synchronized (userManager) {
+			store.load(sink);
+			for (LedgerEntry entry : journaled) {
+				sink.accept(entry);
+			}
+		}
+	}
+
+	// Every user's balance in minor units, worked out from the entries alone
+	public Map<String, Long> replayBalances() throws IOException {
+		Map<String, Long> balances = new HashMap<>();
+		replay(entry -> balances.merge(entry.getUsername(), entry.getAmount(), Long::sum));
+		return balances;
+	}
+
+	public long getLastSeq() {
+		synchronized (userManager) {
+			return nextSeq - 1;
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package controllers;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// An append-only, line based write-ahead journal.
+// Records are written in batches, and every batch ends with a COMMIT marker line.
+// On replay only complete batches are handed back, so a crash in the middle of an append
+// can never apply half of a change.
+public class Journal {
+	public static final String COMMIT = "C";
+
+	private File file;
+	private FileOutputStream output;
+	private BufferedWriter writer;
+	private int recordCount;
+	private long syncCount;
+
+	public Journal(String fileName) {
+		this.file = new File(fileName);
+	}
+
+	// Reads every committed batch from the journal, oldest first
+	public synchronized void replay(Consumer<List<String>> batchConsumer) {
+		recordCount = 0;
+
+		if (!file.exists()) {
+			return;
+		}
+
+		try (BufferedReader reader = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8))) {
+			List<String> batch = new ArrayList<>();
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty()) {
+					continue;
+				}
+
+				if (line.equals(COMMIT)) {
+					batchConsumer.accept(batch);
+					recordCount += batch.size();
+					batch = new ArrayList<>();
+				} else {
+					batch.add(line);
+				}
+			}
+
+			if (!batch.isEmpty()) {
+				System.err.println("[Warning]: Ignoring " + batch.size() + " uncommitted record(s) at the end of "
+						+ file.getName());
+			}
+		} catch (IOException e) {
+			System.err.println("Error replaying journal " + file.getName() + ": " + e.getMessage());
+		}
+	}
+
+	// Appends one batch of records followed by the COMMIT marker
+	public synchronized void append(List<String> records) {
+		try {
+			writeBatch(records);
+			writer.flush();
+		} catch (IOException e) {
+			System.err.println("CRITICAL ERROR: Could not write to journal " + file.getName() + ": " + e.getMessage());
+		}
+	}
+
+	// Appends several batches (each with its own COMMIT marker) with a single write.
+	// With 'sync' the data is forced to the disk itself before this returns, once for all of them.
+	// Returns false if the batches could not be written.
+	public synchronized boolean appendAll(List<List<String>> batches, boolean sync) {
+		try {
+			for (List<String> records : batches) {
+				writeBatch(records);
+			}
+
+			writer.flush();
+
+			if (sync) {
+				output.getFD().sync();
+				syncCount++;
+			}
+			return true;
+		} catch (IOException e) {
+			System.err.println("CRITICAL ERROR: Could not write to journal " + file.getName() + ": " + e.getMessage());
+			return false;
+		}
+	}
+
+	private void writeBatch(List<String> records) throws IOException {
+		if (writer == null) {
+			output = new FileOutputStream(file, true);
+			writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+		}
+
+		for (String record : records) {
+			writer.write(record);
+			writer.newLine();
+		}
+
+		writer.write(COMMIT);
+		writer.newLine();
+
+		recordCount += records.size();
+	}
+
+	// Empties the journal. Only call this after its records are safely in a snapshot.
+	public synchronized void reset() {
+		close();
+
+		try {
+			new FileOutputStream(file).close();
+		} catch (IOException e) {
+			System.err.println("CRITICAL ERROR: Could not reset journal " + file.getName() + ": " + e.getMessage());
+		}
+		recordCount = 0;
+	}
+
+	public synchronized void close() {
+		if (writer != null) {
+			try {
+				writer.close();
+				output = null;
+			} catch (IOException e) {
+				System.err.println("Error closing journal " + file.getName() + ": " + e.getMessage());
+			}
+			writer = null;
+		}
+	}
+
+	// Number of times appendAll forced the journal to disk
+	public synchronized long getSyncCount() {
+		return syncCount;
+	}
+
+	// Number of records written since the last reset (or found on replay)
+	public synchronized int getRecordCount() {
+		return recordCount;
+	}
+}
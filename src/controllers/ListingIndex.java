@@ -0,0 +1,95 @@
+package controllers;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+import models.Listing;
+import models.PetId;
+
+// A group of listings (all of them, one product's or one seller's) kept sorted by price and by
+// level, so ListingManager can read a page in either order without sorting anything.
+// Ties are broken by the pet's ID, so every listing has its own place and a removed listing
+// still works as a cursor. Not thread-safe: the ListingManager guards it.
+class ListingIndex {
+	static final Comparator<Listing> BY_PRICE = Comparator.comparingDouble(Listing::getPrice)
+			.thenComparing(Listing::getPetId);
+	static final Comparator<Listing> BY_LEVEL = Comparator.comparingInt(Listing::getPetLevel)
+			.thenComparing(Listing::getPetId);
+
+	private static final PetId LOWEST_ID = PetId.of(Long.MIN_VALUE, Long.MIN_VALUE);
+
+	private NavigableSet<Listing> byPrice = new TreeSet<>(BY_PRICE);
+	private NavigableSet<Listing> byLevel = new TreeSet<>(BY_LEVEL);
+
+	void add(Listing listing) {
+		byPrice.add(listing);
+		byLevel.add(listing);
+	}
+
+	void remove(Listing listing) {
+		byPrice.remove(listing);
+		byLevel.remove(listing);
+	}
+
+	boolean isEmpty() {
+		return byPrice.isEmpty();
+	}
+
+	int size() {
+		return byPrice.size();
+	}
+
+	// The listings in the query's order, starting after its cursor (or from the first one if null).
+	// The price orders only hold the listings in its price range and the level orders only those in
+	// its level range: the walk starts at the first one in range and ends after the last one.
+	NavigableSet<Listing> from(ListingQuery query) {
+		boolean levelOrder = query.getSort() == ListingQuery.Sort.LEVEL_LOW
+				|| query.getSort() == ListingQuery.Sort.LEVEL_HIGH;
+		boolean descending = query.getSort() == ListingQuery.Sort.PRICE_HIGH
+				|| query.getSort() == ListingQuery.Sort.LEVEL_HIGH;
+		NavigableSet<Listing> sorted = levelOrder ? byLevel : byPrice;
+		Comparator<Listing> order = levelOrder ? BY_LEVEL : BY_PRICE;
+
+		// In range: from 'low' (included) up to 'high' (left out, null = no end)
+		Listing low;
+		Listing high;
+		if (levelOrder) {
+			low = levelKey(query.getMinLevel());
+			high = query.getMaxLevel() == Integer.MAX_VALUE ? null : levelKey(query.getMaxLevel() + 1);
+		} else {
+			low = priceKey(query.getMinPrice());
+			high = priceKey(Math.nextUp(query.getMaxPrice()));
+		}
+		boolean lowIncluded = true;
+
+		// The cursor moves the start of the walk if it is inside the range
+		Listing cursor = query.getAfter();
+		if (cursor != null) {
+			if (!descending && order.compare(cursor, low) >= 0) {
+				low = cursor;
+				lowIncluded = false;
+			} else if (descending && (high == null || order.compare(cursor, high) < 0)) {
+				high = cursor;
+			}
+		}
+
+		if (high != null && order.compare(low, high) >= 0) {
+			return Collections.emptyNavigableSet();
+		}
+
+		NavigableSet<Listing> range = high == null ? sorted.tailSet(low, lowIncluded)
+				: sorted.subSet(low, lowIncluded, high, false);
+		return descending ? range.descendingSet() : range;
+	}
+
+	// Keys that sort before every listing of that price (or level): no pet ID is lower than theirs
+	private static Listing priceKey(double price) {
+		return new Listing(LOWEST_ID, "", price, "", "", 0, 0, 0, "", 0);
+	}
+
+	private static Listing levelKey(int level) {
+		return new Listing(LOWEST_ID, "", 0, "", "", level, 0, 0, "", 0);
+	}
+}
@@ -1,80 +1,66 @@
 package controllers;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import models.Hangpie;
 import models.Listing;
+import models.PetId;
 import models.User;
+import storage.ListingCodec;
+import storage.RecordStore;
+import storage.Storage;
 
 public class ListingManager
 {
-	private Map<String, Listing> listMap;
-	private String databaseFile = "listings.txt";
+	// Told about every listing added or removed after loading, e.g. by the MarketEngine.
+	// Called with the ListingManager lock held, so it should only hand the change on.
+	public interface Listener
+	{
+		void listingAdded(Listing listing);
+
+		void listingRemoved(Listing listing);
+	}
+
+	// Keyed by the pet's ID (see PetId), so lookups hash two longs instead of a 36-char String
+	private Map<PetId, Listing> listMap;
+	private RecordStore<Listing> store;
+
+	// Secondary indexes for query(), changed together with listMap (under this object's lock)
+	private ListingIndex allListings = new ListingIndex();
+	private Map<String, ListingIndex> byProduct = new HashMap<>();
+	private Map<String, ListingIndex> bySeller = new HashMap<>();
+
+	private List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+	// Changed by a committed transaction but not saved to the listings file yet.
+	// The transaction itself is safe in the journal until then.
+	private boolean dirty;
 	
 	public ListingManager()
 	{
-		this.listMap = new HashMap<>();
+		this("listings.txt");
+	}
+	
+	// Opened through Storage, so a .bin file is used instead when the binary format is on
+	public ListingManager(String databaseFile)
+	{
+		this.store = Storage.open(databaseFile.replaceFirst("\\.txt$", ""), new ListingCodec());
+		this.listMap = new ConcurrentHashMap<>();
 		loadListings();
 	}
 	
 	private void loadListings()
 	{
-		try (BufferedReader reader = new BufferedReader(new FileReader(databaseFile)))
+		try
 		{
-			String line;
-			
-			while ((line = reader.readLine()) != null)
-			{
-				if (line.startsWith("//") || line.trim().isEmpty())
-				{
-					continue;
-				}
-				
-				// Use limit -1 to ensure empty trailing strings are included
-				String[] parts = line.split("\\|", -1);
-
-				if (parts.length < 9)
-				{
-					// Use System.err.println for unrecoverable data corruption warning during loading
-					System.err.println("[Warning]: Skipping corrupt listing: " + line);
-					continue;
-				}
-				
-				try
-				{
-					String uniquePetId = parts[0];
-					String sellerUsername = parts[1];
-					Double sellerPrice = Double.parseDouble(parts[2]);
-					String productId = parts[3];
-					String petName = parts[4];
-					int petLevel = Integer.parseInt(parts[5]);
-					int petHealth = Integer.parseInt(parts[6]);
-					int petAttack = Integer.parseInt(parts[7]);
-					String description = parts[8];
-					
-					// Parse EXP (Index 9), default to 0 if missing (backward compatibility)
-					int petExp = 0;
-					if (parts.length > 9) {
-						petExp = Integer.parseInt(parts[9]);
-					}
-
-					Listing listing = new Listing(uniquePetId, sellerUsername, sellerPrice, productId, petName, petLevel, petHealth, petAttack, description, petExp);
-					listMap.put(listing.getUniqueId(), listing);
-				}
-				
-				catch (NumberFormatException e)
-				{
-					// Use System.err.println for unrecoverable data corruption warning during loading
-					System.err.println("Error loading listings: " + e.getMessage());
-				}
-			}
+			store.load(this::put);
 		}
 		catch (IOException e)
 		{
@@ -83,55 +69,179 @@ public class ListingManager
 		}
 	}
 	
-	private void saveListing()
+	private boolean saveListing()
 	{
-		try (BufferedWriter writer = new BufferedWriter(new FileWriter(databaseFile)))
+		try
 		{
-			writer.write("// FORMAT: uniquePetId|sellerUsername|price|productId|petName|petLevel|petHealth|petAttack|description|petExp");
-            writer.newLine();
-            
-            for (Listing listing: listMap.values())
-            {
-            	writer.write(listing.toFileString());
-            	writer.newLine();
-            }
+			store.saveAll(listMap.values());
+			dirty = false;
+			return true;
 		}
-		
 		catch (IOException e)
 		{
 			// Use System.err.println for critical save failure
 			System.err.println("CRITICAL ERROR: Could not save listings: " + e.getMessage());
+			return false;
+		}
+	}
+	
+	// Adds or replaces a listing, in the map and in every index
+	private void put(Listing listing)
+	{
+		Listing old = listMap.put(listing.getPetId(), listing);
+		if (old != null)
+		{
+			unindex(old);
+		}
+
+		allListings.add(listing);
+		byProduct.computeIfAbsent(listing.getProductId(), key -> new ListingIndex()).add(listing);
+		bySeller.computeIfAbsent(listing.getSellerUsername(), key -> new ListingIndex()).add(listing);
+
+		for (Listener listener : listeners)
+		{
+			if (old != null)
+			{
+				listener.listingRemoved(old);
+			}
+			listener.listingAdded(listing);
+		}
+	}
+
+	private boolean delete(PetId petId)
+	{
+		Listing old = listMap.remove(petId);
+		if (old == null)
+		{
+			return false;
+		}
+
+		unindex(old);
+
+		for (Listener listener : listeners)
+		{
+			listener.listingRemoved(old);
+		}
+		return true;
+	}
+
+	private void unindex(Listing listing)
+	{
+		allListings.remove(listing);
+		unindex(byProduct, listing.getProductId(), listing);
+		unindex(bySeller, listing.getSellerUsername(), listing);
+	}
+
+	private static void unindex(Map<String, ListingIndex> indexes, String key, Listing listing)
+	{
+		ListingIndex index = indexes.get(key);
+		if (index != null)
+		{
+			index.remove(listing);
+			if (index.isEmpty())
+			{
+				indexes.remove(key);
+			}
 		}
 	}
 	
 	// Public Methods
+
+	public void addListener(Listener listener)
+	{
+		listeners.add(listener);
+	}
 		
-	// Gets all current P2P listings
+	// Gets all current P2P listings, in no particular order (the screens use query())
 	public Collection<Listing> getAllListings()
 	{
 		return listMap.values();
 	}
+
+	// One page of the listings that match the query, in its order.
+	// Walks the smallest index that fits (one product's or one seller's listings if the query
+	// names one), from the cursor on, so a page costs the same with a thousand or a million listings.
+	public synchronized ListingPage query(ListingQuery query)
+	{
+		ListingIndex index = allListings;
+		if (query.getProductId() != null)
+		{
+			index = byProduct.get(query.getProductId());
+		}
+		if (query.getSeller() != null)
+		{
+			ListingIndex sellerIndex = bySeller.get(query.getSeller());
+			if (index == null || sellerIndex == null || sellerIndex.size() < index.size())
+			{
+				index = sellerIndex;
+			}
+		}
+
+		List<Listing> page = new ArrayList<>(query.getLimit());
+		if (index == null)
+		{
+			return new ListingPage(page, false);
+		}
+
+		// Only the listings in the range of the sort's own field are walked; the other filters are checked one by one
+		for (Listing listing : index.from(query))
+		{
+			if (!query.matches(listing))
+			{
+				continue;
+			}
+			if (page.size() == query.getLimit())
+			{
+				return new ListingPage(page, true);
+			}
+			page.add(listing);
+		}
+		return new ListingPage(page, false);
+	}
 	
 	// Finds a single listing by the pet's unique ID
-	public Listing getListing(String uniqueId)
+	public Listing getListing(PetId petId)
 	{
-		return listMap.get(uniqueId);
+		return listMap.get(petId);
 	}
 	
 	// Creates a new listing and saves it
-	public void createListing(User seller, Hangpie pet, double price)
+	public synchronized void createListing(User seller, Hangpie pet, double price)
 	{
 		Listing newListing = new Listing(seller.getUsername(), pet, price);
-		listMap.put(pet.getUniqueId(), newListing);
+		put(newListing);
 		saveListing();
 	}
 	
-	public void removeListing(String uniquePetId)
+	public synchronized void removeListing(PetId petId)
 	{
-		listMap.remove(uniquePetId);
+		delete(petId);
 		saveListing();
 	}
 	
+	// --- Used by the TransactionManager ---
+	// These only change memory; the journal already holds the change
+
+	synchronized void applyCreate(Listing listing)
+	{
+		put(listing);
+		dirty = true;
+	}
+
+	synchronized void applyRemove(PetId petId)
+	{
+		if (delete(petId))
+		{
+			dirty = true;
+		}
+	}
+
+	// Saves the listings file if a transaction changed it. Returns false if the save failed.
+	public synchronized boolean saveIfDirty()
+	{
+		return !dirty || saveListing();
+	}
+	
 	public int getListingCount()
 	{
 		return listMap.size();
@@ -0,0 +1,34 @@
+package controllers;
+
+import java.util.List;
+
+import models.Listing;
+
+// One page of ListingManager.query results
+public class ListingPage {
+	private List<Listing> listings;
+	private boolean hasNext;
+
+	ListingPage(List<Listing> listings, boolean hasNext) {
+		this.listings = listings;
+		this.hasNext = hasNext;
+	}
+
+	public List<Listing> getListings() {
+		return listings;
+	}
+
+	public boolean isEmpty() {
+		return listings.isEmpty();
+	}
+
+	// True if at least one more listing matches after this page
+	public boolean hasNext() {
+		return hasNext;
+	}
+
+	// The cursor for the next page (see ListingQuery.after), null if the page is empty
+	public Listing getLast() {
+		return listings.isEmpty() ? null : listings.get(listings.size() - 1);
+	}
+}
@@ -0,0 +1,112 @@
+package controllers;
+
+import models.Listing;
+
+// What to show of the marketplace: optional filters, a sort order and one page of results.
+// Pages are read with a cursor (the last listing of the previous page) instead of an offset,
+// so the next page starts right where the last one ended, however many listings there are.
+//
+//   ListingPage page = listingManager.query(new ListingQuery().product("P001").sort(Sort.PRICE_LOW).limit(10));
+//   ListingPage next = listingManager.query(query.after(page.getLast()));
+public class ListingQuery {
+	public enum Sort {
+		PRICE_LOW, PRICE_HIGH, LEVEL_LOW, LEVEL_HIGH
+	}
+
+	private String productId;
+	private String seller;
+	private double minPrice = 0;
+	private double maxPrice = Double.MAX_VALUE;
+	private int minLevel = 0;
+	private int maxLevel = Integer.MAX_VALUE;
+
+	private Sort sort = Sort.PRICE_LOW;
+	private int limit = 10;
+	private Listing after;
+
+	// --- Filters (null or left out = any) ---
+
+	public ListingQuery product(String productId) {
+		this.productId = productId;
+		return this;
+	}
+
+	public ListingQuery seller(String seller) {
+		this.seller = seller;
+		return this;
+	}
+
+	public ListingQuery price(double minPrice, double maxPrice) {
+		this.minPrice = minPrice;
+		this.maxPrice = maxPrice;
+		return this;
+	}
+
+	public ListingQuery level(int minLevel, int maxLevel) {
+		this.minLevel = minLevel;
+		this.maxLevel = maxLevel;
+		return this;
+	}
+
+	// --- Order and paging ---
+
+	public ListingQuery sort(Sort sort) {
+		this.sort = sort;
+		return this;
+	}
+
+	// Listings per page
+	public ListingQuery limit(int limit) {
+		this.limit = Math.max(1, limit);
+		return this;
+	}
+
+	// Starts after this listing (null = the first page). The listing may have been sold since.
+	public ListingQuery after(Listing cursor) {
+		this.after = cursor;
+		return this;
+	}
+
+	String getProductId() {
+		return productId;
+	}
+
+	String getSeller() {
+		return seller;
+	}
+
+	Sort getSort() {
+		return sort;
+	}
+
+	int getLimit() {
+		return limit;
+	}
+
+	Listing getAfter() {
+		return after;
+	}
+
+	double getMinPrice() {
+		return minPrice;
+	}
+
+	double getMaxPrice() {
+		return maxPrice;
+	}
+
+	int getMinLevel() {
+		return minLevel;
+	}
+
+	int getMaxLevel() {
+		return maxLevel;
+	}
+
+	boolean matches(Listing listing) {
+		return (productId == null || productId.equals(listing.getProductId()))
+				&& (seller == null || seller.equals(listing.getSellerUsername()))
+				&& listing.getPrice() >= minPrice && listing.getPrice() <= maxPrice
+				&& listing.getPetLevel() >= minLevel && listing.getPetLevel() <= maxLevel;
+	}
+}
@@ -0,0 +1,477 @@
+package controllers;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import storage.Storage;
+import utils.RecordReader;
+
+// The sealed (finished) parts of the activity log.
+// When the LogManager rolls activity_log.txt over, the old file is gzipped into the
+// activity_logs folder and a line describing it is added to activity_logs/manifest.txt:
+//
+//   fileName|firstTimestamp|lastTimestamp|entryCount|user=count,user=count,...
+//
+// The manifest is all a query needs to decide which segments to open, so old
+// segments that cannot match (wrong time range, or none of the user's entries)
+// are never read.
+public class LogArchive
+{
+	// Usernames are escaped (see escapeName), so a name with , = | or % cannot break the line
+	private static final String MANIFEST_HEADER = "// FORMAT: fileName|firstTimestamp|lastTimestamp|entryCount|user=count,...";
+
+	private File directory;
+	private File manifestFile;
+
+	// Oldest first
+	private List<Segment> segments = new ArrayList<>();
+
+	public static class Segment
+	{
+		private String fileName;
+		private String firstTimestamp;
+		private String lastTimestamp;
+		private int entryCount;
+		private Map<String, Integer> userCounts = new HashMap<>();
+
+		public String getFileName()
+		{
+			return fileName;
+		}
+
+		public String getFirstTimestamp()
+		{
+			return firstTimestamp;
+		}
+
+		public String getLastTimestamp()
+		{
+			return lastTimestamp;
+		}
+
+		public int getEntryCount()
+		{
+			return entryCount;
+		}
+
+		public int getUserCount(String username)
+		{
+			return userCounts.getOrDefault(username, 0);
+		}
+
+		// True if some of this segment's entries fall between from and to (both inclusive, null = open)
+		public boolean overlaps(String from, String to)
+		{
+			return (from == null || lastTimestamp.compareTo(from) >= 0)
+					&& (to == null || firstTimestamp.compareTo(to) <= 0);
+		}
+	}
+
+	public LogArchive(String directory)
+	{
+		this.directory = new File(directory);
+		this.manifestFile = new File(this.directory, "manifest.txt");
+		load();
+	}
+
+	private void load()
+	{
+		if (manifestFile.exists())
+		{
+			try (BufferedReader reader = new BufferedReader(new FileReader(manifestFile, StandardCharsets.UTF_8)))
+			{
+				String line;
+				while ((line = reader.readLine()) != null)
+				{
+					if (line.startsWith("//") || line.trim().isEmpty())
+					{
+						continue;
+					}
+
+					Segment segment = parseSegment(line);
+					if (segment != null && new File(directory, segment.fileName).exists())
+					{
+						segments.add(segment);
+					}
+				}
+			}
+			catch (IOException e)
+			{
+				System.err.println("Error loading log manifest: " + e.getMessage());
+			}
+		}
+
+		recoverLeftovers();
+	}
+
+	// Finishes whatever a crash interrupted: a rolled-over file that was not compressed yet,
+	// or a compressed segment that never made it into the manifest
+	private void recoverLeftovers()
+	{
+		File[] files = directory.listFiles();
+		if (files == null)
+		{
+			return;
+		}
+
+		Set<String> known = new HashSet<>();
+		for (Segment segment : segments)
+		{
+			known.add(segment.fileName);
+		}
+
+		boolean changed = false;
+
+		for (File file : files)
+		{
+			try
+			{
+				if (file.getName().endsWith(".txt") && !file.equals(manifestFile))
+				{
+					File gzipFile = new File(directory, file.getName() + ".gz");
+					if (known.contains(gzipFile.getName()))
+					{
+						file.delete();
+						continue;
+					}
+
+					Segment segment = compress(file, gzipFile);
+					if (segment != null)
+					{
+						segments.add(segment);
+						changed = true;
+					}
+				}
+				else if (file.getName().endsWith(".gz") && !known.contains(file.getName()))
+				{
+					Segment segment = new Segment();
+					segment.fileName = file.getName();
+					try (InputStream in = new GZIPInputStream(new FileInputStream(file)))
+					{
+						scan(in, segment, null);
+					}
+
+					if (segment.entryCount > 0)
+					{
+						segments.add(segment);
+						changed = true;
+					}
+				}
+			}
+			catch (IOException e)
+			{
+				System.err.println("[Warning]: Could not recover log segment " + file.getName() + ": " + e.getMessage());
+			}
+		}
+
+		if (changed)
+		{
+			segments.sort((a, b) -> a.firstTimestamp.compareTo(b.firstTimestamp));
+			saveManifest();
+		}
+	}
+
+	/**
+	 * Moves the finished log file into the archive: compresses it, records it in the manifest
+	 * and deletes the original. Only the LogManager's writer calls this, with the file closed.
+	 */
+	public synchronized void seal(File logFile) throws IOException
+	{
+		if (!logFile.exists() || logFile.length() == 0)
+		{
+			return;
+		}
+
+		directory.mkdirs();
+
+		// Move it out of the way first, so a crash while compressing is finished on the next start
+		String baseName = "activity_log-" + firstTimestampOf(logFile).replaceAll("[^0-9]", "");
+		File moved = new File(directory, baseName + ".txt");
+		for (int n = 1; moved.exists() || new File(directory, moved.getName() + ".gz").exists(); n++)
+		{
+			moved = new File(directory, baseName + "-" + n + ".txt");
+		}
+		Storage.replaceFile(logFile, moved);
+
+		Segment segment = compress(moved, new File(directory, moved.getName() + ".gz"));
+		if (segment != null)
+		{
+			segments.add(segment);
+			saveManifest();
+		}
+	}
+
+	// Gzips the file while counting its entries, then deletes it
+	private Segment compress(File source, File target) throws IOException
+	{
+		Segment segment = new Segment();
+		segment.fileName = target.getName();
+		File tempFile = new File(target.getPath() + ".tmp");
+
+		try (InputStream in = new FileInputStream(source);
+				OutputStream out = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)), 1 << 16))
+		{
+			scan(in, segment, out);
+		}
+
+		if (segment.entryCount == 0)
+		{
+			tempFile.delete();
+			source.delete();
+			return null;
+		}
+
+		Storage.replaceFile(tempFile, target);
+		source.delete();
+		return segment;
+	}
+
+	// Reads log lines, filling in the segment's time range and counts (and copying them to 'copy' if given)
+	private static void scan(InputStream in, Segment segment, OutputStream copy) throws IOException
+	{
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+		byte[] newLine = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+		String line;
+
+		while ((line = reader.readLine()) != null)
+		{
+			if (copy != null)
+			{
+				copy.write(line.getBytes(StandardCharsets.UTF_8));
+				copy.write(newLine);
+			}
+
+			String timestamp = LogManager.extractTimestamp(line);
+			if (timestamp == null)
+			{
+				continue;
+			}
+
+			if (segment.firstTimestamp == null || timestamp.compareTo(segment.firstTimestamp) < 0)
+			{
+				segment.firstTimestamp = timestamp;
+			}
+			if (segment.lastTimestamp == null || timestamp.compareTo(segment.lastTimestamp) > 0)
+			{
+				segment.lastTimestamp = timestamp;
+			}
+
+			String username = LogManager.extractUsername(line);
+			if (username != null)
+			{
+				segment.userCounts.merge(username, 1, Integer::sum);
+			}
+			segment.entryCount++;
+		}
+	}
+
+	private static String firstTimestampOf(File logFile) throws IOException
+	{
+		try (BufferedReader reader = new BufferedReader(new FileReader(logFile, StandardCharsets.UTF_8)))
+		{
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				String timestamp = LogManager.extractTimestamp(line);
+				if (timestamp != null)
+				{
+					return timestamp;
+				}
+			}
+		}
+		return "unknown";
+	}
+
+	/**
+	 * Returns the segment's lines that pass the filter, oldest first.
+	 * Only this one segment is decompressed.
+	 */
+	public List<String> read(Segment segment, Predicate<String> filter)
+	{
+		List<String> lines = new ArrayList<>();
+		File file = new File(directory, segment.fileName);
+
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new GZIPInputStream(new FileInputStream(file), 1 << 16), StandardCharsets.UTF_8)))
+		{
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				if (filter.test(line))
+				{
+					lines.add(line);
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			System.err.println("Error reading log segment " + segment.fileName + ": " + e.getMessage());
+		}
+
+		return lines;
+	}
+
+	// Newest segment first
+	public synchronized List<Segment> getSegmentsNewestFirst()
+	{
+		List<Segment> newestFirst = new ArrayList<>(segments);
+		Collections.reverse(newestFirst);
+		return newestFirst;
+	}
+
+	// Number of the user's entries in all sealed segments, from the manifest alone
+	public synchronized int getUserCount(String username)
+	{
+		int count = 0;
+		for (Segment segment : segments)
+		{
+			count += segment.getUserCount(username);
+		}
+		return count;
+	}
+
+	public synchronized int getSegmentCount()
+	{
+		return segments.size();
+	}
+
+	private void saveManifest()
+	{
+		File tempFile = new File(manifestFile.getPath() + ".tmp");
+
+		try (BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile, StandardCharsets.UTF_8)))
+		{
+			writer.write(MANIFEST_HEADER);
+			writer.newLine();
+
+			for (Segment segment : segments)
+			{
+				StringBuilder users = new StringBuilder();
+				for (Map.Entry<String, Integer> entry : segment.userCounts.entrySet())
+				{
+					if (users.length() > 0)
+					{
+						users.append(',');
+					}
+					users.append(escapeName(entry.getKey())).append('=').append(entry.getValue());
+				}
+
+				writer.write(String.join("|", segment.fileName, segment.firstTimestamp, segment.lastTimestamp,
+						String.valueOf(segment.entryCount), users));
+				writer.newLine();
+			}
+		}
+		catch (IOException e)
+		{
+			System.err.println("CRITICAL ERROR: Could not save log manifest: " + e.getMessage());
+			return;
+		}
+
+		try
+		{
+			Storage.replaceFile(tempFile, manifestFile);
+		}
+		catch (IOException e)
+		{
+			System.err.println("CRITICAL ERROR: Could not save log manifest: " + e.getMessage());
+		}
+	}
+
+	private static Segment parseSegment(String line)
+	{
+		RecordReader record = new RecordReader().reset(line);
+		if (record.getFieldCount() < 5)
+		{
+			return null;
+		}
+
+		try
+		{
+			Segment segment = new Segment();
+			segment.fileName = record.getString(0);
+			segment.firstTimestamp = record.getString(1);
+			segment.lastTimestamp = record.getString(2);
+			segment.entryCount = record.getInt(3);
+
+			if (!record.isEmpty(4))
+			{
+				for (String userCount : record.getString(4).split(","))
+				{
+					int split = userCount.lastIndexOf('=');
+					segment.userCounts.put(unescapeName(userCount.substring(0, split)),
+							Integer.parseInt(userCount.substring(split + 1)));
+				}
+			}
+			return segment;
+		}
+		catch (NumberFormatException | StringIndexOutOfBoundsException e)
+		{
+			System.err.println("[Warning]: Bad data in log manifest for line: " + line);
+			return null;
+		}
+	}
+
+	// The characters that separate the manifest's fields become %XX (and % itself, so it reads back)
+	private static String escapeName(String name)
+	{
+		StringBuilder escaped = new StringBuilder(name.length());
+		for (int i = 0; i < name.length(); i++)
+		{
+			char c = name.charAt(i);
+			if (c == '%' || c == ',' || c == '=' || c == '|' || c == '\n' || c == '\r')
+			{
+				escaped.append('%').append(String.format("%02X", (int) c));
+			}
+			else
+			{
+				escaped.append(c);
+			}
+		}
+		return escaped.toString();
+	}
+
+	private static String unescapeName(String name)
+	{
+		if (name.indexOf('%') < 0)
+		{
+			return name;
+		}
+
+		StringBuilder unescaped = new StringBuilder(name.length());
+		for (int i = 0; i < name.length(); i++)
+		{
+			char c = name.charAt(i);
+			if (c == '%' && i + 2 < name.length())
+			{
+				unescaped.append((char) Integer.parseInt(name.substring(i + 1, i + 3), 16));
+				i += 2;
+			}
+			else
+			{
+				unescaped.append(c);
+			}
+		}
+		return unescaped.toString();
+	}
+}
@@ -1,38 +1,643 @@
 package controllers;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import utils.OffsetIndex;
+import utils.RingBuffer;
 
 public class LogManager
 {
 	private static String logFile = "activity_log.txt";
+	private static String indexFile = "activity_log.idx";
 	private static DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
+	private static final int QUEUE_CAPACITY = 8192;
+
+	// Entries waiting for the background writer
+	private static final RingBuffer<LogEntry> queue = new RingBuffer<>(QUEUE_CAPACITY);
+
+	// Writer settings, see configure()
+	private static volatile long flushIntervalMillis = 200;
+	private static volatile int flushBatchSize = 256;
+
+	// Counters
+	private static final AtomicLong queuedCount = new AtomicLong();
+	private static final AtomicLong droppedCount = new AtomicLong();
+	private static final AtomicLong writtenCount = new AtomicLong();
+
+	private static Thread writerThread;
+	private static volatile boolean running;
+
+	// username -> byte offsets of that user's entries in activity_log.txt, kept up to date by the writer
+	private static OffsetIndex userIndex;
+	private static final Object indexLock = new Object();
+
+	// Older entries, rolled over into gzipped segments (see LogArchive)
+	private static String archiveDirectory = "activity_logs";
+	private static LogArchive archive;
+	private static volatile long maxSegmentBytes = 8L * 1024 * 1024;
+
+	// Queries hold the read lock, so the writer never rolls the file over in the middle of one
+	private static final ReentrantReadWriteLock segmentLock = new ReentrantReadWriteLock();
+
+	// A log call captured on the caller's thread, formatted later by the writer
+	private static class LogEntry
+	{
+		private final LocalDateTime timestamp;
+		private final String username;
+		private final String message;
+
+		private LogEntry(LocalDateTime timestamp, String username, String message)
+		{
+			this.timestamp = timestamp;
+			this.username = username;
+			this.message = message;
+		}
+	}
+
 	/**
-	 * Writes a new log entry to the activity_log.txt file.
+	 * Queues a new log entry for the activity_log.txt file.
 	 * This method is 'static' so we can call it from anywhere.
+	 * The entry is written to disk by the background writer, so the caller never waits on the file.
 	 *
 	 * @parameter username The user who performed the action.
 	 * @parameter message  The action they performed.
 	 */
-	
+
 	public static void log(String username, String message)
 	{
-		String timestamp = LocalDateTime.now().format(formatter);
-		String logEntry = String.format("[%s] | %s | %s", timestamp, username, message);
-		
-		// 'true' in FileWriter means "append to file"
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(logFile, true)))
-        {
-        	writer.write(logEntry);
-        	writer.newLine();
-        }
-        catch (IOException e)
-        {
-        	System.err.println("CRITICAL: Failed to write to activity log: " + e.getMessage());
-        }
+		ensureWriterStarted();
+
+		if (queue.offer(new LogEntry(LocalDateTime.now(), username, message)))
+		{
+			// Wake the writer early once a full batch is waiting
+			if (queuedCount.incrementAndGet() - writtenCount.get() >= flushBatchSize)
+			{
+				LockSupport.unpark(writerThread);
+			}
+		}
+		else
+		{
+			droppedCount.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Sets how often the background writer flushes, and how many queued entries wake it up early.
+	 */
+	public static void configure(long flushIntervalMillis, int flushBatchSize)
+	{
+		LogManager.flushIntervalMillis = Math.max(1, flushIntervalMillis);
+		LogManager.flushBatchSize = Math.max(1, flushBatchSize);
+	}
+
+	/**
+	 * Blocks until every entry queued so far is on disk.
+	 * Call this before reading activity_log.txt so the newest entries show up.
+	 */
+	public static void flush()
+	{
+		long target = queuedCount.get();
+
+		while (running && writtenCount.get() < target)
+		{
+			LockSupport.unpark(writerThread);
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+		}
+	}
+
+	/**
+	 * Drains the queue to disk and stops the background writer. Called on exit.
+	 */
+	public static synchronized void shutdown()
+	{
+		if (!running)
+		{
+			return;
+		}
+
+		flush();
+		running = false;
+		LockSupport.unpark(writerThread);
+
+		try
+		{
+			writerThread.join();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		writerThread = null;
+		getUserIndex().close();
+	}
+
+	/**
+	 * Keeps the log, its index and its archive in another folder, e.g. the benchmarks' temp folder.
+	 * Only takes effect before the first entry is logged.
+	 */
+	public static synchronized void useDirectory(String directory)
+	{
+		if (running)
+		{
+			System.err.println("[Warning]: The activity log is already open, it stays in " + logFile);
+			return;
+		}
+
+		logFile = new File(directory, "activity_log.txt").getPath();
+		indexFile = new File(directory, "activity_log.idx").getPath();
+		archiveDirectory = new File(directory, "activity_logs").getPath();
+	}
+
+	/**
+	 * Sets when activity_log.txt is rolled over into the archive: at the first entry of a new day,
+	 * or once the file is 'maxSegmentBytes' big, whichever comes first.
+	 */
+	public static void configureSegments(long maxSegmentBytes)
+	{
+		LogManager.maxSegmentBytes = Math.max(1, maxSegmentBytes);
+	}
+
+	/**
+	 * Returns a page of the user's log entries, newest first.
+	 * Only the user's own entries are read, no matter how big the log file is, and old
+	 * segments are only opened once the page reaches back into them.
+	 *
+	 * @parameter skip  How many of the newest entries to skip (page * pageSize).
+	 * @parameter limit The maximum number of entries to return.
+	 */
+	public static List<String> getUserEntries(String username, int skip, int limit)
+	{
+		flush();
+
+		segmentLock.readLock().lock();
+		try
+		{
+			OffsetIndex index = getUserIndex();
+			List<String> entries = new ArrayList<>(index.getNewest(username, skip, limit));
+			skip = Math.max(0, skip - index.count(username));
+
+			for (LogArchive.Segment segment : getArchive().getSegmentsNewestFirst())
+			{
+				if (entries.size() >= limit)
+				{
+					break;
+				}
+
+				// The manifest says how many of the user's entries each segment has,
+				// so whole segments can be skipped without opening them
+				int count = segment.getUserCount(username);
+				if (count <= skip)
+				{
+					skip -= count;
+					continue;
+				}
+
+				List<String> lines = getArchive().read(segment, line -> username.equals(extractUsername(line)));
+				for (int i = lines.size() - 1 - skip; i >= 0 && entries.size() < limit; i--)
+				{
+					entries.add(lines.get(i));
+				}
+				skip = 0;
+			}
+
+			return entries;
+		}
+		finally
+		{
+			segmentLock.readLock().unlock();
+		}
+	}
+
+	public static int getUserEntryCount(String username)
+	{
+		flush();
+
+		segmentLock.readLock().lock();
+		try
+		{
+			return getUserIndex().count(username) + getArchive().getUserCount(username);
+		}
+		finally
+		{
+			segmentLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns up to 'limit' log entries between 'from' and 'to', newest first.
+	 * Only the segments whose time range overlaps the query (and that have entries
+	 * of the user, if one is given) are opened.
+	 *
+	 * @parameter username Only this user's entries, or null for everyone's.
+	 * @parameter from     The earliest time to include, or null for no lower bound.
+	 * @parameter to       The latest time to include, or null for no upper bound.
+	 */
+	public static List<String> query(String username, LocalDateTime from, LocalDateTime to, int limit)
+	{
+		flush();
+
+		String fromText = from == null ? null : from.format(formatter);
+		String toText = to == null ? null : to.format(formatter);
+		List<String> entries = new ArrayList<>();
+
+		segmentLock.readLock().lock();
+		try
+		{
+			boolean reachedFrom = queryActive(username, fromText, toText, limit, entries);
+
+			for (LogArchive.Segment segment : getArchive().getSegmentsNewestFirst())
+			{
+				if (reachedFrom || entries.size() >= limit)
+				{
+					break;
+				}
+
+				if (!segment.overlaps(fromText, toText) || (username != null && segment.getUserCount(username) == 0))
+				{
+					continue;
+				}
+
+				List<String> lines = getArchive().read(segment,
+						line -> matches(line, username, fromText, toText));
+				for (int i = lines.size() - 1; i >= 0 && entries.size() < limit; i--)
+				{
+					entries.add(lines.get(i));
+				}
+			}
+
+			return entries;
+		}
+		finally
+		{
+			segmentLock.readLock().unlock();
+		}
+	}
+
+	// The active file's part of query(). Returns true once entries older than 'from' were seen,
+	// since every sealed segment is older still.
+	private static boolean queryActive(String username, String from, String to, int limit, List<String> entries)
+	{
+		if (username != null)
+		{
+			// Walk the user's entries newest first, a page at a time, until we are past 'from'
+			OffsetIndex index = getUserIndex();
+			int skip = 0;
+			List<String> page;
+
+			while (entries.size() < limit && !(page = index.getNewest(username, skip, 256)).isEmpty())
+			{
+				for (String line : page)
+				{
+					String timestamp = extractTimestamp(line);
+					if (from != null && timestamp != null && timestamp.compareTo(from) < 0)
+					{
+						return true;
+					}
+
+					if (matches(line, username, from, to) && entries.size() < limit)
+					{
+						entries.add(line);
+					}
+				}
+				skip += page.size();
+			}
+			return false;
+		}
+
+		// The active file holds a day at most, so reading it whole is fine
+		List<String> lines = new ArrayList<>();
+		File file = new File(logFile);
+		if (file.exists())
+		{
+			try (BufferedReader reader = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8)))
+			{
+				String line;
+				while ((line = reader.readLine()) != null)
+				{
+					lines.add(line);
+				}
+			}
+			catch (IOException e)
+			{
+				System.err.println("Error reading " + logFile + ": " + e.getMessage());
+			}
+		}
+
+		for (int i = lines.size() - 1; i >= 0; i--)
+		{
+			String timestamp = extractTimestamp(lines.get(i));
+			if (from != null && timestamp != null && timestamp.compareTo(from) < 0)
+			{
+				return true;
+			}
+
+			if (entries.size() < limit && matches(lines.get(i), null, from, to))
+			{
+				entries.add(lines.get(i));
+			}
+		}
+		return false;
+	}
+
+	private static boolean matches(String line, String username, String from, String to)
+	{
+		String timestamp = extractTimestamp(line);
+		if (timestamp == null)
+		{
+			return false;
+		}
+
+		return (from == null || timestamp.compareTo(from) >= 0)
+				&& (to == null || timestamp.compareTo(to) <= 0)
+				&& (username == null || username.equals(extractUsername(line)));
+	}
+
+	// Pulls the timestamp out of "[yyyy-MM-dd HH:mm:ss] | username | message".
+	// In that format comparing the text compares the times, so it is never parsed.
+	static String extractTimestamp(String line)
+	{
+		if (line.length() < 21 || line.charAt(0) != '[' || line.charAt(20) != ']')
+		{
+			return null;
+		}
+		return line.substring(1, 20);
+	}
+
+	// Pulls the username out of "[timestamp] | username | message"
+	static String extractUsername(String line)
+	{
+		int start = line.indexOf("] | ");
+		if (start < 0)
+		{
+			return null;
+		}
+
+		start += 4;
+		int end = line.indexOf(" | ", start);
+		return end < 0 ? null : line.substring(start, end);
+	}
+
+	private static OffsetIndex getUserIndex()
+	{
+		synchronized (indexLock)
+		{
+			if (userIndex == null)
+			{
+				userIndex = new OffsetIndex(logFile, indexFile, LogManager::extractUsername);
+			}
+			return userIndex;
+		}
+	}
+
+	private static LogArchive getArchive()
+	{
+		synchronized (indexLock)
+		{
+			if (archive == null)
+			{
+				archive = new LogArchive(archiveDirectory);
+			}
+			return archive;
+		}
+	}
+
+	// Number of sealed, compressed segments in the archive
+	public static int getSegmentCount()
+	{
+		return getArchive().getSegmentCount();
+	}
+
+	public static long getQueuedCount()
+	{
+		return queuedCount.get();
+	}
+
+	public static long getDroppedCount()
+	{
+		return droppedCount.get();
+	}
+
+	public static long getWrittenCount()
+	{
+		return writtenCount.get();
+	}
+
+	// Number of entries waiting to be written right now
+	public static int getPendingCount()
+	{
+		return queue.size();
+	}
+
+	private static void ensureWriterStarted()
+	{
+		if (running)
+		{
+			return;
+		}
+
+		synchronized (LogManager.class)
+		{
+			if (!running)
+			{
+				// The index must be caught up with the file before the writer appends to it
+				getUserIndex();
+				getArchive();
+
+				running = true;
+				writerThread = new Thread(LogManager::runWriter, "LogManager-Writer");
+				writerThread.setDaemon(true);
+				writerThread.start();
+			}
+		}
+	}
+
+	// The background writer: keeps the file open, writes entries in batches and indexes them.
+	// When a new day starts (or the file gets too big) it rolls the file over into the archive.
+	private static void runWriter()
+	{
+		byte[] newLine = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+		OutputStream writer = null;
+
+		try
+		{
+			// 'true' in FileOutputStream means "append to file"
+			writer = new BufferedOutputStream(new FileOutputStream(logFile, true));
+			long position = new File(logFile).length();
+			String activeDay = readActiveDay();
+			StringBuilder line = new StringBuilder(128);
+
+			LogEntry[] batch = new LogEntry[16];
+			long[] offsets = new long[16];
+			int[] lengths = new int[16];
+
+			while (running || queue.size() > 0)
+			{
+				int written = 0;
+				int limit = flushBatchSize;
+				LogEntry entry;
+
+				if (batch.length < limit)
+				{
+					batch = new LogEntry[limit];
+					offsets = new long[limit];
+					lengths = new int[limit];
+				}
+
+				while (written < limit && (entry = queue.poll()) != null)
+				{
+					String timestamp = entry.timestamp.format(formatter);
+					String day = timestamp.substring(0, 10);
+
+					if (position > 0 && (!day.equals(activeDay) || position >= maxSegmentBytes))
+					{
+						// Everything written so far belongs to the old file
+						commitBatch(writer, batch, offsets, lengths, written);
+						written = 0;
+
+						writer.close();
+						writer = null;
+						rollOver();
+						writer = new BufferedOutputStream(new FileOutputStream(logFile, true));
+						position = 0;
+					}
+
+					if (position == 0)
+					{
+						activeDay = day;
+					}
+
+					line.setLength(0);
+					line.append('[').append(timestamp).append("] | ")
+						.append(entry.username).append(" | ").append(entry.message);
+
+					byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+					writer.write(bytes);
+					writer.write(newLine);
+
+					batch[written] = entry;
+					offsets[written] = position;
+					lengths[written] = bytes.length;
+					position += bytes.length + newLine.length;
+					written++;
+				}
+
+				commitBatch(writer, batch, offsets, lengths, written);
+
+				// Nothing left (or a full batch done): sleep until the next interval or an early wake-up
+				if (queue.size() == 0)
+				{
+					LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis));
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			System.err.println("CRITICAL: Failed to write to activity log: " + e.getMessage());
+			running = false;
+		}
+		finally
+		{
+			if (writer != null)
+			{
+				try
+				{
+					writer.close();
+				}
+				catch (IOException e)
+				{
+					System.err.println("CRITICAL: Failed to write to activity log: " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	// Flushes the written lines and indexes them
+	private static void commitBatch(OutputStream writer, LogEntry[] batch, long[] offsets, int[] lengths, int written)
+			throws IOException
+	{
+		if (written == 0)
+		{
+			return;
+		}
+
+		writer.flush();
+
+		// Index only after the lines are on disk, so lookups never point past the end of the file
+		OffsetIndex index = getUserIndex();
+		for (int i = 0; i < written; i++)
+		{
+			index.add(batch[i].username, offsets[i], lengths[i]);
+			batch[i] = null;
+		}
+		index.flush();
+
+		writtenCount.addAndGet(written);
+	}
+
+	// Seals the (closed) activity_log.txt into the archive and starts an empty one with a fresh index
+	private static void rollOver() throws IOException
+	{
+		segmentLock.writeLock().lock();
+		try
+		{
+			synchronized (indexLock)
+			{
+				getUserIndex().close();
+				userIndex = null;
+			}
+
+			getArchive().seal(new File(logFile));
+			new File(indexFile).delete();
+			getUserIndex();
+		}
+		finally
+		{
+			segmentLock.writeLock().unlock();
+		}
+	}
+
+	// The day of the first entry in activity_log.txt, or null if it is empty
+	private static String readActiveDay()
+	{
+		File file = new File(logFile);
+		if (!file.exists())
+		{
+			return null;
+		}
+
+		try (BufferedReader reader = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8)))
+		{
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				String timestamp = extractTimestamp(line);
+				if (timestamp != null)
+				{
+					return timestamp.substring(0, 10);
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			System.err.println("[Warning]: Could not read " + logFile + ": " + e.getMessage());
+		}
+		return null;
 	}
 }
@@ -0,0 +1,442 @@
+package controllers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import controllers.OrderBook.Ask;
+import models.BuyOrder;
+import models.Gold;
+import models.Hangpie;
+import models.LedgerEntry;
+import models.Listing;
+import models.User;
+
+// Matches the marketplace listings (asks) with buy orders (bids), in one OrderBook per product.
+//
+// Single writer: every change to the books (a listing added or sold, an order placed or
+// cancelled, a buy from the Marketplace screen) is an event on one queue, handled by one thread
+// in the order it arrived, so matching needs no locks. Callers get a future with the Result.
+//
+// A fill is the same trade as buying a listing on the Marketplace screen, always at the listing's
+// price: the gold moves through the GoldLedger, the buyer gets the listed pet, and the listing,
+// both users, the gold and the filled order are saved as one transaction. The engine does not
+// wait for that save (commitAsync), so the fills of a busy moment share one group commit. If the
+// save fails, the fill is undone and the listing and order go back into the book.
+//
+// Orders do not hold the buyer's gold; an order whose buyer cannot pay when it matches is cancelled.
+public class MarketEngine {
+	public enum Result {
+		FILLED, OPEN, CANCELLED, NOT_FOR_SALE, OWN_LISTING, NOT_ENOUGH_GOLD, SELLER_GONE, NO_PRODUCT, NO_ORDER,
+		NOT_SAVED
+	}
+
+	private UserManager userManager;
+	private ProductManager productManager;
+	private ListingManager listingManager;
+	private BuyOrderManager buyOrderManager;
+	private GoldLedger goldLedger;
+	private TransactionManager transactionManager;
+
+	// Only touched by the engine's thread
+	private Map<String, OrderBook> books = new HashMap<>();
+	private long nextAskSeq;
+
+	private BlockingQueue<Runnable> events = new LinkedBlockingQueue<>();
+	private Thread loop;
+	private volatile boolean running;
+
+	private AtomicLong matchCount = new AtomicLong();
+
+	public MarketEngine(UserManager userManager, ProductManager productManager, ListingManager listingManager,
+			BuyOrderManager buyOrderManager, GoldLedger goldLedger, TransactionManager transactionManager) {
+		this.userManager = userManager;
+		this.productManager = productManager;
+		this.listingManager = listingManager;
+		this.buyOrderManager = buyOrderManager;
+		this.goldLedger = goldLedger;
+		this.transactionManager = transactionManager;
+
+		// The books are filled first; listing changes from here on queue up behind that
+		running = true;
+		events.add(this::loadBooks);
+		listingManager.addListener(new ListingManager.Listener() {
+			@Override
+			public void listingAdded(Listing listing) {
+				submit(() -> onListingAdded(listing));
+			}
+
+			@Override
+			public void listingRemoved(Listing listing) {
+				submit(() -> onListingRemoved(listing));
+			}
+		});
+
+		loop = new Thread(this::runLoop, "MarketEngine");
+		loop.setDaemon(true);
+		loop.start();
+	}
+
+	// --- Requests ---
+
+	// Places an order for one pet of the product. FILLED if a listing matched right away,
+	// otherwise OPEN until one does. The buyer needs 'maxPrice' gold to place it.
+	public CompletableFuture<Result> placeOrder(User buyer, String productId, double maxPrice, int minLevel) {
+		return request(result -> {
+			if (productManager.getProductById(productId) == null) {
+				result.complete(Result.NO_PRODUCT);
+				return;
+			}
+			if (buyer.getAvailableGold() < Gold.toMinor(maxPrice)) {
+				result.complete(Result.NOT_ENOUGH_GOLD);
+				return;
+			}
+
+			BuyOrder order = buyOrderManager.newOrder(buyer.getUsername(), productId, maxPrice, minLevel);
+			matchOrder(book(productId), order, buyer, result);
+		});
+	}
+
+	// CANCELLED, or NO_ORDER if it is not the buyer's open order (e.g. it was just filled)
+	public CompletableFuture<Result> cancelOrder(User buyer, long orderId) {
+		return request(result -> {
+			BuyOrder order = buyOrderManager.getOrder(orderId);
+			OrderBook book = order == null ? null : books.get(order.getProductId());
+			if (book == null || !order.getBuyerUsername().equals(buyer.getUsername()) || book.removeBid(orderId) == null) {
+				result.complete(Result.NO_ORDER);
+				return;
+			}
+
+			transactionManager.begin()
+					.closeOrder(orderId)
+					.log(buyer.getUsername(), "Cancelled buy order #" + orderId + ".")
+					.commitAsync()
+					.thenAccept(saved -> {
+						if (saved) {
+							result.complete(Result.CANCELLED);
+						} else {
+							submit(() -> {
+								book.addBid(order);
+								result.complete(Result.NOT_SAVED);
+							});
+						}
+					});
+		});
+	}
+
+	// Buys one listing straight away (the Marketplace screen's "Buy")
+	public CompletableFuture<Result> buy(User buyer, Listing listing) {
+		return request(result -> {
+			OrderBook book = books.get(listing.getProductId());
+			Ask ask = book == null ? null : book.getAsk(listing.getPetId());
+			if (ask == null || ask.getListing() != listing) {
+				result.complete(Result.NOT_FOR_SALE);
+				return;
+			}
+			if (listing.getSellerUsername().equals(buyer.getUsername())) {
+				result.complete(Result.OWN_LISTING);
+				return;
+			}
+
+			Result filled = fill(book, ask, buyer, null, result);
+			if (filled != Result.FILLED) {
+				result.complete(filled);
+			}
+		});
+	}
+
+	// --- Events (engine thread only) ---
+
+	private void loadBooks() {
+		for (Listing listing : listingManager.getAllListings()) {
+			book(listing.getProductId()).addAsk(new Ask(listing, nextAskSeq++));
+		}
+
+		List<BuyOrder> orders = new ArrayList<>(buyOrderManager.getAllOrders());
+		orders.sort((a, b) -> Long.compare(a.getId(), b.getId()));
+		for (BuyOrder order : orders) {
+			book(order.getProductId()).addBid(order);
+		}
+
+		// An undone fill puts back an ask and a bid that match; they are tried again here
+		for (Listing listing : listingManager.getAllListings()) {
+			OrderBook book = books.get(listing.getProductId());
+			Ask ask = book == null ? null : book.getAsk(listing.getPetId());
+			if (ask != null && ask.getListing() == listing) {
+				matchAsk(book, ask);
+			}
+		}
+	}
+
+	private void onListingAdded(Listing listing) {
+		OrderBook book = book(listing.getProductId());
+		Ask ask = new Ask(listing, nextAskSeq++);
+		book.addAsk(ask);
+		matchAsk(book, ask);
+	}
+
+	private void onListingRemoved(Listing listing) {
+		OrderBook book = books.get(listing.getProductId());
+		Ask ask = book == null ? null : book.getAsk(listing.getPetId());
+
+		// A filled ask already left the book; a replaced one may be back with a new listing
+		if (ask != null && ask.getListing() == listing) {
+			book.removeAsk(listing.getPetId());
+		}
+	}
+
+	// A new listing: fills the best order that takes it, if any
+	private void matchAsk(OrderBook book, Ask ask) {
+		while (true) {
+			BuyOrder order = book.bestBidFor(ask.getListing());
+			if (order == null) {
+				return;
+			}
+
+			User buyer = userManager.getUserByUsername(order.getBuyerUsername());
+			Result filled = buyer == null ? Result.NOT_ENOUGH_GOLD : fill(book, ask, buyer, order, null);
+			if (filled != Result.NOT_ENOUGH_GOLD) {
+				return;
+			}
+
+			// The buyer cannot pay any more, so the next order gets its turn
+			cancelUnpaid(book, order, buyer);
+		}
+	}
+
+	// A new order: fills it with the best listing it takes, or leaves it open in the book
+	private void matchOrder(OrderBook book, BuyOrder order, User buyer, CompletableFuture<Result> result) {
+		while (true) {
+			Ask ask = book.bestAskFor(order);
+			if (ask == null) {
+				break;
+			}
+
+			Result filled = fill(book, ask, buyer, null, result);
+			if (filled == Result.FILLED) {
+				return;
+			}
+			if (filled == Result.NOT_ENOUGH_GOLD) {
+				result.complete(filled);
+				return;
+			}
+			// Otherwise that listing could not be sold and left the book, try the next one
+		}
+
+		book.addBid(order);
+		transactionManager.begin()
+				.placeOrder(order)
+				.log(buyer.getUsername(), "Placed buy order #" + order.getId() + " for a " + productName(order.getProductId())
+						+ " at up to " + order.getMaxPrice() + "G.")
+				.commitAsync()
+				.thenAccept(saved -> {
+					if (saved) {
+						result.complete(Result.OPEN);
+					} else {
+						submit(() -> {
+							book.removeBid(order.getId());
+							result.complete(Result.NOT_SAVED);
+						});
+					}
+				});
+	}
+
+	// Sells the ask to the buyer (and closes the order if one was resting in the book).
+	// Returns FILLED once the trade is applied in memory and on its way to disk; 'result'
+	// (if any) is completed when the save is done. Any other Result means nothing changed.
+	private Result fill(OrderBook book, Ask ask, User buyer, BuyOrder order, CompletableFuture<Result> result) {
+		Listing listing = ask.getListing();
+
+		User seller = userManager.getUserByUsername(listing.getSellerUsername());
+		if (seller == null) {
+			System.err.println("[Warning]: The seller of listing " + listing.getUniqueId() + " no longer exists, removing it.");
+			book.removeAsk(listing.getPetId());
+			listingManager.removeListing(listing.getPetId());
+			return Result.SELLER_GONE;
+		}
+
+		Hangpie blueprint = productManager.getProductById(listing.getProductId());
+		if (blueprint == null) {
+			book.removeAsk(listing.getPetId());
+			return Result.NO_PRODUCT;
+		}
+
+		// 1. "Rebuild" the listed pet, keeping its ID
+		Hangpie pet = new Hangpie(blueprint, listing.getPetId());
+		pet.setName(listing.getPetName());
+		pet.setLevel(listing.getPetLevel());
+		pet.setMaxHealth(listing.getPetHealth());
+		pet.setAttackPower(listing.getPetAttack());
+		pet.setCurrentExp(listing.getPetExp());
+
+		// 2. Transfer Gold, and give the pet to the buyer
+		List<LedgerEntry> payment = goldLedger.transfer(buyer, seller, listing.getPrice(), LedgerEntry.Reason.MARKET_BUY,
+				LedgerEntry.Reason.MARKET_SALE, listing.getUniqueId());
+		if (payment == null) {
+			return Result.NOT_ENOUGH_GOLD;
+		}
+
+		try {
+			buyer.addToInventory(pet);
+
+			book.removeAsk(listing.getPetId());
+			if (order != null) {
+				book.removeBid(order.getId());
+			}
+
+			String logMsg = "Bought " + pet.getName() + " from " + seller.getUsername() + " for " + listing.getPrice() + "G"
+					+ (order != null ? " (buy order #" + order.getId() + ")." : ".");
+			String sellerLogMsg = "Sold " + pet.getName() + " to " + buyer.getUsername() + " for " + listing.getPrice() + "G.";
+
+			// 3. Remove the listing and save both users and the gold, all in one transaction
+			UnitOfWork work = transactionManager.begin()
+					.removeListing(listing.getPetId())
+					.updateUser(buyer)
+					.updateUser(seller)
+					.gold(payment)
+					.log(buyer.getUsername(), logMsg)
+					.log(seller.getUsername(), sellerLogMsg);
+			if (order != null) {
+				work.closeOrder(order.getId());
+			}
+
+			work.commitAsync().thenAccept(saved -> {
+				if (saved) {
+					matchCount.incrementAndGet();
+					if (result != null) {
+						result.complete(Result.FILLED);
+					}
+					return;
+				}
+
+				// Nothing was saved, so undo the changes in memory too
+				submit(() -> {
+					undoFill(book, ask, buyer, order, pet, payment);
+					if (result != null) {
+						result.complete(Result.NOT_SAVED);
+					}
+				});
+			});
+		} catch (RuntimeException e) {
+			// Nothing reached the journal, so the payment and the pet must not stay either
+			undoFill(book, ask, buyer, order, pet, payment);
+			throw e;
+		}
+		return Result.FILLED;
+	}
+
+	// Takes back a fill that was not saved and puts its listing and order back in the book
+	private void undoFill(OrderBook book, Ask ask, User buyer, BuyOrder order, Hangpie pet, List<LedgerEntry> payment) {
+		Listing listing = ask.getListing();
+
+		buyer.removeToInventory(pet);
+		goldLedger.revert(payment);
+		if (listingManager.getListing(listing.getPetId()) == listing) {
+			book.addAsk(ask);
+		}
+		if (order != null && buyOrderManager.getOrder(order.getId()) != null) {
+			book.addBid(order);
+		}
+	}
+
+	private void cancelUnpaid(OrderBook book, BuyOrder order, User buyer) {
+		book.removeBid(order.getId());
+
+		UnitOfWork work = transactionManager.begin().closeOrder(order.getId());
+		if (buyer != null) {
+			work.log(buyer.getUsername(), "Buy order #" + order.getId() + " was cancelled: not enough gold to pay for a matching "
+					+ productName(order.getProductId()) + ".");
+		}
+		work.commitAsync();
+	}
+
+	private OrderBook book(String productId) {
+		return books.computeIfAbsent(productId, key -> new OrderBook());
+	}
+
+	private String productName(String productId) {
+		Hangpie product = productManager.getProductById(productId);
+		return product != null ? product.getName() : productId;
+	}
+
+	// --- The event loop ---
+
+	private CompletableFuture<Result> request(Consumer<CompletableFuture<Result>> handler) {
+		CompletableFuture<Result> result = new CompletableFuture<>();
+		submit(() -> {
+			try {
+				handler.accept(result);
+			} catch (RuntimeException e) {
+				result.completeExceptionally(e);
+				throw e;
+			}
+		});
+		return result;
+	}
+
+	private void submit(Runnable event) {
+		boolean queued;
+		synchronized (events) {
+			queued = running;
+			if (queued) {
+				events.add(event);
+			}
+		}
+
+		if (!queued) {
+			// Shut down already, handle it on this thread
+			handle(event);
+		}
+	}
+
+	private void runLoop() {
+		while (running || !events.isEmpty()) {
+			try {
+				Runnable event = events.poll(100, TimeUnit.MILLISECONDS);
+				if (event != null) {
+					handle(event);
+				}
+			} catch (InterruptedException e) {
+				// Check 'running' again
+			}
+		}
+	}
+
+	private void handle(Runnable event) {
+		try {
+			event.run();
+		} catch (RuntimeException e) {
+			System.err.println("CRITICAL ERROR: Marketplace event failed: " + e);
+		}
+	}
+
+	// Handles whatever is still queued and stops the engine. Call before the TransactionManager's shutdown.
+	public void shutdown() {
+		if (!running) {
+			return;
+		}
+
+		synchronized (events) {
+			running = false;
+		}
+		loop.interrupt();
+
+		try {
+			loop.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// Fills saved since the start
+	public long getMatchCount() {
+		return matchCount.get();
+	}
+}
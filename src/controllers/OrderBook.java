@@ -0,0 +1,129 @@
+package controllers;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+import models.BuyOrder;
+import models.Listing;
+import models.PetId;
+
+// The open asks (listings) and bids (buy orders) of one product, in price-time priority:
+// the cheapest ask and the highest bid first, and the oldest first at the same price.
+// Adding and removing either side is O(log n); the maps find an order to cancel by its ID.
+// Only the MarketEngine's thread uses it, so it has no locks.
+class OrderBook {
+	// A listing with its place in the queue (the order it arrived in)
+	static class Ask {
+		private final Listing listing;
+		private final long seq;
+
+		Ask(Listing listing, long seq) {
+			this.listing = listing;
+			this.seq = seq;
+		}
+
+		Listing getListing() {
+			return listing;
+		}
+	}
+
+	private static final Comparator<Ask> ASK_PRIORITY = Comparator.comparingDouble((Ask ask) -> ask.listing.getPrice())
+			.thenComparingLong(ask -> ask.seq);
+	private static final Comparator<BuyOrder> BID_PRIORITY = Comparator.comparingDouble(BuyOrder::getMaxPrice)
+			.reversed().thenComparingLong(BuyOrder::getId);
+
+	private NavigableSet<Ask> asks = new TreeSet<>(ASK_PRIORITY);
+	private Map<PetId, Ask> asksById = new HashMap<>();
+
+	private NavigableSet<BuyOrder> bids = new TreeSet<>(BID_PRIORITY);
+	private Map<Long, BuyOrder> bidsById = new HashMap<>();
+
+	// --- Asks ---
+
+	void addAsk(Ask ask) {
+		Ask old = asksById.put(ask.listing.getPetId(), ask);
+		if (old != null) {
+			asks.remove(old);
+		}
+		asks.add(ask);
+	}
+
+	Ask getAsk(PetId petId) {
+		return asksById.get(petId);
+	}
+
+	Ask removeAsk(PetId petId) {
+		Ask ask = asksById.remove(petId);
+		if (ask != null) {
+			asks.remove(ask);
+		}
+		return ask;
+	}
+
+	// The first ask in priority order the bid would buy, or null. Asks the bid cannot take
+	// (too low a level, or the buyer's own) are skipped, so this walks past those only.
+	Ask bestAskFor(BuyOrder bid) {
+		for (Ask ask : asks) {
+			Listing listing = ask.listing;
+			if (listing.getPrice() > bid.getMaxPrice()) {
+				return null;
+			}
+			if (listing.getPetLevel() >= bid.getMinLevel()
+					&& !listing.getSellerUsername().equals(bid.getBuyerUsername())) {
+				return ask;
+			}
+		}
+		return null;
+	}
+
+	// --- Bids ---
+
+	void addBid(BuyOrder bid) {
+		BuyOrder old = bidsById.put(bid.getId(), bid);
+		if (old != null) {
+			bids.remove(old);
+		}
+		bids.add(bid);
+	}
+
+	BuyOrder removeBid(long id) {
+		BuyOrder bid = bidsById.remove(id);
+		if (bid != null) {
+			bids.remove(bid);
+		}
+		return bid;
+	}
+
+	boolean hasBid(long id) {
+		return bidsById.containsKey(id);
+	}
+
+	// The first bid in priority order that would buy the listing, or null
+	BuyOrder bestBidFor(Listing listing) {
+		for (BuyOrder bid : bids) {
+			if (bid.getMaxPrice() < listing.getPrice()) {
+				return null;
+			}
+			if (bid.getMinLevel() <= listing.getPetLevel()
+					&& !bid.getBuyerUsername().equals(listing.getSellerUsername())) {
+				return bid;
+			}
+		}
+		return null;
+	}
+
+	boolean isEmpty() {
+		return asks.isEmpty() && bids.isEmpty();
+	}
+
+	int getAskCount() {
+		return asks.size();
+	}
+
+	int getBidCount() {
+		return bids.size();
+	}
+}
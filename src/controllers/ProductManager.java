@@ -1,20 +1,20 @@
 package controllers;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
 import models.Hangpie;
+import models.ProductTemplate;
+import storage.HangpieCodec;
+import storage.RecordStore;
+import storage.Storage;
 
 public class ProductManager
 {
 	private Map<String, Hangpie> productMap;
-	private String databaseFile = "products.txt";
+	private RecordStore<Hangpie> store = Storage.open("products", new HangpieCodec());
 
 	public ProductManager()
 	{
@@ -24,50 +24,9 @@ public class ProductManager
 
 	private void loadProducts()
 	{
-		try (BufferedReader reader = new BufferedReader(new FileReader(databaseFile)))
+		try
 		{
-			String line;
-			while ((line = reader.readLine()) != null)
-			{
-				if (line.startsWith("//") || line.trim().isEmpty())
-				{
-					continue;
-				}
-
-				// Use limit -1 to ensure empty trailing strings are included (for new image field)
-				String[] parts = line.split("\\|", -1);
-
-				if (parts.length < 6)
-				{
-					continue;
-				}
-
-				try
-				{
-					String id = parts[0];
-					String name = parts[1];
-					String description = parts[2];
-					double price = Double.parseDouble(parts[3]);
-					int maxHealth = Integer.parseInt(parts[4]);
-					int level = Integer.parseInt(parts[5]);
-					int attackPower = Integer.parseInt(parts[6]);					
-					
-					String imageName = "dragon.png"; // Default
-					if (parts.length > 7) {
-						imageName = parts[7];
-					}
-
-					// Constructor now handles initializing currentExp to 0 automatically
-					Hangpie product = new Hangpie(id, name, description, price, maxHealth, level, attackPower, imageName);
-					productMap.put(id, product);
-
-				}
-				catch (NumberFormatException e)
-				{
-					// Use System.err.println for unrecoverable data corruption warning during loading
-					System.err.println("[Warning]: Bad data in products.txt for line: " + line);
-				}
-			}
+			store.load(product -> productMap.put(product.getId(), product));
 		}
 		catch (IOException e)
 		{
@@ -78,28 +37,10 @@ public class ProductManager
 
 	private void saveProducts()
 	{
-		try (BufferedWriter writer = new BufferedWriter(new FileWriter(databaseFile)))
+		try
 		{
-			writer.write("// FORMAT: hangpieID|name|description|price|maxHealth|level|attackPower|imageName");
-			writer.newLine();
-
-			for (Hangpie product : productMap.values())
-			{
-				String line = String.join("|",
-						product.getId(),
-						product.getName(),
-						product.getDescription(),
-						String.valueOf(product.getPrice()),
-						String.valueOf(product.getMaxHealth()),
-						String.valueOf(product.getLevel()),
-						String.valueOf(product.getAttackPower()),
-						product.getImageName());
-				
-				writer.write(line);
-				writer.newLine();
-			}
+			store.saveAll(productMap.values());
 		}
-
 		catch (IOException e)
 		{
 			// Use System.err.println for critical save failure
@@ -146,6 +87,13 @@ public class ProductManager
 		return productMap.get(id);
 	}
 	
+	// The template every pet of this product is made from (shared by all of them), or null
+	public ProductTemplate getTemplate(String id)
+	{
+		Hangpie product = productMap.get(id);
+		return product != null ? product.getTemplate() : null;
+	}
+	
 	public int getProductCount()
 	{
         return productMap.size();
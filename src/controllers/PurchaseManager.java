@@ -2,80 +2,296 @@ package controllers;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 
 import models.Purchase;
+import storage.PurchaseCodec;
+import storage.Storage;
+import utils.OffsetIndex;
+import utils.RecordReader;
 
 public class PurchaseManager
 {
-	private String databaseFile = "purchases.txt";
+	// Save the counters checkpoint after this many new purchases
+	private static final int CHECKPOINT_INTERVAL = 100;
 
-	public void addPurchase(Purchase purchase)
+	// Most bought first, ties broken by product ID so the order is stable
+	private static final Comparator<Map.Entry<String, Integer>> RANKING =
+			Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey());
+
+	// purchases.txt always stays a text file, whatever storage format is picked:
+	// the per-user offset index points straight at its lines
+	private static final PurchaseCodec CODEC = new PurchaseCodec();
+
+	private String databaseFile;
+	private String checkpointFile;
+	private String indexFile;
+
+	// username -> offsets of that user's rows in purchases.txt.
+	// Rebuilt from purchases.txt automatically if the index file goes missing.
+	private OffsetIndex userIndex;
+
+	// productId -> number of times it was bought, kept up to date by addPurchase
+	private Map<String, Integer> purchaseCounts;
+
+	// How many bytes of purchases.txt the counters include
+	private long coveredLength;
+
+	// The highest purchase seq in purchases.txt (see Purchase.getSeq)
+	private long lastSeq;
+	private int purchasesSinceCheckpoint;
+
+	public PurchaseManager()
+	{
+		this("purchases.txt", "purchase_counts.txt", "purchases.idx");
+	}
+
+	// purchases.txt, the counters checkpoint and the per-user offset index, all read on startup
+	public PurchaseManager(String databaseFile, String checkpointFile, String indexFile)
 	{
-		try (BufferedWriter writer = new BufferedWriter(new FileWriter(databaseFile, true)))
+		this.databaseFile = databaseFile;
+		this.checkpointFile = checkpointFile;
+		this.indexFile = indexFile;
+		this.purchaseCounts = new HashMap<>();
+		loadCounters();
+		this.userIndex = new OffsetIndex(databaseFile, indexFile, PurchaseManager::extractUsername);
+	}
+
+	public synchronized void addPurchase(Purchase purchase)
+	{
+		String line = String.join("|", CODEC.toFields(purchase));
+		long offset = new File(databaseFile).length();
+
+		try (BufferedWriter writer = new BufferedWriter(new FileWriter(databaseFile, StandardCharsets.UTF_8, true)))
 		{	
-			writer.write(purchase.toFileString());
+			writer.write(line);
 			writer.newLine();
 		}
 		catch (IOException e)
 		{
 			// Use System.err.println for critical save failure
 			System.err.println("CRITICAL ERROR: Could not save purchase history: " + e.getMessage());
+			return;
+		}
+
+		purchaseCounts.merge(purchase.getProductId(), 1, Integer::sum);
+		coveredLength = new File(databaseFile).length();
+		lastSeq = Math.max(lastSeq, purchase.getSeq());
+
+		userIndex.add(purchase.getUsername(), offset, line.getBytes(StandardCharsets.UTF_8).length);
+		userIndex.flush();
+
+		if (++purchasesSinceCheckpoint >= CHECKPOINT_INTERVAL)
+		{
+			saveCheckpoint();
 		}
 	}
 
+	// Returns all of the user's purchases, oldest first
 	public List<Purchase> getPurchasesForUser(String username)
+	{
+		List<Purchase> userHistory = getPurchasesForUser(username, 0, Integer.MAX_VALUE);
+		Collections.reverse(userHistory);
+		return userHistory;
+	}
+
+	// Returns one page of the user's purchases, newest first.
+	// Only the rows of this page are read (through the index), not the whole file.
+	public synchronized List<Purchase> getPurchasesForUser(String username, int skip, int limit)
 	{
 		List<Purchase> userHistory = new ArrayList<>();
 
-		try (BufferedReader reader = new BufferedReader(new FileReader(databaseFile)))
+		RecordReader record = new RecordReader();
+
+		for (String line : userIndex.getNewest(username, skip, limit))
 		{
-			String line;
-			while ((line = reader.readLine()) != null)
+			Purchase p = parsePurchase(record.reset(line));
+
+			if (p != null)
 			{
+				userHistory.add(p);
+			}
+		}
 
-				if (line.startsWith(username + "|"))
-				{
-					String[] parts = line.split("\\|");
-					if (parts.length < 5)
-					{
-						continue;
-					}
+		return userHistory;
+	}
 
-					String name = parts[0];
-					String productId =  parts[1];
-					String productName = parts[2];
-					double pricePaid = Double.parseDouble(parts[3]);
-					String timestampStr = parts[4];
+	// True if this purchase is already in purchases.txt.
+	// Used when replaying the journal, so a purchase is never recorded twice. Purchases are
+	// appended in seq order, so everything up to the last seq in the file is in it.
+	public synchronized boolean hasPurchase(Purchase purchase)
+	{
+		if (purchase.getSeq() > 0)
+		{
+			return purchase.getSeq() <= lastSeq;
+		}
 
-					Purchase p = new Purchase(name, productId, productName, pricePaid, timestampStr);
+		// A journal written before purchases had a seq: look for the same row among the user's newest ones
+		String line = String.join("|", CODEC.toFields(purchase));
+		return userIndex.getNewest(purchase.getUsername(), 0, 100).contains(line);
+	}
 
-					userHistory.add(p);
-				}
+	public synchronized long getLastSeq()
+	{
+		return lastSeq;
+	}
+
+	public synchronized int getPurchaseCountForUser(String username)
+	{
+		return userIndex.count(username);
+	}
+
+	private static Purchase parsePurchase(RecordReader record)
+	{
+		if (record.getFieldCount() < 5)
+		{
+			return null;
+		}
+
+		try
+		{
+			return CODEC.fromRecord(record);
+		}
+		catch (RuntimeException e)
+		{
+			System.err.println("[Warning]: Bad data in purchases.txt: " + record);
+			return null;
+		}
+	}
+
+	// The username is everything before the first '|', if the line has all 5 fields.
+	// Counted like line.split("\\|") does (empty fields at the end don't count), without splitting.
+	private static String extractUsername(String line)
+	{
+		if (line.startsWith("//"))
+		{
+			return null;
+		}
+
+		int end = line.length();
+		while (end > 0 && line.charAt(end - 1) == '|')
+		{
+			end--;
+		}
+
+		int fields = 1;
+		for (int i = line.indexOf('|'); i >= 0 && i < end; i = line.indexOf('|', i + 1))
+		{
+			fields++;
+		}
+		if (end == 0 || fields < 5)
+		{
+			return null;
+		}
+
+		return line.substring(0, line.indexOf('|'));
+	}
+
+	public synchronized List<String> getTopMostBought()
+	{
+		return getTopMostBought(3);
+	}
+
+	// Returns the IDs of the k most bought products, most bought first.
+	// Uses the in-memory counters, so no file is read.
+	public synchronized List<String> getTopMostBought(int k)
+	{
+		// DSA: a min-heap that keeps only the k best entries seen so far.
+		// The weakest of them sits on top, ready to be pushed out.
+		PriorityQueue<Map.Entry<String, Integer>> heap = new PriorityQueue<>(Math.max(1, k), RANKING.reversed());
+
+		for (Map.Entry<String, Integer> entry : purchaseCounts.entrySet())
+		{
+			heap.offer(entry);
+
+			if (heap.size() > k)
+			{
+				heap.poll();
 			}
 		}
+
+		// Pop from weakest to strongest, then flip it
+		List<String> topList = new ArrayList<>();
+
+		while (!heap.isEmpty())
+		{
+			topList.add(heap.poll().getKey());
+		}
+
+		Collections.reverse(topList);
+		return topList;
+	}
+
+	public synchronized int getPurchaseCount(String productId)
+	{
+		return purchaseCounts.getOrDefault(productId, 0);
+	}
+
+	// Writes the counters and how much of purchases.txt they cover.
+	// Written to a temp file first, so a crash never leaves half a checkpoint behind.
+	public synchronized void saveCheckpoint()
+	{
+		File tempFile = new File(checkpointFile + ".tmp");
+
+		try
+		{
+			writeCheckpoint(tempFile);
+			Storage.replaceFile(tempFile, new File(checkpointFile));
+			purchasesSinceCheckpoint = 0;
+		}
 		catch (IOException e)
 		{
-			// Inform user of error loading
-			System.err.println("Error loading purchase history: " + e.getMessage());
+			System.err.println("Error saving purchase counters: " + e.getMessage());
+		}
+	}
+
+	private void writeCheckpoint(File file) throws IOException
+	{
+		try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, StandardCharsets.UTF_8)))
+		{
+			writer.write("// FORMAT: covered|<bytes of purchases.txt counted>, seq|<last purchase seq in them>, then productId|count");
+			writer.newLine();
+			writer.write("covered|" + coveredLength);
+			writer.newLine();
+			writer.write("seq|" + lastSeq);
+			writer.newLine();
+
+			for (Map.Entry<String, Integer> entry : purchaseCounts.entrySet())
+			{
+				writer.write(entry.getKey() + "|" + entry.getValue());
+				writer.newLine();
+			}
 		}
+	}
 
-		return userHistory;
+	public void shutdown()
+	{
+		saveCheckpoint();
+		userIndex.close();
 	}
 
-	// Reads ALL purchases from the file.
-	private List<Purchase> getAllPurchases()
+	private void loadCounters()
 	{
-		List<Purchase> allHistory = new ArrayList<>();
+		long checkpointCovered = -1;
+		long checkpointSeq = 0;
+		Map<String, Integer> checkpointCounts = new HashMap<>();
 
-		try (BufferedReader reader = new BufferedReader(new FileReader(databaseFile)))
+		try (BufferedReader reader = new BufferedReader(new FileReader(checkpointFile, StandardCharsets.UTF_8)))
 		{
+			RecordReader record = new RecordReader();
 			String line;
 
 			while ((line = reader.readLine()) != null)
@@ -85,104 +301,98 @@ public class PurchaseManager
 					continue;
 				}
 
-				String[] parts = line.split("\\|");
+				record.reset(line);
 
-				if (parts.length < 5)
+				if (record.getFieldCount() < 2)
 				{
 					continue;
 				}
 
-				String name = parts[0];
-				String productId =  parts[1];
-				String productName = parts[2];
-				double pricePaid = Double.parseDouble(parts[3]);
-				String timestampStr = parts[4];
-
-				Purchase p = new Purchase(name, productId, productName, pricePaid, timestampStr);
-
-				allHistory.add(p);
+				if (record.fieldEquals(0, "covered"))
+				{
+					checkpointCovered = record.getLong(1);
+				}
+				else if (record.fieldEquals(0, "seq"))
+				{
+					checkpointSeq = record.getLong(1);
+				}
+				else
+				{
+					checkpointCounts.put(record.getString(0), record.getInt(1));
+				}
 			}
 		}
+		catch (IOException | NumberFormatException e)
+		{
+			// No (or a broken) checkpoint: count everything from the start
+			checkpointCovered = -1;
+		}
 
-		catch (IOException e)
+		long fileLength = new File(databaseFile).length();
+
+		if (checkpointCovered >= 0 && checkpointCovered <= fileLength)
 		{
-			// Inform user of error loading
-			System.err.println("Error loading full purchase history: " + e.getMessage());
+			purchaseCounts.putAll(checkpointCounts);
+			coveredLength = checkpointCovered;
+			lastSeq = checkpointSeq;
 		}
 
-		return allHistory;
+		// Count only the purchases added after the checkpoint
+		countPurchasesFrom(coveredLength);
 	}
 
-	public List<String> getTopMostBought()
+	private void countPurchasesFrom(long offset)
 	{
-		// 1. Get all purchases
-		List<Purchase> allPurchases = getAllPurchases();
-
-		// 2. DSA: Use a HashMap to count
-		Map<String, Integer> purchaseCounts = new HashMap<>();
+		File file = new File(databaseFile);
 
-		for (Purchase p : allPurchases)
+		if (offset >= file.length())
 		{
-			String productId = p.getProductId();
-
-			// 'getOrDefault' adds 1 to the count, or starts at 0+1=1 if new
-			purchaseCounts.put(productId, purchaseCounts.getOrDefault(productId, 0) + 1);			
+			coveredLength = file.length();
+			return;
 		}
 
-		List<String> top3List = new ArrayList<>();
-
-		// 3. Find the Top 3 manually
-		String top1_Id = null;
-		String top2_Id = null;
-		String top3_Id = null;
-
-		// Purchase default count??
-		int top1_Count = -1;
-		int top2_Count = -1;
-		int top3_Count = -1;
-
-		// Loop through all our counts
-		for (Map.Entry<String, Integer> entry : purchaseCounts.entrySet())
+		try (FileInputStream in = new FileInputStream(file))
 		{
-			String currentId = entry.getKey();
-			int currentCount = entry.getValue();
+			in.skipNBytes(offset);
+			BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+			RecordReader record = new RecordReader();
+			String line;
 
-			if (currentCount > top1_Count)
+			while ((line = reader.readLine()) != null)
 			{
-				// This new item is #1. Shift everyone else down.
-				top3_Id = top2_Id;
-				top3_Count = top2_Count;
-
-				top2_Id = top1_Id;
-				top2_Count = top1_Count;
+				if (line.startsWith("//") || line.trim().isEmpty())
+				{
+					continue;
+				}
 
-				top1_Id = currentId;
-				top1_Count = currentCount;
-			}
+				record.reset(line);
 
-			else if (currentCount > top2_Count)
-			{
-				// This new item is #2. Shift #3 down.
-                top3_Id = top2_Id;
-                top3_Count = top2_Count;
+				if (record.getFieldCount() < 5)
+				{
+					continue;
+				}
 
-                top2_Id = currentId;
-                top2_Count = currentCount;
+				// Only the product ID (and the seq) is needed, and there are few products
+				purchaseCounts.merge(record.getSharedString(1), 1, Integer::sum);
+				if (record.getFieldCount() > 5)
+				{
+					try
+					{
+						lastSeq = Math.max(lastSeq, record.getLong(5));
+					}
+					catch (NumberFormatException e)
+					{
+						System.err.println("[Warning]: Bad data in purchases.txt: " + line);
+					}
+				}
 			}
 
-			else if (currentCount > top3_Count)
-			{
-				// This new item is #3
-                top3_Id = currentId;
-                top3_Count = currentCount;
-			}
+			coveredLength = file.length();
+		}
+		catch (IOException e)
+		{
+			// Inform user of error loading
+			System.err.println("Error counting purchase history: " + e.getMessage());
 		}
-		
-		// 4. Add the winners to our final list (if they exist)
-        if (top1_Id != null) top3List.add(top1_Id);
-        if (top2_Id != null) top3List.add(top2_Id);
-        if (top3_Id != null) top3List.add(top3_Id);
-        
-        return top3List;
 	}
-}
\ No newline at end of file
+}
@@ -1,86 +1,102 @@
 package controllers;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import models.BattleState;
+import storage.BattleStateCodec;
+import storage.RecordStore;
+import storage.Storage;
 
+// Saves are kept in memory and written to the save file (saves.txt by default) by a background writer.
+// saveBattle/deleteSave only mark the player as dirty; a burst of changes within the debounce
+// window is coalesced into a single write, so the game thread never waits on the disk.
 public class SaveManager {
 	private Map<String, BattleState> saveMap;
-	private String databaseFile;
+	private RecordStore<BattleState> store;
+
+	// Players whose save changed since the last write
+	private Set<String> dirtyUsers;
+	private AtomicBoolean writeScheduled = new AtomicBoolean();
+	private volatile long debounceMillis = 500;
+	private ScheduledExecutorService writer;
+	private AtomicLong writeCount = new AtomicLong();
 
 	public SaveManager() {
-		this.databaseFile = "saves.txt";
-		this.saveMap = new HashMap<>();
+		this("saves.txt");
+	}
+
+	// The .txt is dropped from the name, so Storage.open can add the format's own extension
+	public SaveManager(String databaseFile) {
+		this.store = Storage.open(databaseFile.replaceFirst("\\.txt$", ""), new BattleStateCodec());
+		this.saveMap = new ConcurrentHashMap<>();
+		this.dirtyUsers = ConcurrentHashMap.newKeySet();
+		this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "SaveManager-Writer");
+			thread.setDaemon(true);
+			return thread;
+		});
 		loadSaves();
 	}
 
 	private void loadSaves() {
-		try (BufferedReader reader = new BufferedReader(new FileReader(databaseFile))) {
-			String line;
-			while ((line = reader.readLine()) != null) {
-				if (line.startsWith("//") || line.trim().isEmpty()) {
-					continue;
-				}
-
-				String[] parts = line.split("\\|", -1);
-
-				if (parts.length < 12) {
-					continue;
-				}
-
-				try {
-					String username = parts[0];
-					String secretWord = parts[1];
-					String clue = parts[2];
-					String guessedLetters = parts[3];
-					String enemyName = parts[4];
-					int enemyHp = Integer.parseInt(parts[5]);
-					int enemyMaxHp = Integer.parseInt(parts[6]);
-					int enemyAtk = Integer.parseInt(parts[7]);
-					String enemyImageFolder = parts[8];
-					int enemyLevel = Integer.parseInt(parts[9]);
-					String playerPetId = parts[10];
-					int playerPetHp = Integer.parseInt(parts[11]);
-
-					BattleState state = new BattleState(username, secretWord, clue, guessedLetters, enemyName, enemyHp,
-							enemyMaxHp, enemyAtk, enemyImageFolder, enemyLevel, playerPetId, playerPetHp);
-
-					saveMap.put(username, state);
-
-				} catch (NumberFormatException e) {
-					System.err.println("[Warning]: Bad data in saves.txt: " + e.getMessage());
-				}
-			}
+		if (!store.exists()) {
+			// Not an error, the file doesn't exist yet (normal on first run)
+			return;
+		}
+
+		try {
+			store.load(state -> saveMap.put(state.getUsername(), state));
 		} catch (IOException e) {
-			// This is not a critical error, just indicates the file doesn't exist yet
-			// (normal on first run)
+			System.err.println("[Warning]: Could not read " + store.getName() + ": " + e.getMessage());
 		}
 	}
 
+	// Runs on the writer thread only. The store swaps the new file in atomically,
+	// so a crash mid-write never leaves a half written save file.
 	private void writeSaves() {
-		try (BufferedWriter writer = new BufferedWriter(new FileWriter(databaseFile))) {
-			writer.write(
-					"// FORMAT: username|secretWord|clue|guessedLetters|enemyName|enemyHp|enemyMaxHp|enemyAtk|enemyImageFolder|enemyLevel|playerPetId|playerPetHp");
-			writer.newLine();
-
-			for (BattleState state : saveMap.values()) {
-				writer.write(state.toFileString());
-				writer.newLine();
-			}
+		try {
+			store.saveAll(saveMap.values());
+			writeCount.incrementAndGet();
 		} catch (IOException e) {
-			System.err.println("CRITICAL ERROR: Could not write to saves.txt: " + e.getMessage());
+			System.err.println("CRITICAL ERROR: Could not write to " + store.getName() + ": " + e.getMessage());
+		}
+	}
+
+	// Writes saves.txt if anything changed since the last write
+	private void writeIfDirty() {
+		writeScheduled.set(false);
+
+		if (dirtyUsers.isEmpty()) {
+			return;
+		}
+
+		// Clear first: a save made while we write marks the user dirty again and gets its own write
+		dirtyUsers.clear();
+		writeSaves();
+	}
+
+	private void markDirty(String username) {
+		dirtyUsers.add(username);
+
+		// Only the first change in a burst schedules a write, the rest ride along with it
+		if (writeScheduled.compareAndSet(false, true)) {
+			writer.schedule(this::writeIfDirty, debounceMillis, TimeUnit.MILLISECONDS);
 		}
 	}
 
 	public void saveBattle(BattleState state) {
 		saveMap.put(state.getUsername(), state);
-		writeSaves();
+		markDirty(state.getUsername());
 		// Removed console log for saved state
 	}
 
@@ -89,14 +105,48 @@ public class SaveManager {
 	}
 
 	public void deleteSave(String username) {
-		if (saveMap.containsKey(username)) {
-			saveMap.remove(username);
-			writeSaves();
+		if (saveMap.remove(username) != null) {
+			markDirty(username);
 			// Removed console log for deleted save
 		}
 	}
 
+	public Collection<BattleState> getAllSaves() {
+		return saveMap.values();
+	}
+
 	public boolean hasSave(String username) {
 		return saveMap.containsKey(username);
 	}
-}
\ No newline at end of file
+
+	// How long a change waits for more changes before it is written
+	public void setDebounceMillis(long debounceMillis) {
+		this.debounceMillis = Math.max(0, debounceMillis);
+	}
+
+	// Number of times saves.txt has been written since startup
+	public long getWriteCount() {
+		return writeCount.get();
+	}
+
+	// Blocks until every save made so far is on disk (e.g. when leaving the arena)
+	public void flush() {
+		if (writer.isShutdown()) {
+			return;
+		}
+
+		try {
+			writer.submit(this::writeIfDirty).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			System.err.println("CRITICAL ERROR: Could not write to " + store.getName() + ": " + e.getCause().getMessage());
+		}
+	}
+
+	// Writes any pending saves and stops the background writer. Called on exit.
+	public void shutdown() {
+		flush();
+		writer.shutdownNow();
+	}
+}
@@ -0,0 +1,331 @@
+package controllers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import models.BuyOrder;
+import models.LedgerEntry;
+import models.Listing;
+import models.PetId;
+import models.Purchase;
+import models.User;
+import storage.BuyOrderCodec;
+import storage.ListingCodec;
+import storage.PurchaseCodec;
+import utils.RecordReader;
+
+// Commits UnitOfWorks: all changes of one action are written to the users journal as ONE batch
+// (with its COMMIT marker) and forced to disk once, then applied to the controllers.
+//
+// Group commit: a single committer thread writes every transaction waiting at that moment
+// with one write and one disk sync, so sessions buying at the same time share the cost.
+//
+// The listing and purchase files are brought up to date lazily (listings on compaction, purchases
+// right after the commit); until then the journal holds the change and replays it on startup.
+public class TransactionManager {
+	private static final int MAX_GROUP_SIZE = 64;
+
+	private UserManager userManager;
+	private ListingManager listingManager;
+	private PurchaseManager purchaseManager;
+	private GoldLedger goldLedger;
+	private BuyOrderManager buyOrderManager;
+	private Journal journal;
+
+	private ListingCodec listingCodec = new ListingCodec();
+	private PurchaseCodec purchaseCodec = new PurchaseCodec();
+	private BuyOrderCodec buyOrderCodec = new BuyOrderCodec();
+
+	private BlockingQueue<PendingCommit> queue = new LinkedBlockingQueue<>();
+	private Thread committer;
+	private volatile boolean running;
+
+	// The last purchase seq handed out (see PurchaseManager.hasPurchase)
+	private long purchaseSeq;
+
+	private AtomicLong commitCount = new AtomicLong();
+	private AtomicLong groupCount = new AtomicLong();
+
+	// A transaction waiting for the committer
+	private static class PendingCommit {
+		private UnitOfWork work;
+		private List<String> records;
+		private CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+		private PendingCommit(UnitOfWork work, List<String> records) {
+			this.work = work;
+			this.records = records;
+		}
+	}
+
+	public TransactionManager(UserManager userManager, ListingManager listingManager,
+			PurchaseManager purchaseManager, GoldLedger goldLedger, BuyOrderManager buyOrderManager) {
+		this.userManager = userManager;
+		this.listingManager = listingManager;
+		this.purchaseManager = purchaseManager;
+		this.goldLedger = goldLedger;
+		this.buyOrderManager = buyOrderManager;
+		this.journal = userManager.getJournal();
+
+		purchaseSeq = purchaseManager.getLastSeq();
+		recover();
+
+		// The journal may only be emptied once the listings and orders it changed are saved
+		userManager.addCompactionHook(listingManager::saveIfDirty);
+		userManager.addCompactionHook(buyOrderManager::saveIfDirty);
+
+		running = true;
+		committer = new Thread(this::runCommitter, "TransactionManager-Committer");
+		committer.setDaemon(true);
+		committer.start();
+	}
+
+	public UnitOfWork begin() {
+		return new UnitOfWork(this);
+	}
+
+	CompletableFuture<Boolean> commit(UnitOfWork work) {
+		if (work.isEmpty()) {
+			return CompletableFuture.completedFuture(true);
+		}
+
+		// The records are built here, so they hold the objects as they are right now
+		PendingCommit pending = new PendingCommit(work, toRecords(work));
+
+		synchronized (queue) {
+			// Purchases are numbered in the order they reach the journal
+			for (Purchase purchase : work.getPurchases()) {
+				purchase.setSeq(++purchaseSeq);
+				pending.records.add("B|" + String.join("|", purchaseCodec.toFields(purchase)));
+			}
+
+			if (running) {
+				queue.add(pending);
+			} else {
+				// Shut down already, commit on this thread
+				commitGroup(List.of(pending));
+			}
+		}
+
+		return pending.result;
+	}
+
+	// --- Records ---
+	// L-|uniquePetId : remove a listing
+	// L+|<listings.txt row> : create a listing
+	// B|<purchases.txt row> : record a purchase (its seq tells if purchases.txt already has it)
+	// G|<gold_ledger.txt row> : a gold transfer (see GoldLedger)
+	// O+|<buy_orders.txt row> : open a buy order
+	// O-|orderId : close a buy order (filled or cancelled)
+	// U/I/P : the users, written the same way as UserManager.updateUser
+
+	private List<String> toRecords(UnitOfWork work) {
+		List<String> records = new ArrayList<>();
+
+		for (PetId petId : work.getRemovedListings()) {
+			records.add("L-|" + petId);
+		}
+
+		for (Listing listing : work.getCreatedListings()) {
+			records.add("L+|" + String.join("|", listingCodec.toFields(listing)));
+		}
+
+		for (BuyOrder order : work.getPlacedOrders()) {
+			records.add("O+|" + String.join("|", buyOrderCodec.toFields(order)));
+		}
+
+		for (long orderId : work.getClosedOrders()) {
+			records.add("O-|" + orderId);
+		}
+
+		for (User user : work.getUsers()) {
+			records.addAll(userManager.toJournalRecords(user));
+		}
+
+		// The B records are added by commit(), once the purchases have their seq, and the
+		// G records by commitGroup(), once the entries have theirs
+		return records;
+	}
+
+	private void runCommitter() {
+		List<PendingCommit> group = new ArrayList<>();
+
+		while (running || !queue.isEmpty()) {
+			try {
+				PendingCommit first = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+
+				// Everything that arrived while we were busy goes into the same write
+				group.add(first);
+				queue.drainTo(group, MAX_GROUP_SIZE - 1);
+				commitGroup(group);
+			} catch (InterruptedException e) {
+				// Check 'running' again
+			} finally {
+				group.clear();
+			}
+		}
+	}
+
+	private void commitGroup(List<PendingCommit> group) {
+		List<List<String>> batches = new ArrayList<>();
+		for (PendingCommit pending : group) {
+			batches.add(pending.records);
+		}
+
+		boolean written;
+
+		// Holding the UserManager lock keeps compaction from emptying the journal
+		// between writing these batches and applying them
+		synchronized (userManager) {
+			// Numbered here, so the entries reach the journal in the order of their numbers
+			for (PendingCommit pending : group) {
+				for (LedgerEntry entry : pending.work.getLedgerEntries()) {
+					pending.records.add(goldLedger.toRecord(goldLedger.number(entry)));
+				}
+			}
+
+			written = journal.appendAll(batches, true);
+
+			if (written) {
+				for (PendingCommit pending : group) {
+					apply(pending.work);
+				}
+			}
+		}
+
+		if (written) {
+			commitCount.addAndGet(group.size());
+			groupCount.incrementAndGet();
+
+			for (PendingCommit pending : group) {
+				for (String[] entry : pending.work.getLogEntries()) {
+					LogManager.log(entry[0], entry[1]);
+				}
+			}
+		}
+
+		for (PendingCommit pending : group) {
+			pending.result.complete(written);
+		}
+	}
+
+	private void apply(UnitOfWork work) {
+		for (PetId petId : work.getRemovedListings()) {
+			listingManager.applyRemove(petId);
+		}
+
+		for (Listing listing : work.getCreatedListings()) {
+			listingManager.applyCreate(listing);
+		}
+
+		goldLedger.journaled(work.getLedgerEntries());
+
+		for (BuyOrder order : work.getPlacedOrders()) {
+			buyOrderManager.applyCreate(order);
+		}
+
+		for (long orderId : work.getClosedOrders()) {
+			buyOrderManager.applyRemove(orderId);
+		}
+
+		for (User user : work.getUsers()) {
+			userManager.applyCommitted(user);
+		}
+
+		for (Purchase purchase : work.getPurchases()) {
+			purchaseManager.addPurchase(purchase);
+		}
+	}
+
+	// Replays the listing and purchase records of committed transactions
+	// (the UserManager already replayed the user records when it loaded)
+	private void recover() {
+		int[] recovered = new int[1];
+
+		RecordReader fields = new RecordReader();
+
+		journal.replay(batch -> {
+			for (String record : batch) {
+				// <type>|<fields>
+				int bar = record.indexOf('|');
+				String type = bar < 0 ? record : record.substring(0, bar);
+				fields.reset(record, bar + 1, bar < 0 ? 0 : record.length() - bar - 1);
+
+				try {
+					switch (type) {
+					case "L-":
+						listingManager.applyRemove(PetId.read(fields, 0));
+						recovered[0]++;
+						break;
+					case "L+":
+						listingManager.applyCreate(listingCodec.fromRecord(fields));
+						recovered[0]++;
+						break;
+					case "O+":
+						buyOrderManager.applyCreate(buyOrderCodec.fromRecord(fields));
+						recovered[0]++;
+						break;
+					case "O-":
+						buyOrderManager.applyRemove(fields.getLong(0));
+						recovered[0]++;
+						break;
+					case "B":
+						// Only if it did not reach purchases.txt before the restart
+						Purchase purchase = purchaseCodec.fromRecord(fields);
+						purchaseSeq = Math.max(purchaseSeq, purchase.getSeq());
+						if (!purchaseManager.hasPurchase(purchase)) {
+							purchaseManager.addPurchase(purchase);
+						}
+						recovered[0]++;
+						break;
+					default:
+						// User and gold records, already applied
+					}
+				} catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+					System.err.println("[Warning]: Bad journal record: " + record);
+				}
+			}
+		});
+
+		if (recovered[0] > 0) {
+			System.out.println("[System]: Replayed " + recovered[0] + " listing/order/purchase records from the journal.");
+		}
+	}
+
+	// Commits whatever is still queued and stops the committer. Called on exit.
+	public void shutdown() {
+		if (!running) {
+			return;
+		}
+
+		// The committer drains the queue before it stops
+		synchronized (queue) {
+			running = false;
+		}
+		committer.interrupt();
+
+		try {
+			committer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// Number of transactions committed since startup
+	public long getCommitCount() {
+		return commitCount.get();
+	}
+
+	// Number of group writes (each one disk sync) since startup
+	public long getGroupCount() {
+		return groupCount.get();
+	}
+}
@@ -0,0 +1,143 @@
+package controllers;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import models.BuyOrder;
+import models.Hangpie;
+import models.LedgerEntry;
+import models.Listing;
+import models.PetId;
+import models.Purchase;
+import models.User;
+
+// Collects the changes of one action (e.g. a marketplace buy) so they are saved together.
+// Nothing is written until commit(): then every change goes to disk as one batch,
+// so after a crash either all of them happened or none did.
+//
+//   UnitOfWork work = transactionManager.begin();
+//   work.updateUser(buyer);
+//   work.updateUser(seller);
+//   work.removeListing(listing.getPetId());
+//   if (!work.commit()) { ... }
+public class UnitOfWork {
+	private TransactionManager transactionManager;
+
+	// Saved as they are at commit time; updating the same user twice saves them once
+	private Map<String, User> users = new LinkedHashMap<>();
+	private List<PetId> removedListings = new ArrayList<>();
+	private List<Listing> createdListings = new ArrayList<>();
+	private List<Purchase> purchases = new ArrayList<>();
+	private List<LedgerEntry> ledgerEntries = new ArrayList<>();
+	private List<BuyOrder> placedOrders = new ArrayList<>();
+	private List<Long> closedOrders = new ArrayList<>();
+
+	// Activity log lines, written only if the commit succeeds
+	private List<String[]> logEntries = new ArrayList<>();
+
+	private boolean committed;
+
+	UnitOfWork(TransactionManager transactionManager) {
+		this.transactionManager = transactionManager;
+	}
+
+	public UnitOfWork updateUser(User user) {
+		users.put(user.getUsername(), user);
+		return this;
+	}
+
+	public UnitOfWork createListing(User seller, Hangpie pet, double price) {
+		createdListings.add(new Listing(seller.getUsername(), pet, price));
+		return this;
+	}
+
+	public UnitOfWork removeListing(PetId petId) {
+		removedListings.add(petId);
+		return this;
+	}
+
+	// Gold transfers made by the GoldLedger, saved (and then applied) with the rest of this work
+	public UnitOfWork gold(List<LedgerEntry> entries) {
+		ledgerEntries.addAll(entries);
+		return this;
+	}
+
+	// Opens a buy order (see BuyOrderManager.newOrder)
+	public UnitOfWork placeOrder(BuyOrder order) {
+		placedOrders.add(order);
+		return this;
+	}
+
+	// Closes a buy order, because it was filled or cancelled
+	public UnitOfWork closeOrder(long orderId) {
+		closedOrders.add(orderId);
+		return this;
+	}
+
+	public UnitOfWork addPurchase(Purchase purchase) {
+		purchases.add(purchase);
+		return this;
+	}
+
+	public UnitOfWork log(String username, String message) {
+		logEntries.add(new String[] { username, message });
+		return this;
+	}
+
+	// Saves every change as one batch. Blocks until it is on disk.
+	// Returns false if it could not be saved (then none of it was).
+	public boolean commit() {
+		return commitAsync().join();
+	}
+
+	// Same as commit(), but returns right away. The result completes once the work is saved
+	// (true) or could not be (false). Transactions are saved in the order they were committed.
+	public CompletableFuture<Boolean> commitAsync() {
+		if (committed) {
+			throw new IllegalStateException("This unit of work was already committed");
+		}
+
+		committed = true;
+		return transactionManager.commit(this);
+	}
+
+	boolean isEmpty() {
+		return users.isEmpty() && removedListings.isEmpty() && createdListings.isEmpty() && purchases.isEmpty()
+				&& ledgerEntries.isEmpty() && placedOrders.isEmpty() && closedOrders.isEmpty() && logEntries.isEmpty();
+	}
+
+	Iterable<User> getUsers() {
+		return users.values();
+	}
+
+	List<PetId> getRemovedListings() {
+		return removedListings;
+	}
+
+	List<Listing> getCreatedListings() {
+		return createdListings;
+	}
+
+	List<LedgerEntry> getLedgerEntries() {
+		return ledgerEntries;
+	}
+
+	List<BuyOrder> getPlacedOrders() {
+		return placedOrders;
+	}
+
+	List<Long> getClosedOrders() {
+		return closedOrders;
+	}
+
+	List<Purchase> getPurchases() {
+		return purchases;
+	}
+
+	List<String[]> getLogEntries() {
+		return logEntries;
+	}
+}
@@ -1,28 +1,156 @@
 package controllers;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
 
 import models.Hangpie;
+import models.ProductTemplate;
 import models.User;
+import storage.InventoryRow;
+import storage.InventoryRowCodec;
+import storage.RecordStore;
+import storage.SeekableRecordStore;
+import storage.Storage;
+import storage.UserCodec;
+import utils.RecordReader;
 
 public class UserManager {
+	// Compact the journal into the users/inventories snapshot once it holds this many records
+	private static final int COMPACTION_THRESHOLD = 1000;
+	private static final long COMPACTION_CHECK_SECONDS = 30;
+
 	private Map<String, User> userMap;
-	private String databaseFile = "users.txt";
+	private UserCodec userCodec = new UserCodec();
+	private InventoryRowCodec inventoryCodec = new InventoryRowCodec();
+	private RecordStore<User> userStore;
+	private RecordStore<InventoryRow> inventoryStore;
+
+	// Every create/update/delete is appended here instead of rewriting the whole database
+	private Journal journal;
+	private ScheduledExecutorService compactor;
+	private List<BooleanSupplier> compactionHooks = new CopyOnWriteArrayList<>();
+
+	// Lazy mode (java -Dhangpies.lazyUsers=true): startup only builds userIndex, a small entry per
+	// user with their password and where their rows are. userMap then only holds the users loaded
+	// so far, least recently used first, and the oldest are dropped once it grows past the limit.
+	private static final int DEFAULT_MAX_LOADED_USERS = 10_000;
+
+	// What lazy mode keeps of every user, loaded or not
+	private static class UserEntry {
+		private String password;
+		private long position = -1; // Of the users file row, -1 until the user is saved there
+		private int length;
+
+		// Inventory file rows, each packed as position << 24 | length
+		private long[] pets = new long[0];
+		private int petCount;
+
+		private void addPet(long position, int length) {
+			if (petCount == pets.length) {
+				pets = Arrays.copyOf(pets, Math.max(4, petCount * 2));
+			}
+			pets[petCount++] = position << 24 | length;
+		}
+	}
+
+	private ProductManager productManager;
+	private volatile Map<String, UserEntry> userIndex; // null when every user is loaded
+	private SeekableRecordStore<User> seekableUserStore;
+	private SeekableRecordStore<InventoryRow> seekableInventoryStore;
+	private int maxLoadedUsers;
+
+	// Lazy mode: users changed since the last compaction. Their latest state is only in memory
+	// and the journal, so they are never dropped.
+	private Set<String> dirtyUsers = ConcurrentHashMap.newKeySet();
+	private AtomicLong loadCount = new AtomicLong();
+	private AtomicLong evictionCount = new AtomicLong();
+
+	// Load statistics, filled in by loadUsers()
+	private int userRowCount;
+	private int inventoryRowCount;
+	private int orphanedInventoryRowCount;
+	private long userLoadMillis;
+	private long inventoryLoadMillis;
+
+	// Highest goldSeq of the users read on startup, so the GoldLedger never reuses an entry number
+	private long maxGoldSeq;
 
 	public UserManager(ProductManager productManager) {
-		this.userMap = new HashMap<>();
+		this(productManager, "users.txt", "inventories.txt");
+	}
+
+	// The file names may end in .txt; the storage format picks the real extension.
+	// The journal goes next to the users file, as <name>.journal.
+	public UserManager(ProductManager productManager, String databaseFile, String inventoryFile) {
+		this.productManager = productManager;
+		String userBase = databaseFile.replaceFirst("\\.txt$", "");
+		this.userStore = Storage.open(userBase, userCodec);
+		this.inventoryStore = Storage.open(inventoryFile.replaceFirst("\\.txt$", ""), inventoryCodec);
+		this.journal = new Journal(userBase + ".journal");
+
+		if (isLazyLoadingEnabled()) {
+			startLazyMode();
+		} else {
+			this.userMap = new ConcurrentHashMap<>();
+		}
+
 		loadUsers(productManager);
+		startCompactor();
+	}
+
+	// True if users should be loaded on first use instead of all at startup
+	public static boolean isLazyLoadingEnabled() {
+		return Boolean.parseBoolean(System.getProperty("hangpies.lazyUsers", "false"));
+	}
+
+	@SuppressWarnings("unchecked")
+	private void startLazyMode() {
+		// Needs stores that can read a single row back (the text and binary files can)
+		if (!(userStore instanceof SeekableRecordStore) || !(inventoryStore instanceof SeekableRecordStore)) {
+			System.err.println("[Warning]: " + userStore.getName() + " cannot be loaded lazily, loading every user.");
+			this.userMap = new ConcurrentHashMap<>();
+			return;
+		}
+
+		this.seekableUserStore = (SeekableRecordStore<User>) userStore;
+		this.seekableInventoryStore = (SeekableRecordStore<InventoryRow>) inventoryStore;
+		this.maxLoadedUsers = Math.max(1,
+				Integer.getInteger("hangpies.maxLoadedUsers", DEFAULT_MAX_LOADED_USERS));
+		this.userIndex = new ConcurrentHashMap<>();
+
+		// 'true' keeps the map in access order, so the least recently used user comes first
+		this.userMap = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true));
 	}
 
 	public User login(String username, String password) {
-		User user = userMap.get(username);
+		// In lazy mode the password is checked before anything is loaded
+		Map<String, UserEntry> index = userIndex;
+		if (index != null) {
+			UserEntry entry = index.get(username);
+			if (entry == null || !entry.password.equals(password)) {
+				return null;
+			}
+		}
+
+		User user = getUserByUsername(username);
 
 		if (user != null && user.getPassword().equals(password)) {
 			return user;
@@ -32,193 +160,619 @@ public class UserManager {
 	}
 
 	private void loadUsers(ProductManager productManager) {
-		try (BufferedReader reader = new BufferedReader(new FileReader(databaseFile))) {
-			String line;
-			while ((line = reader.readLine()) != null) {
-				if (line.startsWith("//") || line.trim().isEmpty()) {
-					continue;
+		long start = System.nanoTime();
+
+		if (userStore.exists()) {
+			try {
+				if (userIndex != null) {
+					indexUsers(userIndex);
+				} else {
+					userStore.load(user -> {
+						userMap.put(user.getUsername(), user);
+						maxGoldSeq = Math.max(maxGoldSeq, user.getGoldSeq());
+						userRowCount++;
+					});
 				}
+			} catch (IOException e) {
+				System.err.println("Error loading user database: " + e.getMessage());
+			}
+		} else {
+			System.err.println("Error loading user database: " + userStore.getName() + " not found");
+			System.out.println("Creating default admin account and new " + userStore.getName() + "...");
+			createDefaultAdmin();
+		}
 
-				String[] parts = line.split("\\|");
+		userLoadMillis = (System.nanoTime() - start) / 1_000_000;
 
-				if (parts.length < 9) {
-					continue;
-				}
+		// One pass over inventories.txt for ALL users, instead of one pass per user
+		start = System.nanoTime();
+		if (userIndex != null) {
+			indexInventories(userIndex);
+		} else {
+			loadInventories(productManager);
+		}
+		inventoryLoadMillis = (System.nanoTime() - start) / 1_000_000;
 
-				String username = parts[0];
-				String password = parts[1];
-				boolean isAdmin = Boolean.parseBoolean(parts[2]);
-				String firstName = parts[3];
-				String lastName = parts[4];
-				String contactNum = parts[5];
-
-				User user = new User(username, password, isAdmin, firstName, lastName, contactNum);
-
-				try {
-					user.addGold(Double.parseDouble(parts[6]));
-					user.setWorldLevel(Integer.parseInt(parts[7]));
-					user.setProgressLevel(Integer.parseInt(parts[8]));
-				} catch (NumberFormatException e) {
-					System.err.println("[Warning]: Bad data for user " + username);
-				}
+		// Apply the changes made since the last compaction
+		journal.replay(batch -> applyJournalBatch(batch, productManager));
 
-				userMap.put(user.getUsername(), user);
+		System.out.println("[System]: " + (userIndex != null ? "Indexed " : "Loaded ") + userRowCount + " users in "
+				+ userLoadMillis + " ms and " + inventoryRowCount + " inventory rows in " + inventoryLoadMillis + " ms ("
+				+ orphanedInventoryRowCount + " orphaned rows skipped, " + journal.getRecordCount()
+				+ " journal records replayed).");
 
-				loadInventory(user, productManager);
-			}
-		} catch (IOException e) {
-			System.err.println("Error loading user database: " + e.getMessage());
-			System.out.println("Creating default admin account and new users.txt...");
+		if (getUserCount() == 0) {
 			createDefaultAdmin();
 		}
+	}
 
-		if (userMap.isEmpty()) {
-			createDefaultAdmin();
+	// Writes the full snapshot (users + inventories).
+	// Each store writes to a temp file first and then moves it over the old one,
+	// so a crash halfway never leaves a truncated database behind.
+	private boolean saveUsers() {
+		if (userIndex != null) {
+			return saveUsersLazily();
+		}
+
+		// Both files are written from the same list of users (each inventory is copied under its user's lock)
+		List<User> users = new ArrayList<>(userMap.values());
+
+		try {
+			userStore.saveAll(users);
+		} catch (IOException e) {
+			System.err.println("CRITICAL ERROR: Could not save user database: " + e.getMessage());
+			return false;
+		}
+
+		try {
+			inventoryStore.saveAll(toInventoryRows(users));
+			return true;
+		} catch (IOException e) {
+			System.err.println("CRITICAL ERROR: Could not save inventories: " + e.getMessage());
+			return false;
 		}
 	}
 
-	private void saveUsers() {
-		try (BufferedWriter writer = new BufferedWriter(new FileWriter(databaseFile))) {
-			writer.write(
-					"// FORMAT: username|password|isAdmin|firstName|lastName|contactNum|goldBalance|worldLvl|progressLvl");
-			writer.newLine();
+	// Every owned pet as an inventories.txt row
+	public List<InventoryRow> getInventoryRows() {
+		List<InventoryRow> rows = new ArrayList<>();
+
+		if (userIndex != null) {
+			for (InventoryRow row : allInventoryRows()) {
+				rows.add(row);
+			}
+			return rows;
+		}
 
-			for (User user : userMap.values()) {
-				String line = String.join("|", user.getUsername(), user.getPassword(), String.valueOf(user.isAdmin()),
-						user.getFirstName(), user.getLastName(), user.getContactNum(),
-						String.valueOf(user.getGoldBalance()), String.valueOf(user.getWorldLevel()),
-						String.valueOf(user.getProgressLevel()));
+		return toInventoryRows(userMap.values());
+	}
 
-				writer.write(line); // Write the user's data
-				writer.newLine(); // Add a new line
+	private List<InventoryRow> toInventoryRows(Collection<User> users) {
+		List<InventoryRow> rows = new ArrayList<>();
+		for (User user : users) {
+			for (Hangpie pet : user.getInventory()) {
+				rows.add(toInventoryRow(user, pet));
 			}
+		}
+		return rows;
+	}
+
+	// Streams inventories.txt once and attaches every pet to its (already loaded)
+	// owner through the userMap, so startup is O(users + inventory rows)
+	private void loadInventories(ProductManager productManager) {
+		if (!inventoryStore.exists()) {
+			return;
+		}
+
+		try {
+			inventoryStore.load(row -> {
+				inventoryRowCount++;
+
+				User owner = userMap.get(row.getOwnerUsername());
+				if (owner == null) {
+					orphanedInventoryRowCount++;
+					return;
+				}
+
+				Hangpie pet = toPet(row, productManager);
+				if (pet != null) {
+					owner.addToInventory(pet);
+				}
+			});
 		} catch (IOException e) {
-			System.err.println("CRITICAL ERROR: Could not save user database: " + e.getMessage());
+			System.err.println("Error loading inventories: " + e.getMessage());
+		}
+	}
+
+	// Rebuilds an owned pet from its inventory row. Returns null if its product no longer exists.
+	private static Hangpie toPet(InventoryRow row, ProductManager productManager) {
+		ProductTemplate template = productManager.getTemplate(row.getProductId());
+		if (template == null) {
+			return null;
 		}
 
-		saveInventory();
+		// Max HP and Attack Power follow the level (+1 each per level)
+		Hangpie pet = new Hangpie(template, row.getPetId());
+		pet.setName(row.getCustomName());
+		pet.setLevel(row.getLevel());
+		pet.setCurrentExp(row.getCurrentExp());
+		pet.setCurrentHealth(pet.getMaxHealth());
+		return pet;
 	}
 
-	private void loadInventory(User user, ProductManager productManager) {
-		try (BufferedReader reader = new BufferedReader(new FileReader("inventories.txt"))) {
-			String line;
-			while ((line = reader.readLine()) != null) {
-				if ((line.startsWith("//") || line.trim().isEmpty())) {
-					continue;
-				}
+	private static InventoryRow toInventoryRow(User owner, Hangpie pet) {
+		// pet.getId() is the Product ID (e.g., HP-001), pet.getName() the custom name
+		return new InventoryRow(pet.getPetId(), owner.getUsername(), pet.getId(), pet.getName(), pet.getLevel(),
+				pet.getCurrentExp());
+	}
 
-				String[] parts = line.split("\\|");
+	// --- Journal ---
+	// The journal is always text, whatever the snapshot format. Record types:
+	// U|<users.txt row> : create or overwrite a user (keeps the current inventory)
+	// I|username : clear the user's inventory, the following P records refill it
+	// P|<inventories.txt row> : add a pet to its owner's inventory
+	// D|username : delete a user
+	// L+, L-, B, O+, O- : listing, purchase and buy order records written by the TransactionManager
+	// G : gold ledger entries (see GoldLedger)
+
+	private void journalUser(User user) {
+		journal.append(toJournalRecords(user));
+	}
 
-				if (parts.length < 5 || !parts[1].equals(user.getUsername())) {
-					continue;
-				}
+	// The U/I/P records that recreate this user and their inventory.
+	// Built under the user's lock, so the row and the pets are from the same moment.
+	List<String> toJournalRecords(User user) {
+		List<String> records = new ArrayList<>();
 
-				try {
-					String uniqueId = parts[0];
-					String productId = parts[2];
-					String customName = parts[3];
-					int level = Integer.parseInt(parts[4]);
+		synchronized (user) {
+			records.add("U|" + String.join("|", userCodec.toFields(user)));
+			records.add("I|" + user.getUsername());
 
-					int currentExp = 0;
-					if (parts.length > 5) {
-						currentExp = Integer.parseInt(parts[5]);
-					}
+			for (Hangpie pet : user.getInventory()) {
+				records.add("P|" + String.join("|", inventoryCodec.toFields(toInventoryRow(user, pet))));
+			}
+		}
 
-					Hangpie product = productManager.getProductById(productId);
-					if (product != null) {
-						Hangpie pet = new Hangpie(product);
-						pet.setUniqueId(uniqueId);
-						pet.setName(customName);
-						pet.setLevel(level);
-						pet.setCurrentExp(currentExp);
-						int levelDiff = level - 1;
-						pet.setMaxHealth(pet.getMaxHealth() + levelDiff);
-						pet.setAttackPower(pet.getAttackPower() + levelDiff);
-						pet.setCurrentHealth(pet.getMaxHealth()); 
-						user.addToInventory(pet);
+		return records;
+	}
+
+	// The TransactionManager writes its batches into this same journal, so every change
+	// to a user is replayed in the order it was made
+	Journal getJournal() {
+		return journal;
+	}
+
+	// Puts a user whose records a committed transaction already wrote to the journal
+	void applyCommitted(User user) {
+		userMap.put(user.getUsername(), user);
+		track(user);
+	}
+
+	// A change was made to the user in memory that only the journal has (e.g. a gold transfer):
+	// in lazy mode, keep them loaded until the next compaction saves them
+	long getMaxGoldSeq() {
+		return maxGoldSeq;
+	}
+
+	void markChanged(User user) {
+		track(user);
+	}
+
+	// Registers a step that must succeed before the journal is emptied on compaction
+	// (e.g. saving the listings changed by journaled transactions)
+	void addCompactionHook(BooleanSupplier hook) {
+		compactionHooks.add(hook);
+	}
+
+	private void applyJournalBatch(List<String> batch, ProductManager productManager) {
+		RecordReader fields = new RecordReader();
+
+		for (String record : batch) {
+			// <type>|<fields>
+			int bar = record.indexOf('|');
+			String type = bar < 0 ? record : record.substring(0, bar);
+			fields.reset(record, bar + 1, bar < 0 ? 0 : record.length() - bar - 1);
+
+			try {
+				switch (type) {
+				case "U":
+					User user = userCodec.fromRecord(fields);
+					if (user != null) {
+						User previous = getUserByUsername(user.getUsername());
+						userMap.put(user.getUsername(), user);
+						maxGoldSeq = Math.max(maxGoldSeq, user.getGoldSeq());
+						if (previous != null) {
+							for (Hangpie pet : previous.getInventory()) {
+								user.addToInventory(pet);
+							}
+						}
+						track(user);
+					}
+					break;
+				case "I":
+					User owner = getUserByUsername(fields.getString(0));
+					if (owner != null) {
+						owner.clearInventory();
+						track(owner);
 					}
-				} catch (NumberFormatException e) {
-					System.err
-							.println("Error loading inventory for user " + user.getUsername() + ": " + e.getMessage());
+					break;
+				case "P":
+					InventoryRow row = inventoryCodec.fromRecord(fields);
+					User petOwner = getUserByUsername(row.getOwnerUsername());
+					Hangpie pet = petOwner == null ? null : toPet(row, productManager);
+					if (pet != null) {
+						petOwner.addToInventory(pet);
+						track(petOwner);
+					}
+					break;
+				case "D":
+					forget(fields.getString(0));
+					break;
+				case "L+":
+				case "L-":
+				case "B":
+				case "O+":
+				case "O-":
+					// Listing, purchase and buy order records, replayed by the TransactionManager
+					break;
+				case GoldLedger.RECORD_TYPE:
+					// Gold transfers, replayed by the GoldLedger once every user is back
+					break;
+				default:
+					System.err.println("[Warning]: Unknown journal record: " + record);
 				}
+			} catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+				System.err.println("[Warning]: Bad journal record: " + record);
 			}
-		} catch (IOException e) {
-			System.err.println("Error loading inventory for user " + user.getUsername() + ": " + e.getMessage());
 		}
 	}
 
-	private void saveInventory() {
-		try (BufferedWriter writer = new BufferedWriter(new FileWriter("inventories.txt"))) {
-			writer.write("// uniqueId|ownerUsername|productId|customName|level|currentExp");
-			writer.newLine();
+	private void startCompactor() {
+		compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "UserManager-Compactor");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		compactor.scheduleWithFixedDelay(() -> {
+			if (journal.getRecordCount() >= COMPACTION_THRESHOLD) {
+				compact();
+			}
+		}, COMPACTION_CHECK_SECONDS, COMPACTION_CHECK_SECONDS, TimeUnit.SECONDS);
+	}
+
+	// Folds the journal into a fresh snapshot and empties it.
+	// Runs with the manager lock held, so no transaction writes to the journal in between.
+	public synchronized void compact() {
+		if (journal.getRecordCount() == 0) {
+			return;
+		}
 
-			for (User user : userMap.values()) {
-				for (Hangpie pet : user.getInventory()) {
-					// Create the save string
-					String line = String.join("|", pet.getUniqueId(), // UUID
-							user.getUsername(), pet.getId(), // The Product ID (e.g., HP-001)
-							pet.getName(), // The custom name
-							String.valueOf(pet.getLevel()), String.valueOf(pet.getCurrentExp()));
+		try {
+			if (!saveUsers()) {
+				return;
+			}
 
-					writer.write(line);
-					writer.newLine();
+			for (BooleanSupplier hook : compactionHooks) {
+				if (!hook.getAsBoolean()) {
+					return;
 				}
 			}
-		}
 
-		catch (IOException e) {
-			System.err.println("CRITICAL ERROR: Could not save inventories: " + e.getMessage());
+			journal.reset();
+		} catch (RuntimeException e) {
+			// The journal still has everything, so the next round tries again.
+			// Reported here, since an exception would also stop the background compactor.
+			System.err.println("CRITICAL ERROR: Could not compact the user journal: " + e);
 		}
 	}
 
+	// Called on exit: stops the background compactor and writes a final snapshot
+	public void shutdown() {
+		compactor.shutdownNow();
+		compact();
+		journal.close();
+	}
+
 	private void createDefaultAdmin() {
 		User admin = new User("admin", "admin123", true, "Admin", "User", "N/A");
 		userMap.put(admin.getUsername(), admin);
+		track(admin);
 		System.out.println("Default admin 'admin' with password 'admin123' created.");
 		saveUsers();
 	}
 
 	// CRUD
-	public boolean createAccount(User user) {
-		if (userMap.containsKey(user.getUsername())) {
+	public synchronized boolean createAccount(User user) {
+		if (userIndex != null ? userIndex.containsKey(user.getUsername()) : userMap.containsKey(user.getUsername())) {
 			return false;
 		}
 
 		userMap.put(user.getUsername(), user);
-		saveUsers();
+		track(user);
+		journalUser(user);
 		return true;
 	}
 
+	// In lazy mode the users that are not loaded are read just for the caller and not kept,
+	// so listing every user does not load them all at once
 	public Collection<User> getAllUsers() {
-		return userMap.values();
+		Map<String, UserEntry> index = userIndex;
+		if (index == null) {
+			return userMap.values();
+		}
+
+		return new AbstractCollection<User>() {
+			@Override
+			public Iterator<User> iterator() {
+				return index.keySet().stream().map(username -> peekUser(username, true)).filter(Objects::nonNull)
+						.iterator();
+			}
+
+			@Override
+			public int size() {
+				return index.size();
+			}
+		};
 	}
 
-	public void updateUser(User user) {
+	public synchronized void updateUser(User user) {
 		// 'put' will simply overwrite the old entry with the new one
 		userMap.put(user.getUsername(), user);
-		saveUsers();
+		track(user);
+
+		// Only this user's records are written, not the whole database
+		journalUser(user);
 	}
 
-	public int deleteUser(String username, User adminMakingRequest) {
+	public synchronized int deleteUser(String username, User adminMakingRequest) {
 		if (username.equals(adminMakingRequest.getUsername())) {
 			return -1;
 		}
 
-		User userToRemove = userMap.remove(username);
-
-		if (userToRemove != null) {
-			saveUsers();
+		if (forget(username)) {
+			journal.append(List.of("D|" + username));
 			return 1;
 		}
 
 		return 0;
 	}
 
+	// Removes the user from memory (and the lazy index). Returns false if there was no such user.
+	private boolean forget(String username) {
+		boolean indexed = userIndex != null && userIndex.remove(username) != null;
+		dirtyUsers.remove(username);
+		return userMap.remove(username) != null || indexed;
+	}
+
 	public User getUserByUsername(String username) {
-		return userMap.get(username); // O(1) search
+		User user = userMap.get(username); // O(1) search
+
+		if (user != null || userIndex == null) {
+			return user;
+		}
+
+		// Lazy mode: first use of this user since startup (or since they were dropped)
+		return loadUser(username);
 	}
 
 	public int getUserCount() {
+		Map<String, UserEntry> index = userIndex;
+		return index != null ? index.size() : userMap.size();
+	}
+
+	// --- Lazy mode ---
+
+	// Reads one user (and their pets) from the files and keeps them loaded
+	private synchronized User loadUser(String username) {
+		User user = userMap.get(username);
+		if (user != null) {
+			return user;
+		}
+
+		user = peekUser(username, true);
+		if (user == null) {
+			return null;
+		}
+
+		userMap.put(username, user);
+		loadCount.incrementAndGet();
+		evictIfOverLimit();
+		return user;
+	}
+
+	// The loaded user, or else a copy read from the files that is not kept.
+	// Synchronized so a compaction cannot swap the files out while we read them.
+	private synchronized User peekUser(String username, boolean withPets) {
+		User loaded = userMap.get(username);
+		if (loaded != null) {
+			return loaded;
+		}
+
+		UserEntry entry = userIndex.get(username);
+		if (entry == null || entry.position < 0) {
+			return null;
+		}
+
+		try {
+			User user = seekableUserStore.readAt(entry.position, entry.length);
+			if (user != null && withPets) {
+				for (InventoryRow row : readInventoryRows(entry)) {
+					Hangpie pet = toPet(row, productManager);
+					if (pet != null) {
+						user.addToInventory(pet);
+					}
+				}
+			}
+			return user;
+		} catch (IOException e) {
+			System.err.println("Error loading user " + username + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	private List<InventoryRow> readInventoryRows(UserEntry entry) throws IOException {
+		List<InventoryRow> rows = new ArrayList<>(entry.petCount);
+		for (int i = 0; i < entry.petCount; i++) {
+			InventoryRow row = seekableInventoryStore.readAt(entry.pets[i] >>> 24, (int) (entry.pets[i] & 0xFFFFFF));
+			if (row != null) {
+				rows.add(row);
+			}
+		}
+		return rows;
+	}
+
+	// Drops the least recently used users until we are back under the limit. Changed users stay.
+	private void evictIfOverLimit() {
+		synchronized (userMap) {
+			Iterator<String> usernames = userMap.keySet().iterator();
+			while (userMap.size() > maxLoadedUsers && usernames.hasNext()) {
+				if (!dirtyUsers.contains(usernames.next())) {
+					usernames.remove();
+					evictionCount.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	// Lazy mode: the user was changed, so keep their entry current and keep them loaded until saved
+	private void track(User user) {
+		if (userIndex == null) {
+			return;
+		}
+
+		dirtyUsers.add(user.getUsername());
+		userIndex.computeIfAbsent(user.getUsername(), username -> new UserEntry()).password = user.getPassword();
+	}
+
+	// One pass over the users file, keeping only each user's password and row position
+	private void indexUsers(Map<String, UserEntry> index) throws IOException {
+		seekableUserStore.scan((user, position, length) -> {
+			UserEntry entry = new UserEntry();
+			entry.password = user.getPassword();
+			entry.position = position;
+			entry.length = length;
+			index.put(user.getUsername(), entry);
+			maxGoldSeq = Math.max(maxGoldSeq, user.getGoldSeq());
+			userRowCount++;
+		});
+	}
+
+	private void indexInventories(Map<String, UserEntry> index) {
+		if (!inventoryStore.exists()) {
+			return;
+		}
+
+		try {
+			seekableInventoryStore.scan((row, position, length) -> {
+				inventoryRowCount++;
+
+				UserEntry entry = index.get(row.getOwnerUsername());
+				if (entry == null) {
+					orphanedInventoryRowCount++;
+					return;
+				}
+				entry.addPet(position, length);
+			});
+		} catch (IOException e) {
+			System.err.println("Error loading inventories: " + e.getMessage());
+		}
+	}
+
+	// Every user for the users file: loaded users as they are, the rest copied row by row
+	private Iterable<User> allUserRows() {
+		return () -> userIndex.keySet().stream().map(username -> peekUser(username, false))
+				.filter(Objects::nonNull).iterator();
+	}
+
+	private Iterable<InventoryRow> allInventoryRows() {
+		return () -> userIndex.entrySet().stream().flatMap(entry -> inventoryRowsOf(entry.getKey(), entry.getValue()).stream())
+				.iterator();
+	}
+
+	private List<InventoryRow> inventoryRowsOf(String username, UserEntry entry) {
+		User loaded = userMap.get(username);
+		if (loaded == null) {
+			try {
+				return readInventoryRows(entry);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		List<InventoryRow> rows = new ArrayList<>();
+		for (Hangpie pet : loaded.getInventory()) {
+			rows.add(toInventoryRow(loaded, pet));
+		}
+		return rows;
+	}
+
+	// Writes both files without loading everyone, then indexes the new files
+	// (every row moved, so the old positions are no longer valid)
+	private synchronized boolean saveUsersLazily() {
+		try {
+			userStore.saveAll(allUserRows());
+		} catch (IOException | UncheckedIOException e) {
+			System.err.println("CRITICAL ERROR: Could not save user database: " + e.getMessage());
+			return false;
+		}
+
+		boolean saved = true;
+		try {
+			inventoryStore.saveAll(allInventoryRows());
+		} catch (IOException | UncheckedIOException e) {
+			System.err.println("CRITICAL ERROR: Could not save inventories: " + e.getMessage());
+			saved = false;
+		}
+
+		Map<String, UserEntry> newIndex = new ConcurrentHashMap<>();
+		try {
+			indexUsers(newIndex);
+		} catch (IOException e) {
+			System.err.println("CRITICAL ERROR: Could not index user database: " + e.getMessage());
+			return false;
+		}
+		indexInventories(newIndex);
+		userIndex = newIndex;
+
+		if (saved) {
+			dirtyUsers.clear();
+		}
+		return saved;
+	}
+
+	// Number of users loaded into memory right now
+	public int getLoadedUserCount() {
 		return userMap.size();
 	}
+
+	// Lazy mode: how often a user was read from the files, and how often one was dropped again
+	public long getLoadCount() {
+		return loadCount.get();
+	}
+
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	public boolean isLazy() {
+		return userIndex != null;
+	}
+
+	// Load statistics from startup
+	public int getUserRowCount() {
+		return userRowCount;
+	}
+
+	public int getInventoryRowCount() {
+		return inventoryRowCount;
+	}
+
+	public long getUserLoadMillis() {
+		return userLoadMillis;
+	}
+
+	public long getInventoryLoadMillis() {
+		return inventoryLoadMillis;
+	}
 }
\ No newline at end of file
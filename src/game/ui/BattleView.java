@@ -10,6 +10,7 @@ import java.awt.Rectangle;
 import java.awt.event.KeyEvent;
 import java.awt.image.ImageObserver;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
 import java.util.Set;
 
@@ -19,6 +20,7 @@ import models.BattleState;
 import models.Character;
 import models.Enemy;
 import models.Hangpie;
+import models.LedgerEntry;
 import models.User;
 import utils.AssetLoader;
 import utils.WordBank;
@@ -1076,10 +1078,17 @@ public class BattleView {
 		// Apply Rewards
 		levelUpOccurred = playerPet.gainExp(expReward, playerUser.getWorldLevel()); // Gives pet EXP
 
-		playerUser.addGold(goldReward); // Gives player gold
+		LedgerEntry reward = Main.goldLedger.credit(playerUser, goldReward, LedgerEntry.Reason.BATTLE_REWARD,
+				currentEnemy.getName()); // Gives player gold
 
-		// Update user data immediately to save the progress
-		Main.userManager.updateUser(playerUser);
+		// Update user data immediately to save the progress (and the gold with it).
+		// Not waited for: the save must not stall the game loop.
+		Main.transactionManager.begin().updateUser(playerUser).gold(List.of(reward)).commitAsync().thenAccept(saved -> {
+			if (!saved) {
+				Main.goldLedger.revert(List.of(reward));
+				System.err.println("CRITICAL ERROR: The battle reward for " + playerUser.getUsername() + " could not be saved.");
+			}
+		});
 
 		// Delete Save on Win
 		Main.saveManager.deleteSave(playerUser.getUsername());
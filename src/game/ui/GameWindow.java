@@ -363,6 +363,9 @@ public class GameWindow extends Frame implements Runnable { // This creates the
 		} catch (InterruptedException e) {
 			e.printStackTrace();
 		}
+
+		// Leaving the arena: make sure the battle save is on disk
+		Main.saveManager.flush();
 		dispose();
 	}
 
@@ -1,17 +1,35 @@
 package main;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
 
 import controllers.AlertManager;
 import controllers.AnnouncementManager; 
+import controllers.BuyOrderManager;
 import controllers.CodeManager;
+import controllers.GoldLedger;
 import controllers.ListingManager;
+import controllers.LogManager;
+import controllers.MarketEngine;
 import controllers.ProductManager;
 import controllers.PurchaseManager;
 import controllers.SaveManager; 
+import controllers.TransactionManager;
 import controllers.UserManager;
 import interfaces.Colorable;
 import models.User;
+import storage.BattleStateCodec;
+import storage.HangpieCodec;
+import storage.InventoryRowCodec;
+import storage.ListingCodec;
+import storage.StartupSnapshot;
+import storage.Storage;
+import storage.UserCodec;
+import utils.TaskGraph;
 import views.AdminMenu;
 import views.Login;
 import views.SignUp;
@@ -28,23 +46,33 @@ public class Main implements Colorable
 	public static ListingManager listingManager;
 	public static AnnouncementManager announcementManager; 
 	public static SaveManager saveManager; 
+	public static TransactionManager transactionManager;
+	public static GoldLedger goldLedger;
+	public static BuyOrderManager buyOrderManager;
+	public static MarketEngine marketEngine;
 
 	public static Scanner scanner;
 	public static User currentUser;
 
+	// Written on a clean exit so the next start can skip parsing the data files.
+	// Turn it off with  java -Dhangpies.snapshot=false main.Main
+	private static final String SNAPSHOT_FILE = "startup.snapshot";
+	private static final String[] SNAPSHOT_DATA_SETS = { "products", "users", "inventories", "listings", "saves" };
+
 	public static void main(String[] args) throws Exception
 	{
+		long startTime = System.nanoTime();
+		boolean fromSnapshot = loadStartupSnapshot();
 
 		// Create Objects
-		productManager = new ProductManager();
-		codeManager = new CodeManager();
-		userManager = new UserManager(productManager);
-		purchaseManager = new PurchaseManager();
-		listingManager = new ListingManager();
-		announcementManager = new AnnouncementManager(); 
-		saveManager = new SaveManager(); 
+		// java -Dhangpies.parallelStartup=false loads them one after another instead.
+		TaskGraph startup = loadControllers(new TaskGraph("Startup-Loader",
+				Boolean.parseBoolean(System.getProperty("hangpies.parallelStartup", "true"))));
 		scanner = new Scanner(System.in);
 
+		Storage.useSnapshot(null);
+		reportStartupTime(startTime, fromSnapshot, startup);
+
 		while(true)
 		{
 			Main.clearScreen();
@@ -76,6 +104,7 @@ public class Main implements Colorable
 			else if (choice.equals("3"))
 			{
 				System.out.println("Thank you for playing Battle Hangpies!");
+				shutdownControllers();
 				scanner.close();
 				break;
 			}
@@ -107,6 +136,139 @@ public class Main implements Colorable
 		}
 	}
 
+	/**
+	 * Creates every controller from the data files in the working folder.
+	 * Each controller loads its own file, so they load side by side. Only the users need the
+	 * products first, the gold ledger needs the users, the transactions need the users,
+	 * listings, purchases, ledger and buy orders, and the market engine needs the transactions.
+	 * Also used by benchmarks.StartupBenchmark to time the real startup.
+	 */
+	public static TaskGraph loadControllers(TaskGraph startup)
+	{
+		CompletableFuture<ProductManager> products = startup.add("products", ProductManager::new);
+		CompletableFuture<CodeManager> codes = startup.add("codes", CodeManager::new);
+		CompletableFuture<UserManager> users = startup.add("users", () -> new UserManager(products.join()), products);
+		CompletableFuture<PurchaseManager> purchases = startup.add("purchases", PurchaseManager::new);
+		CompletableFuture<ListingManager> listings = startup.add("listings", ListingManager::new);
+		CompletableFuture<SaveManager> saves = startup.add("saves", SaveManager::new);
+		CompletableFuture<BuyOrderManager> orders = startup.add("orders", BuyOrderManager::new);
+		CompletableFuture<GoldLedger> ledger = startup.add("ledger", () -> new GoldLedger(users.join()), users);
+		CompletableFuture<TransactionManager> transactions = startup.add("transactions",
+				() -> new TransactionManager(users.join(), listings.join(), purchases.join(), ledger.join(), orders.join()),
+				users, listings, purchases, ledger, orders);
+		CompletableFuture<MarketEngine> market = startup.add("market", () -> new MarketEngine(users.join(),
+				products.join(), listings.join(), orders.join(), ledger.join(), transactions.join()), transactions);
+		startup.await();
+
+		productManager = products.join();
+		codeManager = codes.join();
+		userManager = users.join();
+		purchaseManager = purchases.join();
+		listingManager = listings.join();
+		announcementManager = new AnnouncementManager(); 
+		saveManager = saves.join(); 
+		transactionManager = transactions.join();
+		goldLedger = ledger.join();
+		buyOrderManager = orders.join();
+		marketEngine = market.join();
+		return startup;
+	}
+
+	// Flushes anything the controllers still hold in memory before the program exits
+	private static void shutdownControllers()
+	{
+		// Its last fills are committed through the TransactionManager
+		marketEngine.shutdown();
+		transactionManager.shutdown();
+		userManager.shutdown();
+		purchaseManager.shutdown();
+		codeManager.shutdown();
+		saveManager.shutdown();
+		LogManager.shutdown();
+		saveStartupSnapshot();
+	}
+
+	private static boolean isSnapshotEnabled()
+	{
+		// Memory storage has no files to skip
+		return Storage.getFormat() != Storage.Format.MEMORY
+				&& Boolean.parseBoolean(System.getProperty("hangpies.snapshot", "true"));
+	}
+
+	// Reads the snapshot written on the last exit. Returns false if there is none or it is stale,
+	// in which case every controller parses its data file as usual.
+	private static boolean loadStartupSnapshot()
+	{
+		if (!isSnapshotEnabled())
+		{
+			return false;
+		}
+
+		StartupSnapshot snapshot = StartupSnapshot.load(SNAPSHOT_FILE);
+
+		// Lazy user loading reads the user files row by row instead
+		if (snapshot != null && UserManager.isLazyLoadingEnabled())
+		{
+			snapshot.discard("users");
+			snapshot.discard("inventories");
+		}
+
+		Storage.useSnapshot(snapshot);
+		return snapshot != null;
+	}
+
+	// Runs after every controller has written its files, so the snapshot matches them exactly
+	private static void saveStartupSnapshot()
+	{
+		if (!isSnapshotEnabled())
+		{
+			return;
+		}
+
+		List<String> sourceFiles = new ArrayList<>();
+		for (String dataSet : SNAPSHOT_DATA_SETS)
+		{
+			sourceFiles.add(dataSet + ".txt");
+			sourceFiles.add(dataSet + ".bin");
+		}
+		sourceFiles.add("users.journal");
+
+		try
+		{
+			StartupSnapshot snapshot = new StartupSnapshot();
+			snapshot.add("products", new HangpieCodec(), productManager.getAllProducts());
+			if (!userManager.isLazy())
+			{
+				snapshot.add("users", new UserCodec(), userManager.getAllUsers());
+				snapshot.add("inventories", new InventoryRowCodec(), userManager.getInventoryRows());
+			}
+			snapshot.add("listings", new ListingCodec(), listingManager.getAllListings());
+			snapshot.add("saves", new BattleStateCodec(), saveManager.getAllSaves());
+			snapshot.save(SNAPSHOT_FILE, sourceFiles);
+		}
+		catch (IOException e)
+		{
+			// Not critical, the next start just parses the data files
+			System.err.println("[Warning]: Could not write " + SNAPSHOT_FILE + ": " + e.getMessage());
+		}
+	}
+
+	// Time from JVM start (and from main) until the login menu is ready, and what each controller took
+	private static void reportStartupTime(long startTime, boolean fromSnapshot, TaskGraph startup)
+	{
+		System.out.println("[System]: Controller load times:");
+		for (String line : startup.report())
+		{
+			System.out.println("    " + line);
+		}
+
+		long mainMillis = (System.nanoTime() - startTime) / 1_000_000;
+		long coldStartMillis = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+
+		System.out.println("[System]: Cold start took " + coldStartMillis + " ms (" + mainMillis + " ms loading data "
+				+ (fromSnapshot ? "from " + SNAPSHOT_FILE : "from the data files") + ").");
+	}
+
 	public static void displayLogo()
 	{
 		// Single string with all formatting precomputed
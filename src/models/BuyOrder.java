@@ -0,0 +1,56 @@
+package models;
+
+// A standing offer to buy one pet of a product from the marketplace, at most at 'maxPrice' and
+// at least at 'minLevel' (0 = any level). It is filled by the MarketEngine as soon as a listing
+// matches, at the listing's price. The ID also gives the order's place in the queue: among
+// orders with the same price, the lower ID (the older order) is filled first.
+public class BuyOrder
+{
+	private long id;
+	private long time;
+	private String buyerUsername;
+	private String productId;
+	private double maxPrice;
+	private int minLevel;
+
+	public BuyOrder(long id, long time, String buyerUsername, String productId, double maxPrice, int minLevel)
+	{
+		this.id = id;
+		this.time = time;
+		this.buyerUsername = buyerUsername;
+		this.productId = productId;
+		this.maxPrice = maxPrice;
+		this.minLevel = minLevel;
+	}
+
+	public long getId()
+	{
+		return id;
+	}
+
+	// When it was placed, in epoch milliseconds
+	public long getTime()
+	{
+		return time;
+	}
+
+	public String getBuyerUsername()
+	{
+		return buyerUsername;
+	}
+
+	public String getProductId()
+	{
+		return productId;
+	}
+
+	public double getMaxPrice()
+	{
+		return maxPrice;
+	}
+
+	public int getMinLevel()
+	{
+		return minLevel;
+	}
+}
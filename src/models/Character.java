@@ -4,22 +4,15 @@ package models;
 public abstract class Character
 {
 	// Attributes
-	protected String name;				// Character's name
-	protected int maxHealth;			// Character's MAX HP
 	protected int currentHealth;		// Character's current HP
-	protected int level;				// Character's Level
-	protected int attackPower;			// Character's Attack Power
 
-	// Parent Constructor. Sub classes can access this constructor using "super" keyword
-	public Character(String name, int maxHealth, int level, int attackPower)
+	// Name, MAX HP, Level and Attack Power are kept by the sub classes: an Enemy stores its own,
+	// a Hangpie works them out from its product template (see ProductTemplate)
+	protected Character(int maxHealth)
 	{
-		this.name = name;
-		this.maxHealth = maxHealth;
 		this.currentHealth = maxHealth;	// At the start of the battle, Characters start at full health
-		this.level = level;
-		this.attackPower  = attackPower;
 	}
-	
+
 	// Used to apply damage 
 	public void takeDamage(int damage)
 	{
@@ -42,58 +35,34 @@ public abstract class Character
 
 
 	// Getter Methods
-	public String getName()
-	{
-		return name;
-	}
+	public abstract String getName();
 
-	public int getMaxHealth()
-	{
-		return maxHealth;
-	}
+	public abstract int getMaxHealth();
 
 	public int getCurrentHealth()
 	{
 		return currentHealth;
 	}
 
-	public int getLevel()
-	{
-		return level;
-	}
-	
-	public int getAttackPower()
-	{
-		return attackPower;
-	}
+	public abstract int getLevel();
+
+	public abstract int getAttackPower();
 
 	//Setter Methods
-	public void setName(String name)
-	{
-		this.name = name;
-	}
-	
-	public void setLevel(int level)
-	{
-		this.level = level;
-	}
-	
-	public void setMaxHealth(int maxHealth)
-	{
-		this.maxHealth = maxHealth;
-	}
-	
-	public void setAttackPower(int attackPower)
-	{
-		this.attackPower = attackPower;
-	}
-	
+	public abstract void setName(String name);
+
+	public abstract void setLevel(int level);
+
+	public abstract void setMaxHealth(int maxHealth);
+
+	public abstract void setAttackPower(int attackPower);
+
 	// --- ADDED METHOD FOR HEALTH RESTORATION/LOADING ---
 	public void setCurrentHealth(int health) 
 	{
 		this.currentHealth = health;
-		if (this.currentHealth > this.maxHealth) {
-			this.currentHealth = this.maxHealth;
+		if (this.currentHealth > getMaxHealth()) {
+			this.currentHealth = getMaxHealth();
 		}
 	}
 
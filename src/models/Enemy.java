@@ -10,17 +10,66 @@ public class Enemy extends Character {
 		IDLE, ATTACK, DAMAGE, DEATH
 	}
 
+	private String name;
+	private int maxHealth;
+	private int level;
+	private int attackPower;
+
 	private String assetFolder;
 	private String folderName; // Store the raw folder name for saving
 	private AnimState currentState;
 
 	public Enemy(String name, int maxHealth, int level, int attackPower, String folderName) {
-		super(name, maxHealth, level, attackPower);
+		super(maxHealth);
+		this.name = name;
+		this.maxHealth = maxHealth;
+		this.level = level;
+		this.attackPower = attackPower;
 		this.folderName = folderName;
 		this.assetFolder = "images/" + folderName;
 		this.currentState = AnimState.IDLE;
 	}
 
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public int getMaxHealth() {
+		return maxHealth;
+	}
+
+	@Override
+	public int getLevel() {
+		return level;
+	}
+
+	@Override
+	public int getAttackPower() {
+		return attackPower;
+	}
+
+	@Override
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	@Override
+	public void setLevel(int level) {
+		this.level = level;
+	}
+
+	@Override
+	public void setMaxHealth(int maxHealth) {
+		this.maxHealth = maxHealth;
+	}
+
+	@Override
+	public void setAttackPower(int attackPower) {
+		this.attackPower = attackPower;
+	}
+
 	public String getFolderName() {
 		return folderName;
 	}
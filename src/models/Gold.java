@@ -0,0 +1,25 @@
+package models;
+
+// Gold amounts are kept as whole hundredths of a Gold (minor units) in a long, so adding up
+// balances and prices is exact. A double is only used to show an amount or to read one from
+// the older files, which stored the balance as a decimal number.
+public final class Gold
+{
+	public static final int MINOR_UNITS = 100;
+
+	private Gold()
+	{
+	}
+
+	// e.g. 12.5 -> 1250, rounded to the nearest hundredth
+	public static long toMinor(double gold)
+	{
+		return Math.round(gold * MINOR_UNITS);
+	}
+
+	// e.g. 1250 -> 12.5
+	public static double toGold(long minor)
+	{
+		return (double) minor / MINOR_UNITS;
+	}
+}
@@ -1,7 +1,6 @@
 package models;
 
 import java.awt.Image;
-import java.util.UUID;
 import utils.AssetLoader;
 import game.GameConstants; // Must be added
 
@@ -14,20 +13,17 @@ public class Hangpie extends Character implements Comparable<Hangpie>
 		IDLE, ATTACK, DAMAGE, DEATH
 	}
 
-	// UUID used for Marketplace
-	private String uniqueId;
-	
-	// Product ID used exclusively in Shop
-	private String productId;
-	
-	// Hangpie's description
-	private String description;
-	
-	// For the marketplace
-	private double price;
-	
-	// The folder name of the image (e.g., "wizard") (from original code)
-	private String imageName; 
+	// The Shop product this pet was made from: ID, description, price, image and base stats.
+	// Shared by every pet of the same product, so a pet itself only keeps what is its own below.
+	private ProductTemplate template;
+
+	// UUID used for Marketplace (null for a Shop product)
+	private PetId id;
+
+	// Custom name, or null while the pet still has its product's name
+	private String name;
+
+	private int level;
 
 	// Current EXP (from original code)
 	private int currentExp; 
@@ -38,11 +34,16 @@ public class Hangpie extends Character implements Comparable<Hangpie>
 	// Hangpie constructor to be used in defining a particular Hangpie (Updated to match original codebase structure)
 	public Hangpie(String id, String name, String description, double price, int maxHealth, int level, int attackPower, String imageName)
 	{
-		super(name, maxHealth, level, attackPower);	// Calls the parent (Character) constructor using "super" keyword
-		this.productId = id;
-		this.description = description;
-		this.price = price;
-		this.imageName = imageName; // Added
+		this(new ProductTemplate(id, name, description, price, maxHealth, level, attackPower, imageName), (PetId) null);
+	}
+
+	// A pet made from a product template, at the template's level. Used when loading owned pets.
+	public Hangpie(ProductTemplate template, PetId id)
+	{
+		super(template.getMaxHealth());	// Calls the parent (Character) constructor using "super" keyword
+		this.template = template;
+		this.id = id;
+		this.level = template.getLevel();
 		this.currentExp = 0; // Added
 	}
 
@@ -51,19 +52,26 @@ public class Hangpie extends Character implements Comparable<Hangpie>
 	 * Its purpose is to store owned hangpie/s to the Inventory.
 	 * Having a local copy of products can allow the user to modify their own Hangpie's data without affecting the Shop Product data. 
 	 * This is used to prevent data manipulation to the product list in shop.
+	 * The product template itself is shared: it cannot change, editing a product makes a new one.
 	 */
 	public Hangpie (Hangpie localCopy)
+	{
+		// Generate random UUID (kept as two longs, see PetId)
+		this(localCopy, PetId.random());
+	}
+
+	// Copy of an already owned pet (e.g. loaded from inventories.txt), which keeps its stored ID.
+	// Skips generating a random UUID that would be thrown away right after.
+	public Hangpie (Hangpie localCopy, PetId id)
 	{
 		// super keyword for the Character constructor
-		super(localCopy.getName(), localCopy.getMaxHealth(), localCopy.getLevel(), localCopy.getAttackPower());
+		super(localCopy.getMaxHealth());
 		
-		// Generate random UUID. Used UUID Class
-		this.uniqueId = UUID.randomUUID().toString();
+		this.id = id;
 		
-		this.productId = localCopy.productId;
-		this.description = localCopy.description;
-		this.price = localCopy.price;
-		this.imageName = localCopy.imageName; // Added
+		this.template = localCopy.template;
+		this.name = localCopy.name;
+		this.level = localCopy.level;
 		this.currentExp = localCopy.currentExp; // Added
 	}
 	
@@ -111,12 +119,10 @@ public class Hangpie extends Character implements Comparable<Hangpie>
 	}
 	
 	private void levelUp() {
+		// Stats Growth: +1 HP / +1 ATK per level (see ProductTemplate.getMaxHealthAt)
 		this.level++;
-		// Stats Growth: +1 HP / +1 ATK per level
-		this.maxHealth += 1;
-		this.attackPower += 1;
 		// Heal on level up
-		this.currentHealth = this.maxHealth;
+		this.currentHealth = getMaxHealth();
 	}
 	
 	// --- Animation Methods (from original code) ---
@@ -154,7 +160,7 @@ public class Hangpie extends Character implements Comparable<Hangpie>
 			break;
 		}
 
-		String fullPath = GameConstants.HANGPIE_DIR + imageName + "/" + fileName;
+		String fullPath = GameConstants.HANGPIE_DIR + template.getImageName() + "/" + fileName;
 		return AssetLoader.loadImage(fullPath, -1, -1);
 	}
 
@@ -169,8 +175,8 @@ public class Hangpie extends Character implements Comparable<Hangpie>
 	// include EXP from original code)
 	public String toString() {
 		// Updated format to include EXP and EXP cap
-		return String.format("[%s]\t%s\t\tLvl:%d (EXP:%d/%d)\t[Price: %.2fG]\t%s", productId, name, level, currentExp,
-				getMaxExpForCurrentLevel(), price, description);
+		return String.format("[%s]\t%s\t\tLvl:%d (EXP:%d/%d)\t[Price: %.2fG]\t%s", getId(), getName(), level,
+				currentExp, getMaxExpForCurrentLevel(), getPrice(), getDescription());
 	}
 	
 	@Override
@@ -178,33 +184,77 @@ public class Hangpie extends Character implements Comparable<Hangpie>
 	// It can be used to sort the Product list to ascending or descending
 	public int compareTo(Hangpie other)
 	{
-		return this.productId.compareTo(other.getId());
+		return getId().compareTo(other.getId());
+	}
+
+	// The template with this Hangpie's current name, level and stats. Meant for products (see
+	// ProductManager.getTemplate): after a product was edited the edits are folded into a new
+	// template here, so the pets made from it afterwards share that one. A pet with its own name
+	// or level gets a template of its own.
+	public ProductTemplate getTemplate()
+	{
+		if (name != null || level != template.getLevel())
+		{
+			template = template.withName(getName()).withStats(getMaxHealth(), level, getAttackPower());
+			name = null;
+		}
+		return template;
 	}
 
 	// Getter Methods (Updated to include new fields)
+	public PetId getPetId()
+	{
+		return id;
+	}
+
+	// The ID as text, for the screens and the data files
 	public String getUniqueId()
 	{
-		return uniqueId;
+		return id != null ? id.toString() : null;
 	}
 	
 	public String getId()
 	{
-		return productId;
+		return template.getId();
+	}
+
+	@Override
+	public String getName()
+	{
+		return name != null ? name : template.getName();
+	}
+
+	@Override
+	public int getLevel()
+	{
+		return level;
+	}
+
+	@Override
+	public int getMaxHealth()
+	{
+		return template.getMaxHealthAt(level);
+	}
+
+	@Override
+	public int getAttackPower()
+	{
+		return template.getAttackPowerAt(level);
 	}
 
 	public double getPrice()
 	{
-		return price;
+		return template.getPrice();
 	}
 
 	public String getDescription()
 	{
-		return description;
+		return template.getDescription();
 	}
 	
 	public String getImageName()
 	{
-		return imageName;
+		return template.getImageName();
 	}
 
 	public int getCurrentExp()
@@ -214,24 +264,64 @@ public class Hangpie extends Character implements Comparable<Hangpie>
 
 
 	// Setter Method (Updated to include new fields)
+	// The product's own values live in the shared template, so setting one of them gives this
+	// Hangpie a changed copy of the template and leaves every other pet as it is.
+	public void setPetId(PetId id)
+	{
+		this.id = id;
+	}
+
 	public void setUniqueId(String uniqueId)
 	{
-		this.uniqueId = uniqueId;
+		this.id = PetId.parse(uniqueId);
+	}
+
+	@Override
+	public void setName(String name)
+	{
+		this.name = name == null || name.equals(template.getName()) ? null : name;
+	}
+
+	// Max HP and Attack Power follow the level, +1 for every level above the product's
+	@Override
+	public void setLevel(int level)
+	{
+		this.level = level;
+	}
+
+	@Override
+	public void setMaxHealth(int maxHealth)
+	{
+		if (maxHealth != getMaxHealth())
+		{
+			int base = maxHealth - (level - template.getLevel());
+			template = template.withStats(base, template.getLevel(), template.getAttackPower());
+		}
+	}
+
+	@Override
+	public void setAttackPower(int attackPower)
+	{
+		if (attackPower != getAttackPower())
+		{
+			int base = attackPower - (level - template.getLevel());
+			template = template.withStats(template.getMaxHealth(), template.getLevel(), base);
+		}
 	}
 	
 	public void setPrice(double price)
 	{
-		this.price = price;
+		template = template.withPrice(price);
 	}
 
 	public void setDescription(String description)
 	{
-		this.description = description;
+		template = template.withDescription(description);
 	}
 
 	public void setImageName(String imageName)
 	{
-		this.imageName = imageName;
+		template = template.withImageName(imageName);
 	}
 
 	public void setCurrentExp(int currentExp)
@@ -0,0 +1,68 @@
+package models;
+
+// One credit (positive amount) or debit (negative amount) of a user's gold, see GoldLedger.
+// Entries are numbered in the order they are saved, across all users.
+public class LedgerEntry
+{
+	// Why the gold moved
+	public enum Reason {
+		OPENING, SHOP_BUY, MARKET_BUY, MARKET_SALE, CODE_REDEEM, SHOP_SELL, BATTLE_REWARD
+	}
+
+	private long seq;
+	private long time;
+	private String username;
+	private long amount;
+	private Reason reason;
+	private String reference;
+
+	public LedgerEntry(long seq, long time, String username, long amount, Reason reason, String reference)
+	{
+		this.seq = seq;
+		this.time = time;
+		this.username = username;
+		this.amount = amount;
+		this.reason = reason;
+		this.reference = reference;
+	}
+
+	// 0 until the entry is saved
+	public long getSeq()
+	{
+		return seq;
+	}
+
+	// Numbered by the GoldLedger when the entry is written to the journal
+	public void setSeq(long seq)
+	{
+		this.seq = seq;
+	}
+
+	// When it was made, in epoch milliseconds
+	public long getTime()
+	{
+		return time;
+	}
+
+	public String getUsername()
+	{
+		return username;
+	}
+
+	// In minor units (see Gold), negative for a debit
+	public long getAmount()
+	{
+		return amount;
+	}
+
+	public Reason getReason()
+	{
+		return reason;
+	}
+
+	// What the gold was for, e.g. the product ID, the pet ID or the redeemed code
+	public String getReference()
+	{
+		return reference;
+	}
+}
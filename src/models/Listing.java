@@ -2,7 +2,7 @@ package models;
 
 public class Listing
 {
-	private String uniquePetId;
+	private PetId petId;
 	private String sellerUsername;
 	private double sellingPrice;
 	
@@ -17,7 +17,7 @@ public class Listing
 	// Constructor for creating a new listing (Updated to include EXP)
 	public Listing(String sellerUsername, Hangpie pet, double sellingPrice)
 	{
-		this.uniquePetId = pet.getUniqueId();
+		this.petId = pet.getPetId();
 		this.sellerUsername = sellerUsername;
 		this.sellingPrice = sellingPrice;
 		this.productId = pet.getId();
@@ -30,9 +30,9 @@ public class Listing
 	}
 	
 	// Constructor for loading a listing from the file (Updated to include EXP)
-	public Listing(String uniquePetId, String sellerUsername, double sellingPrice, String productId, String petName, int petLevel, int petHealth, int petAttack, String description, int petExp)
+	public Listing(PetId petId, String sellerUsername, double sellingPrice, String productId, String petName, int petLevel, int petHealth, int petAttack, String description, int petExp)
 	{
-		this.uniquePetId = uniquePetId;
+		this.petId = petId;
 		this.sellerUsername = sellerUsername;
 		this.sellingPrice = sellingPrice;
 		this.productId = productId;
@@ -44,9 +44,15 @@ public class Listing
 		this.petExp = petExp; // NEW FIELD
 	}
 	
+	public PetId getPetId()
+	{
+		return petId;
+	}
+
+	// The pet's ID as text, for the screens and the data files
 	public String getUniqueId()
 	{
-		return uniquePetId;
+		return petId.toString();
 	}
 	
 	public String getProductId()
@@ -96,7 +102,7 @@ public class Listing
 	@Override
 	public String toString()
 	{
-		String uniqueId = uniquePetId.substring(0, 8).toUpperCase();
+		String uniqueId = getUniqueId().substring(0, 8).toUpperCase();
 		int maxExp = petLevel * 10; 
 		
 		String format = String.format("[FOR SALE] [UUID: %s] [%s] [STATS:(Lvl:%d, EXP:%d/%d, HP:%d, Atk:%d)] [Price: %.2fG] (Seller: %s)",
@@ -109,7 +115,7 @@ public class Listing
 	public String toFileString()
 	{
 		String toFileString = String.join("|",
-                uniquePetId,
+                getUniqueId(),
                 sellerUsername,
                 String.valueOf(sellingPrice),
                 productId,
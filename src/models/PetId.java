@@ -0,0 +1,204 @@
+package models;
+
+import java.util.UUID;
+
+import utils.RecordReader;
+
+// The unique ID of an owned pet, which is also the ID of its marketplace listing.
+// Pet IDs are random UUIDs, kept here as their two 64-bit halves instead of the 36-character text,
+// so a pet's ID is one small object and comparing or hashing it never looks at characters.
+// The text form is only made for the data files and the screens (toString()).
+// IDs that are not UUIDs in their usual lower-case form (e.g. typed into a file by hand) are kept
+// as they were written, so they still load, match and save unchanged.
+public final class PetId implements Comparable<PetId>
+{
+	private final long high;
+	private final long low;
+
+	// Only for IDs that are not plain UUIDs, otherwise null
+	private final String text;
+
+	private PetId(long high, long low, String text)
+	{
+		this.high = high;
+		this.low = low;
+		this.text = text;
+	}
+
+	// A new, random ID for a pet that was just bought from the Shop
+	public static PetId random()
+	{
+		UUID uuid = UUID.randomUUID();
+		return new PetId(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), null);
+	}
+
+	public static PetId of(long high, long low)
+	{
+		return new PetId(high, low, null);
+	}
+
+	// Reads an ID as it is written in the data files. Returns null for null.
+	public static PetId parse(String id)
+	{
+		if (id == null)
+		{
+			return null;
+		}
+
+		if (id.length() == 36 && isDash(id.charAt(8)) && isDash(id.charAt(13)) && isDash(id.charAt(18))
+				&& isDash(id.charAt(23)))
+		{
+			long high = 0;
+			long low = 0;
+			boolean valid = true;
+			for (int i = 0; i < 36 && valid; i++)
+			{
+				if (i == 8 || i == 13 || i == 18 || i == 23)
+				{
+					continue;
+				}
+				int digit = hexDigit(id.charAt(i));
+				valid = digit >= 0;
+				if (i < 18)
+				{
+					high = high << 4 | digit;
+				}
+				else
+				{
+					low = low << 4 | digit;
+				}
+			}
+			if (valid)
+			{
+				return new PetId(high, low, null);
+			}
+		}
+		return new PetId(0, 0, id);
+	}
+
+	// Same as parse(record.getString(field)), but a UUID is read straight from the line
+	public static PetId read(RecordReader record, int field)
+	{
+		if (record.getLength(field) != 36)
+		{
+			return parse(record.getString(field));
+		}
+
+		long high = 0;
+		long low = 0;
+		for (int i = 0; i < 36; i++)
+		{
+			int c = record.getChar(field, i);
+			if (i == 8 || i == 13 || i == 18 || i == 23)
+			{
+				if (!isDash(c))
+				{
+					return parse(record.getString(field));
+				}
+				continue;
+			}
+
+			int digit = hexDigit(c);
+			if (digit < 0)
+			{
+				return parse(record.getString(field));
+			}
+			if (i < 18)
+			{
+				high = high << 4 | digit;
+			}
+			else
+			{
+				low = low << 4 | digit;
+			}
+		}
+		return new PetId(high, low, null);
+	}
+
+	private static boolean isDash(int c)
+	{
+		return c == '-';
+	}
+
+	// Lower case only, like UUID.toString(), so the text comes back exactly as it was read
+	private static int hexDigit(int c)
+	{
+		if (c >= '0' && c <= '9')
+		{
+			return c - '0';
+		}
+		if (c >= 'a' && c <= 'f')
+		{
+			return c - 'a' + 10;
+		}
+		return -1;
+	}
+
+	// False for IDs that are kept as text (see above)
+	public boolean isUuid()
+	{
+		return text == null;
+	}
+
+	public long getHigh()
+	{
+		return high;
+	}
+
+	public long getLow()
+	{
+		return low;
+	}
+
+	@Override
+	public boolean equals(Object other)
+	{
+		if (this == other)
+		{
+			return true;
+		}
+		if (!(other instanceof PetId))
+		{
+			return false;
+		}
+
+		PetId id = (PetId) other;
+		if (text != null || id.text != null)
+		{
+			return text != null && text.equals(id.text);
+		}
+		return high == id.high && low == id.low;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		// Random UUIDs are already well mixed
+		return text != null ? text.hashCode() : Long.hashCode(high ^ low);
+	}
+
+	// UUIDs first, by their bits, then the IDs kept as text. Only used to break ties between
+	// listings with the same price or level (see ListingManager), so any fixed order works.
+	@Override
+	public int compareTo(PetId other)
+	{
+		if (text != null || other.text != null)
+		{
+			if (text == null)
+			{
+				return -1;
+			}
+			return other.text == null ? 1 : text.compareTo(other.text);
+		}
+
+		int result = Long.compare(high, other.high);
+		return result != 0 ? result : Long.compare(low, other.low);
+	}
+
+	// The ID as it is written in the data files
+	@Override
+	public String toString()
+	{
+		return text != null ? text : new UUID(high, low).toString();
+	}
+}
@@ -0,0 +1,109 @@
+package models;
+
+// The part of a Hangpie that comes from its Shop product: ID, description, price, image and the
+// base stats at the product's level. It never changes, so every pet bought from the same product
+// shares one template instead of carrying its own copy of these fields.
+// Editing a product makes a new template (see the with... methods); pets that were already owned
+// keep the one they were made from, just like they kept their own copies before.
+public final class ProductTemplate
+{
+	private final String productId;
+	private final String name;
+	private final String description;
+	private final double price;
+	private final int maxHealth;
+	private final int level;
+	private final int attackPower;
+	private final String imageName;
+
+	public ProductTemplate(String productId, String name, String description, double price, int maxHealth, int level,
+			int attackPower, String imageName)
+	{
+		this.productId = productId;
+		this.name = name;
+		this.description = description;
+		this.price = price;
+		this.maxHealth = maxHealth;
+		this.level = level;
+		this.attackPower = attackPower;
+		this.imageName = imageName;
+	}
+
+	public ProductTemplate withName(String name)
+	{
+		return new ProductTemplate(productId, name, description, price, maxHealth, level, attackPower, imageName);
+	}
+
+	public ProductTemplate withDescription(String description)
+	{
+		return new ProductTemplate(productId, name, description, price, maxHealth, level, attackPower, imageName);
+	}
+
+	public ProductTemplate withPrice(double price)
+	{
+		return new ProductTemplate(productId, name, description, price, maxHealth, level, attackPower, imageName);
+	}
+
+	public ProductTemplate withImageName(String imageName)
+	{
+		return new ProductTemplate(productId, name, description, price, maxHealth, level, attackPower, imageName);
+	}
+
+	// Base stats for a pet at 'level' (they grow by one per level above the template's)
+	public ProductTemplate withStats(int maxHealth, int level, int attackPower)
+	{
+		return new ProductTemplate(productId, name, description, price, maxHealth, level, attackPower, imageName);
+	}
+
+	// Stats of a pet made from this template once it reached 'petLevel': +1 HP / +1 ATK per level
+	public int getMaxHealthAt(int petLevel)
+	{
+		return maxHealth + (petLevel - level);
+	}
+
+	public int getAttackPowerAt(int petLevel)
+	{
+		return attackPower + (petLevel - level);
+	}
+
+	// Getter Methods
+	public String getId()
+	{
+		return productId;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public String getDescription()
+	{
+		return description;
+	}
+
+	public double getPrice()
+	{
+		return price;
+	}
+
+	public int getMaxHealth()
+	{
+		return maxHealth;
+	}
+
+	public int getLevel()
+	{
+		return level;
+	}
+
+	public int getAttackPower()
+	{
+		return attackPower;
+	}
+
+	public String getImageName()
+	{
+		return imageName;
+	}
+}
@@ -12,6 +12,9 @@ public class Purchase implements Colorable {
 	private double pricePaid;
 	private LocalDateTime timestamp;
 
+	// Numbered by the TransactionManager when committed, in journal order (0 = older rows without one)
+	private long seq;
+
 	private static DateTimeFormatter formatter = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
 
 	public Purchase(String username, String productID, String productName, double pricePaid) {
@@ -31,6 +34,15 @@ public class Purchase implements Colorable {
 		this.timestamp = LocalDateTime.parse(timestamp, formatter);
 	}
 
+	// Same as above, for storage formats that keep the timestamp as a value
+	public Purchase(String username, String productID, String productName, double pricePaid, LocalDateTime timestamp) {
+		this.username = username;
+		this.productID = productID;
+		this.productName = productName;
+		this.pricePaid = pricePaid;
+		this.timestamp = timestamp;
+	}
+
 	public String getUsername() {
 		return username;
 	}
@@ -39,6 +51,26 @@ public class Purchase implements Colorable {
 		return productID;
 	}
 
+	public String getProductName() {
+		return productName;
+	}
+
+	public double getPricePaid() {
+		return pricePaid;
+	}
+
+	public LocalDateTime getTimestamp() {
+		return timestamp;
+	}
+
+	public long getSeq() {
+		return seq;
+	}
+
+	public void setSeq(long seq) {
+		this.seq = seq;
+	}
+
 	// Converts the purchase to a simple line for the text file
 	public String toFileString() {
 		String line = String.join("|", username, productID, productName, String.valueOf(pricePaid),
@@ -1,15 +1,23 @@
 package models;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class RedeemCode {
+	// States. A code only moves forward: ACTIVE -> USED, or ACTIVE/USED -> DELETED.
+	// The one way back is USED -> ACTIVE, when the redeemed gold could not be saved.
+	private static final int ACTIVE = 0;
+	private static final int USED = 1;
+	private static final int DELETED = 2;
+
 	private String codeString;
 	private double goldValue;
-	private boolean isUsed;
+	private AtomicInteger state;
 
 	// RedeemCode Constructor used to define the code details
 	public RedeemCode(String codeString, double goldValue) {
 		this.codeString = codeString;
 		this.goldValue = goldValue;
-		this.isUsed = false;
+		this.state = new AtomicInteger(ACTIVE);
 	}
 
 	// Getters
@@ -22,17 +30,33 @@ public class RedeemCode {
 	}
 
 	public boolean isUsed() {
-		return isUsed;
+		return state.get() == USED;
 	}
 
 	// Setter
 	public void setUsed(boolean isUsed) {
-		this.isUsed = isUsed;
+		state.set(isUsed ? USED : ACTIVE);
+	}
+
+	// Marks the code used if it is still active. Only ONE caller can ever get true,
+	// even when many threads try the same code at the same time.
+	public boolean tryRedeem() {
+		return state.compareAndSet(ACTIVE, USED);
+	}
+
+	// Makes a used code active again (its gold could not be saved). False if it was deleted meanwhile.
+	public boolean tryRelease() {
+		return state.compareAndSet(USED, ACTIVE);
+	}
+
+	// Marks the code deleted, so it can no longer be redeemed
+	public void markDeleted() {
+		state.set(DELETED);
 	}
 
 	@Override
 	// This method is used to display the details of the code
 	public String toString() {
-		return "Value: " + goldValue + "G\tCode: [" + codeString + "] | Used: " + isUsed;
+		return "Value: " + goldValue + "G\tCode: [" + codeString + "] | Used: " + isUsed();
 	}
-}
\ No newline at end of file
+}
@@ -24,8 +24,14 @@ public class User {
 	// User's Contact Number
 	private String contactNum;
 
-	// User's balance
-	private double goldBalance;
+	// User's balance, in minor units (hundredths of a Gold, see Gold) so sums are exact
+	private long gold;
+
+	// Sequence number of the last ledger entry already counted in 'gold' (see GoldLedger)
+	private long goldSeq;
+
+	// Debits taken but not saved yet. Still counted in 'gold' until they are (see GoldLedger).
+	private long heldGold;
 
 	// Used to store owned Hangpies in a list
 	private List<Hangpie> inventory;
@@ -46,7 +52,7 @@ public class User {
 		this.lastName = lastName;
 		this.contactNum = contactNum;
 
-		this.goldBalance = 0;
+		this.gold = 0;
 		this.inventory = new ArrayList<>();
 		this.worldLevel = 1;
 		this.progressLevel = 1;
@@ -64,22 +70,25 @@ public class User {
 		this.lastName = lastName;
 		this.contactNum = contactNum;
 
-		this.goldBalance = 0;
+		this.gold = 0;
 		this.inventory = new ArrayList<>();
 		this.worldLevel = 1;
 		this.progressLevel = 1;
 	}
 
-	// Used to add Gold to the User
-	public void addGold(double amount) {
-		this.goldBalance += amount;
+	// Used to add Gold to the User.
+	// Note: this changes the balance without a ledger entry. Real transfers go through GoldLedger.
+	public synchronized void addGold(double amount) {
+		this.gold += Gold.toMinor(amount);
 	}
 
-	// Used to subtract Gold of the User
-	public boolean subtractGold(double amount) {
+	// Used to subtract Gold of the User (without a ledger entry, see addGold)
+	public synchronized boolean subtractGold(double amount) {
+		long minor = Gold.toMinor(amount);
+
 		// IF user has more gold than the amount to be subtract:
-		if (goldBalance >= amount) {
-			goldBalance -= amount;
+		if (gold >= minor) {
+			gold -= minor;
 			return true;
 		}
 
@@ -87,17 +96,55 @@ public class User {
 		return false;
 	}
 
-	// Used to add Hangpie to the Inventory
-	public void addToInventory(Hangpie hangpie) {
+	// Sets aside gold for a debit that is not saved yet. Refused (returns false) if the gold that
+	// is not held already is not enough.
+	public synchronized boolean holdGold(long amount) {
+		if (gold - heldGold < amount) {
+			return false;
+		}
+
+		heldGold += amount;
+		return true;
+	}
+
+	// Gives back held gold whose debit could not be saved
+	public synchronized void releaseGold(long amount) {
+		heldGold -= amount;
+	}
+
+	// Applies a saved ledger entry. A debit takes the gold that was held for it.
+	public synchronized void applyGold(long amount, long seq) {
+		if (amount < 0) {
+			heldGold += amount;
+		}
+
+		gold += amount;
+		goldSeq = Math.max(goldSeq, seq);
+	}
+
+	// Used when loading: the balance and the last ledger entry it includes
+	public synchronized void setGold(long gold, long goldSeq) {
+		this.gold = gold;
+		this.goldSeq = goldSeq;
+	}
+
+	// Used to add Hangpie to the Inventory.
+	// The inventory is guarded by the user's lock: the MarketEngine can change it while the
+	// console shows or saves the same user.
+	public synchronized void addToInventory(Hangpie hangpie) {
 		// Add the Hangpie to the User's inventory
 		inventory.add(hangpie);
 	}
 
-	public void removeToInventory(Hangpie hangpie) {
+	public synchronized void removeToInventory(Hangpie hangpie) {
 		// Remove the Hangpie from the User's inventory
 		inventory.remove(hangpie);
 	}
 
+	public synchronized void clearInventory() {
+		inventory.clear();
+	}
+
 	// Getter Methods
 	public String getUsername() {
 		return username;
@@ -127,12 +174,27 @@ public class User {
 		return contactNum;
 	}
 
-	public double getGoldBalance() {
-		return goldBalance;
+	public synchronized double getGoldBalance() {
+		return Gold.toGold(gold);
+	}
+
+	// In minor units (see Gold)
+	public synchronized long getGold() {
+		return gold;
+	}
+
+	// What can still be spent: the balance minus the held gold
+	public synchronized long getAvailableGold() {
+		return gold - heldGold;
+	}
+
+	public synchronized long getGoldSeq() {
+		return goldSeq;
 	}
 
-	public List<Hangpie> getInventory() {
-		return inventory;
+	// A copy, safe to loop over while the inventory changes. Change it with add/removeToInventory.
+	public synchronized List<Hangpie> getInventory() {
+		return new ArrayList<>(inventory);
 	}
 
 	public int getWorldLevel() {
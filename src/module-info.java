@@ -6,4 +6,6 @@
  */
 module BattleHangpies_Marketplace {
 	requires java.desktop;
+	requires java.management;
+	requires jdk.management;
 }
\ No newline at end of file
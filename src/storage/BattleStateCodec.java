@@ -0,0 +1,63 @@
+package storage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import models.BattleState;
+
+import utils.RecordReader;
+
+// saves.txt: username|secretWord|clue|guessedLetters|enemyName|enemyHp|enemyMaxHp|enemyAtk|enemyImageFolder|enemyLevel|playerPetId|playerPetHp
+public class BattleStateCodec implements RecordCodec<BattleState> {
+	@Override
+	public String getHeader() {
+		return "// FORMAT: username|secretWord|clue|guessedLetters|enemyName|enemyHp|enemyMaxHp|enemyAtk|enemyImageFolder|enemyLevel|playerPetId|playerPetHp";
+	}
+
+	@Override
+	public String[] toFields(BattleState state) {
+		return state.toFileString().split("\\|", -1);
+	}
+
+	@Override
+	public BattleState fromFields(String[] parts) {
+		BinaryFields.requireFields(parts, 12);
+
+		return new BattleState(parts[0], parts[1], parts[2], parts[3], parts[4], Integer.parseInt(parts[5]),
+				Integer.parseInt(parts[6]), Integer.parseInt(parts[7]), parts[8], Integer.parseInt(parts[9]),
+				parts[10], Integer.parseInt(parts[11]));
+	}
+
+	@Override
+	public BattleState fromRecord(RecordReader record) {
+		record.requireFields(12);
+
+		return new BattleState(record.getString(0), record.getString(1), record.getSharedString(2),
+				record.getString(3), record.getSharedString(4), record.getInt(5), record.getInt(6), record.getInt(7),
+				record.getSharedString(8), record.getInt(9), record.getString(10), record.getInt(11));
+	}
+
+	@Override
+	public void write(BattleState state, DataOutput out) throws IOException {
+		BinaryFields.writeString(out, state.getUsername());
+		BinaryFields.writeString(out, state.getSecretWord());
+		BinaryFields.writeString(out, state.getClue());
+		BinaryFields.writeString(out, state.getGuessedLetters());
+		BinaryFields.writeString(out, state.getEnemyName());
+		out.writeInt(state.getEnemyHp());
+		out.writeInt(state.getEnemyMaxHp());
+		out.writeInt(state.getEnemyAtk());
+		BinaryFields.writeString(out, state.getEnemyImageFolder());
+		out.writeInt(state.getEnemyLevel());
+		BinaryFields.writeId(out, state.getPlayerPetId());
+		out.writeInt(state.getPlayerPetHp());
+	}
+
+	@Override
+	public BattleState read(DataInput in) throws IOException {
+		return new BattleState(BinaryFields.readString(in), BinaryFields.readString(in), BinaryFields.readString(in),
+				BinaryFields.readString(in), BinaryFields.readString(in), in.readInt(), in.readInt(), in.readInt(),
+				BinaryFields.readString(in), in.readInt(), BinaryFields.readId(in), in.readInt());
+	}
+}
@@ -0,0 +1,91 @@
+package storage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.UUID;
+
+import models.PetId;
+
+// Small helpers shared by the binary side of the codecs
+public class BinaryFields {
+	// writeUTF has no way to mark a missing value, and writing "null" would read back as that text
+	public static void writeString(DataOutput out, String value) throws IOException {
+		if (value == null) {
+			throw new IOException("Cannot save a missing (null) text field in the binary format");
+		}
+		out.writeUTF(value);
+	}
+
+	public static String readString(DataInput in) throws IOException {
+		return in.readUTF();
+	}
+
+	// UUID strings (36 chars) are stored as two longs (16 bytes). Anything else is stored as text.
+	public static void writeId(DataOutput out, String id) throws IOException {
+		UUID uuid = parseUuid(id);
+
+		if (uuid != null) {
+			out.writeByte(1);
+			out.writeLong(uuid.getMostSignificantBits());
+			out.writeLong(uuid.getLeastSignificantBits());
+		} else {
+			out.writeByte(0);
+			writeString(out, id);
+		}
+	}
+
+	public static String readId(DataInput in) throws IOException {
+		if (in.readByte() == 1) {
+			return new UUID(in.readLong(), in.readLong()).toString();
+		}
+		return readString(in);
+	}
+
+	// Same format as writeId/readId, without going through the text
+	public static void writeId(DataOutput out, PetId id) throws IOException {
+		if (id.isUuid()) {
+			out.writeByte(1);
+			out.writeLong(id.getHigh());
+			out.writeLong(id.getLow());
+		} else {
+			out.writeByte(0);
+			writeString(out, id.toString());
+		}
+	}
+
+	public static PetId readPetId(DataInput in) throws IOException {
+		if (in.readByte() == 1) {
+			return PetId.of(in.readLong(), in.readLong());
+		}
+		return PetId.parse(readString(in));
+	}
+
+	private static UUID parseUuid(String id) {
+		if (id == null || id.length() != 36) {
+			return null;
+		}
+
+		try {
+			UUID uuid = UUID.fromString(id);
+			// Only if it comes back exactly the same (e.g. not upper case)
+			return uuid.toString().equals(id) ? uuid : null;
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	// For fields added at the end of a record later: true if the record has more bytes.
+	// Works because a .bin record is read from its own buffer (see BinaryRecordStore); the startup
+	// snapshot always has the new fields, older images are dropped by its VERSION.
+	public static boolean hasMore(DataInput in) throws IOException {
+		return in instanceof InputStream && ((InputStream) in).available() > 0;
+	}
+
+	public static void requireFields(String[] fields, int count) {
+		if (fields.length < count) {
+			throw new IllegalArgumentException("Expected " + count + " fields but found " + fields.length);
+		}
+	}
+}
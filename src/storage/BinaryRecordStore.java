@@ -0,0 +1,230 @@
+package storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+// A compact binary format:
+// [magic "HPB2"][int codec binary version] then for every record [int length][length bytes written by the codec].
+// Files from before the version was stored start with "HPB1" and hold version 1 records.
+// Values are stored typed (no number parsing on load) and the length prefix lets a
+// corrupt record be skipped without losing the rest of the file.
+public class BinaryRecordStore<T> implements SeekableRecordStore<T> {
+	private static final int MAGIC = 0x48504232; // "HPB2"
+	private static final int MAGIC_V1 = 0x48504231; // "HPB1"
+
+	private File file;
+	private RecordCodec<T> codec;
+
+	// Used to read the data when the .bin file does not exist yet (e.g. the old .txt file)
+	private RecordStore<T> fallback;
+
+	// A ByteArrayInputStream we can point at a new buffer, so records are decoded without new streams
+	private static class RecordInput extends ByteArrayInputStream {
+		private RecordInput() {
+			super(new byte[0]);
+		}
+
+		private void reset(byte[] buffer, int length) {
+			this.buf = buffer;
+			this.pos = 0;
+			this.count = length;
+		}
+	}
+
+	public BinaryRecordStore(String fileName, RecordCodec<T> codec) {
+		this(fileName, codec, null);
+	}
+
+	public BinaryRecordStore(String fileName, RecordCodec<T> codec, RecordStore<T> fallback) {
+		this.file = new File(fileName);
+		this.codec = codec;
+		this.fallback = fallback;
+	}
+
+	@Override
+	public void load(Consumer<T> sink) throws IOException {
+		if (usesFallback()) {
+			System.out.println("[System]: " + file.getName() + " not found, reading " + fallback.getName() + " instead.");
+			fallback.load(sink);
+			return;
+		}
+
+		scan((record, position, length) -> sink.accept(record));
+	}
+
+	// Positions point at a record's bytes, just after its length prefix.
+	// While the .bin file does not exist yet they are positions in the fallback file.
+	@Override
+	public void scan(PositionedSink<T> sink) throws IOException {
+		if (usesFallback()) {
+			seekableFallback().scan(sink);
+			return;
+		}
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+			int magic = in.readInt();
+			int version = readVersion(magic, in);
+
+			RecordInput recordInput = new RecordInput();
+			DataInputStream recordData = new DataInputStream(recordInput);
+			byte[] buffer = new byte[256];
+			long position = magic == MAGIC_V1 ? 4 : 8;
+
+			while (true) {
+				int length;
+				try {
+					length = in.readInt();
+				} catch (EOFException e) {
+					break;
+				}
+
+				if (length < 0) {
+					throw new IOException(file.getName() + " is corrupt (negative record length)");
+				}
+
+				if (length > buffer.length) {
+					buffer = Arrays.copyOf(buffer, Math.max(length, buffer.length * 2));
+				}
+
+				in.readFully(buffer, 0, length);
+				recordInput.reset(buffer, length);
+				position += 4;
+
+				try {
+					T record = codec.read(recordData, version);
+					if (record != null) {
+						sink.accept(record, position, length);
+					}
+				} catch (IOException | IllegalArgumentException e) {
+					System.err.println("[Warning]: Skipping corrupt record in " + file.getName());
+				}
+				position += length;
+			}
+		}
+	}
+
+	@Override
+	public T readAt(long position, int length) throws IOException {
+		if (usesFallback()) {
+			return seekableFallback().readAt(position, length);
+		}
+
+		byte[] buffer = new byte[length];
+		int version;
+		try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+			version = readVersion(in.readInt(), in);
+			in.seek(position);
+			in.readFully(buffer);
+		}
+
+		try {
+			return codec.read(new DataInputStream(new ByteArrayInputStream(buffer)), version);
+		} catch (IOException | IllegalArgumentException e) {
+			System.err.println("[Warning]: Skipping corrupt record in " + file.getName());
+			return null;
+		}
+	}
+
+	// Reads the rest of the file header after its magic, returns the version of the records that follow
+	private int readVersion(int magic, DataInput in) throws IOException {
+		if (magic == MAGIC_V1) {
+			return 1;
+		}
+		if (magic != MAGIC) {
+			throw new IOException(file.getName() + " is not a Battle Hangpies binary file");
+		}
+		return in.readInt();
+	}
+
+	private void writeHeader(DataOutputStream out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(codec.getBinaryVersion());
+	}
+
+	private boolean usesFallback() {
+		return !file.exists() && fallback != null && fallback.exists();
+	}
+
+	@SuppressWarnings("unchecked")
+	private SeekableRecordStore<T> seekableFallback() throws IOException {
+		if (!(fallback instanceof SeekableRecordStore)) {
+			throw new IOException(fallback.getName() + " cannot be read by position");
+		}
+		return (SeekableRecordStore<T>) fallback;
+	}
+
+	@Override
+	public void saveAll(Iterable<T> records) throws IOException {
+		File tempFile = new File(file.getPath() + ".tmp");
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16))) {
+			writeHeader(out);
+
+			ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(256);
+			DataOutputStream recordOut = new DataOutputStream(recordBytes);
+
+			for (T record : records) {
+				writeRecord(record, out, recordBytes, recordOut);
+			}
+		}
+
+		Storage.replaceFile(tempFile, file);
+	}
+
+	@Override
+	public void append(T record) throws IOException {
+		boolean isNew = !file.exists() || file.length() == 0;
+
+		// New records cannot go after records of an older version
+		if (!isNew) {
+			try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+				if (readVersion(in.readInt(), in) != codec.getBinaryVersion()) {
+					throw new IOException(file.getName() + " holds records of an older version, it has to be saved in full");
+				}
+			}
+		}
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)))) {
+			if (isNew) {
+				writeHeader(out);
+			}
+
+			ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(256);
+			writeRecord(record, out, recordBytes, new DataOutputStream(recordBytes));
+		}
+	}
+
+	private void writeRecord(T record, DataOutputStream out, ByteArrayOutputStream recordBytes,
+			DataOutputStream recordOut) throws IOException {
+		recordBytes.reset();
+		codec.write(record, recordOut);
+		recordOut.flush();
+
+		out.writeInt(recordBytes.size());
+		recordBytes.writeTo(out);
+	}
+
+	@Override
+	public boolean exists() {
+		// The old text file counts until the first save writes the .bin file
+		return file.exists() || (fallback != null && fallback.exists());
+	}
+
+	@Override
+	public String getName() {
+		return file.getName();
+	}
+}
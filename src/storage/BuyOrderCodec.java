@@ -0,0 +1,56 @@
+package storage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import models.BuyOrder;
+
+import utils.RecordReader;
+
+// buy_orders.txt: id|time|buyerUsername|productId|maxPrice|minLevel
+public class BuyOrderCodec implements RecordCodec<BuyOrder> {
+	@Override
+	public String getHeader() {
+		return "// FORMAT: id|time|buyerUsername|productId|maxPrice|minLevel";
+	}
+
+	@Override
+	public String[] toFields(BuyOrder order) {
+		return new String[] { String.valueOf(order.getId()), String.valueOf(order.getTime()),
+				order.getBuyerUsername(), order.getProductId(), String.valueOf(order.getMaxPrice()),
+				String.valueOf(order.getMinLevel()) };
+	}
+
+	@Override
+	public BuyOrder fromFields(String[] parts) {
+		BinaryFields.requireFields(parts, 6);
+
+		return new BuyOrder(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2], parts[3],
+				Double.parseDouble(parts[4]), Integer.parseInt(parts[5]));
+	}
+
+	@Override
+	public BuyOrder fromRecord(RecordReader record) {
+		record.requireFields(6);
+
+		return new BuyOrder(record.getLong(0), record.getLong(1), record.getSharedString(2),
+				record.getSharedString(3), record.getDouble(4), record.getInt(5));
+	}
+
+	@Override
+	public void write(BuyOrder order, DataOutput out) throws IOException {
+		out.writeLong(order.getId());
+		out.writeLong(order.getTime());
+		BinaryFields.writeString(out, order.getBuyerUsername());
+		BinaryFields.writeString(out, order.getProductId());
+		out.writeDouble(order.getMaxPrice());
+		out.writeInt(order.getMinLevel());
+	}
+
+	@Override
+	public BuyOrder read(DataInput in) throws IOException {
+		return new BuyOrder(in.readLong(), in.readLong(), BinaryFields.readString(in), BinaryFields.readString(in),
+				in.readDouble(), in.readInt());
+	}
+}
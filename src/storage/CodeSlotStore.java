@@ -0,0 +1,238 @@
+package storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import models.RedeemCode;
+
+// Redeem codes in a fixed-width file (codes.dat) that is memory-mapped read/write.
+// Every code owns one 32 byte slot, so redeeming or deleting a code only changes
+// its status byte in place, no matter how many codes the file holds.
+//
+// File layout:
+//   header [int magic "HPC1"][int slotCount][24 bytes reserved]
+//   slot   [byte status][byte codeLength][22 bytes code, ASCII][double goldValue]
+// The file grows in chunks, so slots past slotCount are just unused space.
+public class CodeSlotStore {
+	public static final int MAX_CODE_LENGTH = 22;
+
+	private static final int MAGIC = 0x48504331; // "HPC1"
+	private static final int HEADER_SIZE = 32;
+	private static final int SLOT_SIZE = 32;
+	private static final int MIN_CAPACITY = 1024;
+
+	// Slot layout
+	private static final int STATUS = 0;
+	private static final int CODE_LENGTH = 1;
+	private static final int CODE = 2;
+	private static final int GOLD_VALUE = 24;
+
+	// Status values
+	private static final byte ACTIVE = 1;
+	private static final byte USED = 2;
+	private static final byte DELETED = 3;
+
+	private File file;
+	private FileChannel channel;
+	private volatile MappedByteBuffer mapped;
+	private int capacity; // Slots the file currently has room for
+	private int slotCount; // Slots handed out so far (deleted ones included)
+	private boolean created;
+
+	// code string -> slot number
+	private Map<String, Integer> slotByCode = new ConcurrentHashMap<>();
+
+	public CodeSlotStore(String fileName) throws IOException {
+		this.file = new File(fileName);
+		this.created = !file.exists() || file.length() < HEADER_SIZE;
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+
+		if (created) {
+			map(MIN_CAPACITY);
+			mapped.putInt(0, MAGIC);
+			mapped.putInt(4, 0);
+		} else {
+			map((int) Math.max(MIN_CAPACITY, (channel.size() - HEADER_SIZE) / SLOT_SIZE));
+
+			if (mapped.getInt(0) != MAGIC) {
+				throw new IOException(file.getName() + " is not a Battle Hangpies code file");
+			}
+
+			slotCount = Math.min(mapped.getInt(4), capacity);
+			buildIndex();
+		}
+	}
+
+	private void buildIndex() {
+		for (int slot = 0; slot < slotCount; slot++) {
+			if (status(slot) != DELETED) {
+				slotByCode.put(readCode(slot), slot);
+			}
+		}
+	}
+
+	// True if codes.dat did not exist yet, i.e. it should be filled from the old codes file
+	public boolean isCreated() {
+		return created;
+	}
+
+	// Hands every code that was not deleted to the sink, in slot order
+	public synchronized void load(Consumer<RedeemCode> sink) {
+		for (int slot = 0; slot < slotCount; slot++) {
+			byte status = status(slot);
+			if (status == DELETED) {
+				continue;
+			}
+
+			RedeemCode code = new RedeemCode(readCode(slot), mapped.getDouble(offset(slot) + GOLD_VALUE));
+			code.setUsed(status == USED);
+			sink.accept(code);
+		}
+	}
+
+	// Writes a new code into the next free slot. Returns false if the code is already stored.
+	public synchronized boolean add(RedeemCode code) {
+		String codeString = code.getCodeString();
+		byte[] bytes = codeString.getBytes(StandardCharsets.US_ASCII);
+
+		if (bytes.length > MAX_CODE_LENGTH) {
+			throw new IllegalArgumentException("Code is longer than " + MAX_CODE_LENGTH + " characters: " + codeString);
+		}
+
+		if (slotByCode.containsKey(codeString)) {
+			return false;
+		}
+
+		if (slotCount == capacity) {
+			grow();
+		}
+
+		int slot = slotCount;
+		int offset = offset(slot);
+		mapped.put(offset + CODE_LENGTH, (byte) bytes.length);
+		mapped.put(offset + CODE, bytes);
+		mapped.putDouble(offset + GOLD_VALUE, code.getGoldValue());
+		mapped.put(offset + STATUS, code.isUsed() ? USED : ACTIVE);
+
+		// Publish the slot only after it is complete
+		slotCount++;
+		mapped.putInt(4, slotCount);
+		slotByCode.put(codeString, slot);
+		return true;
+	}
+
+	// Flips the code's status byte to USED. Returns false if it is unknown, used or deleted.
+	public boolean markUsed(String codeString) {
+		return setStatus(codeString, USED);
+	}
+
+	// Flips a USED code's status byte back to ACTIVE. Returns false if it is not used.
+	public boolean markActive(String codeString) {
+		return setStatus(codeString, ACTIVE);
+	}
+
+	// Flips the code's status byte to DELETED. The slot itself is not reused.
+	public boolean delete(String codeString) {
+		return setStatus(codeString, DELETED);
+	}
+
+	public boolean contains(String codeString) {
+		return slotByCode.containsKey(codeString);
+	}
+
+	// Number of codes stored (deleted ones not included)
+	public int size() {
+		return slotByCode.size();
+	}
+
+	// Forces every change so far to disk. add() does not force each slot, so call this after a batch.
+	public synchronized void force() {
+		mapped.force();
+	}
+
+	public synchronized void close() {
+		try {
+			mapped.force();
+			mapped = null;
+			channel.close();
+		} catch (IOException e) {
+			System.err.println("Error closing " + file.getName() + ": " + e.getMessage());
+		}
+	}
+
+	public String getName() {
+		return file.getName();
+	}
+
+	private boolean setStatus(String codeString, byte status) {
+		MappedByteBuffer buffer;
+		int offset;
+
+		synchronized (this) {
+			Integer slot = slotByCode.get(codeString);
+			if (slot == null || status(slot) == DELETED || (status == USED && status(slot) != ACTIVE)
+					|| (status == ACTIVE && status(slot) != USED)) {
+				return false;
+			}
+
+			buffer = mapped;
+			offset = offset(slot);
+			buffer.put(offset + STATUS, status);
+
+			if (status == DELETED) {
+				slotByCode.remove(codeString);
+			}
+		}
+
+		// Only the page holding this slot is written back, outside the lock so
+		// sessions redeeming different codes don't wait on each other's disk writes
+		buffer.force(offset, SLOT_SIZE);
+		return true;
+	}
+
+	private byte status(int slot) {
+		return mapped.get(offset(slot) + STATUS);
+	}
+
+	private String readCode(int slot) {
+		int offset = offset(slot);
+		byte[] bytes = new byte[mapped.get(offset + CODE_LENGTH)];
+		mapped.get(offset + CODE, bytes);
+		return new String(bytes, StandardCharsets.US_ASCII);
+	}
+
+	private static int offset(int slot) {
+		return HEADER_SIZE + slot * SLOT_SIZE;
+	}
+
+	// Doubles the file, so adding n codes only remaps about log(n) times
+	private void grow() {
+		long newCapacity = (long) capacity * 2;
+		if (HEADER_SIZE + newCapacity * SLOT_SIZE > Integer.MAX_VALUE) {
+			newCapacity = (Integer.MAX_VALUE - HEADER_SIZE) / SLOT_SIZE;
+			if (newCapacity <= capacity) {
+				throw new IllegalStateException(file.getName() + " is full");
+			}
+		}
+
+		try {
+			mapped.force();
+			map((int) newCapacity);
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not grow " + file.getName() + ": " + e.getMessage(), e);
+		}
+	}
+
+	private void map(int newCapacity) throws IOException {
+		capacity = newCapacity;
+		mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+	}
+}
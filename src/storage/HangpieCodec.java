@@ -0,0 +1,65 @@
+package storage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import models.Hangpie;
+
+import utils.RecordReader;
+
+// products.txt: hangpieID|name|description|price|maxHealth|level|attackPower|imageName
+public class HangpieCodec implements RecordCodec<Hangpie> {
+	@Override
+	public String getHeader() {
+		return "// FORMAT: hangpieID|name|description|price|maxHealth|level|attackPower|imageName";
+	}
+
+	@Override
+	public String[] toFields(Hangpie product) {
+		return new String[] { product.getId(), product.getName(), product.getDescription(),
+				String.valueOf(product.getPrice()), String.valueOf(product.getMaxHealth()),
+				String.valueOf(product.getLevel()), String.valueOf(product.getAttackPower()), product.getImageName() };
+	}
+
+	@Override
+	public Hangpie fromFields(String[] parts) {
+		BinaryFields.requireFields(parts, 7);
+
+		String imageName = "dragon.png"; // Default
+		if (parts.length > 7) {
+			imageName = parts[7];
+		}
+
+		// Constructor handles initializing currentExp to 0 automatically
+		return new Hangpie(parts[0], parts[1], parts[2], Double.parseDouble(parts[3]), Integer.parseInt(parts[4]),
+				Integer.parseInt(parts[5]), Integer.parseInt(parts[6]), imageName);
+	}
+
+	@Override
+	public Hangpie fromRecord(RecordReader record) {
+		record.requireFields(7);
+
+		String imageName = record.getFieldCount() > 7 ? record.getString(7) : "dragon.png";
+		return new Hangpie(record.getString(0), record.getString(1), record.getString(2), record.getDouble(3),
+				record.getInt(4), record.getInt(5), record.getInt(6), imageName);
+	}
+
+	@Override
+	public void write(Hangpie product, DataOutput out) throws IOException {
+		BinaryFields.writeString(out, product.getId());
+		BinaryFields.writeString(out, product.getName());
+		BinaryFields.writeString(out, product.getDescription());
+		out.writeDouble(product.getPrice());
+		out.writeInt(product.getMaxHealth());
+		out.writeInt(product.getLevel());
+		out.writeInt(product.getAttackPower());
+		BinaryFields.writeString(out, product.getImageName());
+	}
+
+	@Override
+	public Hangpie read(DataInput in) throws IOException {
+		return new Hangpie(BinaryFields.readString(in), BinaryFields.readString(in), BinaryFields.readString(in),
+				in.readDouble(), in.readInt(), in.readInt(), in.readInt(), BinaryFields.readString(in));
+	}
+}
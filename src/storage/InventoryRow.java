@@ -0,0 +1,48 @@
+package storage;
+
+import models.PetId;
+
+// One row of inventories.txt: a pet and who owns it.
+// The pet itself is rebuilt from its product by the UserManager.
+public class InventoryRow {
+	private PetId petId;
+	private String ownerUsername;
+	private String productId;
+	private String customName;
+	private int level;
+	private int currentExp;
+
+	public InventoryRow(PetId petId, String ownerUsername, String productId, String customName, int level,
+			int currentExp) {
+		this.petId = petId;
+		this.ownerUsername = ownerUsername;
+		this.productId = productId;
+		this.customName = customName;
+		this.level = level;
+		this.currentExp = currentExp;
+	}
+
+	public PetId getPetId() {
+		return petId;
+	}
+
+	public String getOwnerUsername() {
+		return ownerUsername;
+	}
+
+	public String getProductId() {
+		return productId;
+	}
+
+	public String getCustomName() {
+		return customName;
+	}
+
+	public int getLevel() {
+		return level;
+	}
+
+	public int getCurrentExp() {
+		return currentExp;
+	}
+}
@@ -0,0 +1,62 @@
+package storage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import models.PetId;
+
+import utils.RecordReader;
+
+// inventories.txt: uniqueId|ownerUsername|productId|customName|level|currentExp
+public class InventoryRowCodec implements RecordCodec<InventoryRow> {
+	@Override
+	public String getHeader() {
+		return "// uniqueId|ownerUsername|productId|customName|level|currentExp";
+	}
+
+	@Override
+	public String[] toFields(InventoryRow row) {
+		return new String[] { row.getPetId().toString(), row.getOwnerUsername(), row.getProductId(), row.getCustomName(),
+				String.valueOf(row.getLevel()), String.valueOf(row.getCurrentExp()) };
+	}
+
+	@Override
+	public InventoryRow fromFields(String[] parts) {
+		BinaryFields.requireFields(parts, 5);
+
+		// currentExp was added later, default to 0 if missing
+		int currentExp = 0;
+		if (parts.length > 5) {
+			currentExp = Integer.parseInt(parts[5]);
+		}
+
+		return new InventoryRow(PetId.parse(parts[0]), parts[1], parts[2], parts[3], Integer.parseInt(parts[4]), currentExp);
+	}
+
+	// Rows come grouped by owner and repeat the same products and names, so those Strings are shared
+	@Override
+	public InventoryRow fromRecord(RecordReader record) {
+		record.requireFields(5);
+
+		int currentExp = record.getFieldCount() > 5 ? record.getInt(5) : 0;
+		return new InventoryRow(PetId.read(record, 0), record.getSharedString(1), record.getSharedString(2),
+				record.getSharedString(3), record.getInt(4), currentExp);
+	}
+
+	@Override
+	public void write(InventoryRow row, DataOutput out) throws IOException {
+		BinaryFields.writeId(out, row.getPetId());
+		BinaryFields.writeString(out, row.getOwnerUsername());
+		BinaryFields.writeString(out, row.getProductId());
+		BinaryFields.writeString(out, row.getCustomName());
+		out.writeInt(row.getLevel());
+		out.writeInt(row.getCurrentExp());
+	}
+
+	@Override
+	public InventoryRow read(DataInput in) throws IOException {
+		return new InventoryRow(BinaryFields.readPetId(in), BinaryFields.readString(in), BinaryFields.readString(in),
+				BinaryFields.readString(in), in.readInt(), in.readInt());
+	}
+}
@@ -0,0 +1,56 @@
+package storage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import models.LedgerEntry;
+
+import utils.RecordReader;
+
+// gold_ledger.txt (and the G records of the users journal): seq|time|username|amount|reason|reference
+// The amount is in minor units (hundredths of a Gold), negative for a debit.
+public class LedgerEntryCodec implements RecordCodec<LedgerEntry> {
+	@Override
+	public String getHeader() {
+		return "// FORMAT: seq|time|username|amount|reason|reference";
+	}
+
+	@Override
+	public String[] toFields(LedgerEntry entry) {
+		return new String[] { String.valueOf(entry.getSeq()), String.valueOf(entry.getTime()), entry.getUsername(),
+				String.valueOf(entry.getAmount()), entry.getReason().name(), entry.getReference() };
+	}
+
+	@Override
+	public LedgerEntry fromFields(String[] parts) {
+		BinaryFields.requireFields(parts, 6);
+
+		return new LedgerEntry(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2], Long.parseLong(parts[3]),
+				LedgerEntry.Reason.valueOf(parts[4]), parts[5]);
+	}
+
+	@Override
+	public LedgerEntry fromRecord(RecordReader record) {
+		record.requireFields(6);
+
+		return new LedgerEntry(record.getLong(0), record.getLong(1), record.getSharedString(2), record.getLong(3),
+				LedgerEntry.Reason.valueOf(record.getSharedString(4)), record.getString(5));
+	}
+
+	@Override
+	public void write(LedgerEntry entry, DataOutput out) throws IOException {
+		out.writeLong(entry.getSeq());
+		out.writeLong(entry.getTime());
+		BinaryFields.writeString(out, entry.getUsername());
+		out.writeLong(entry.getAmount());
+		BinaryFields.writeString(out, entry.getReason().name());
+		BinaryFields.writeString(out, entry.getReference());
+	}
+
+	@Override
+	public LedgerEntry read(DataInput in) throws IOException {
+		return new LedgerEntry(in.readLong(), in.readLong(), BinaryFields.readString(in), in.readLong(),
+				LedgerEntry.Reason.valueOf(BinaryFields.readString(in)), BinaryFields.readString(in));
+	}
+}
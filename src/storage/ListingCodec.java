@@ -0,0 +1,71 @@
+package storage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import models.Listing;
+import models.PetId;
+
+import utils.RecordReader;
+
+// listings.txt: uniquePetId|sellerUsername|price|productId|petName|petLevel|petHealth|petAttack|description|petExp
+public class ListingCodec implements RecordCodec<Listing> {
+	@Override
+	public String getHeader() {
+		return "// FORMAT: uniquePetId|sellerUsername|price|productId|petName|petLevel|petHealth|petAttack|description|petExp";
+	}
+
+	@Override
+	public String[] toFields(Listing listing) {
+		return new String[] { listing.getUniqueId(), listing.getSellerUsername(), String.valueOf(listing.getPrice()),
+				listing.getProductId(), listing.getPetName(), String.valueOf(listing.getPetLevel()),
+				String.valueOf(listing.getPetHealth()), String.valueOf(listing.getPetAttack()),
+				listing.getDescription(), String.valueOf(listing.getPetExp()) };
+	}
+
+	@Override
+	public Listing fromFields(String[] parts) {
+		BinaryFields.requireFields(parts, 9);
+
+		// Parse EXP (Index 9), default to 0 if missing (backward compatibility)
+		int petExp = 0;
+		if (parts.length > 9) {
+			petExp = Integer.parseInt(parts[9]);
+		}
+
+		return new Listing(PetId.parse(parts[0]), parts[1], Double.parseDouble(parts[2]), parts[3], parts[4],
+				Integer.parseInt(parts[5]), Integer.parseInt(parts[6]), Integer.parseInt(parts[7]), parts[8], petExp);
+	}
+
+	@Override
+	public Listing fromRecord(RecordReader record) {
+		record.requireFields(9);
+
+		int petExp = record.getFieldCount() > 9 ? record.getInt(9) : 0;
+		return new Listing(PetId.read(record, 0), record.getSharedString(1), record.getDouble(2),
+				record.getSharedString(3), record.getSharedString(4), record.getInt(5), record.getInt(6),
+				record.getInt(7), record.getSharedString(8), petExp);
+	}
+
+	@Override
+	public void write(Listing listing, DataOutput out) throws IOException {
+		BinaryFields.writeId(out, listing.getPetId());
+		BinaryFields.writeString(out, listing.getSellerUsername());
+		out.writeDouble(listing.getPrice());
+		BinaryFields.writeString(out, listing.getProductId());
+		BinaryFields.writeString(out, listing.getPetName());
+		out.writeInt(listing.getPetLevel());
+		out.writeInt(listing.getPetHealth());
+		out.writeInt(listing.getPetAttack());
+		BinaryFields.writeString(out, listing.getDescription());
+		out.writeInt(listing.getPetExp());
+	}
+
+	@Override
+	public Listing read(DataInput in) throws IOException {
+		return new Listing(BinaryFields.readPetId(in), BinaryFields.readString(in), in.readDouble(),
+				BinaryFields.readString(in), BinaryFields.readString(in), in.readInt(), in.readInt(), in.readInt(),
+				BinaryFields.readString(in), in.readInt());
+	}
+}
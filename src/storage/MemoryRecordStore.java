@@ -0,0 +1,53 @@
+package storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Keeps the records in a list. Nothing touches the disk, which makes it handy for tests and benchmarks.
+public class MemoryRecordStore<T> implements RecordStore<T> {
+	private String name;
+	private List<T> records;
+
+	public MemoryRecordStore(String name) {
+		this.name = name;
+	}
+
+	@Override
+	public synchronized void load(Consumer<T> sink) {
+		if (records == null) {
+			return;
+		}
+
+		for (T record : new ArrayList<>(records)) {
+			sink.accept(record);
+		}
+	}
+
+	@Override
+	public synchronized void saveAll(Iterable<T> newRecords) {
+		List<T> copy = new ArrayList<>();
+		for (T record : newRecords) {
+			copy.add(record);
+		}
+		records = copy;
+	}
+
+	@Override
+	public synchronized void append(T record) {
+		if (records == null) {
+			records = new ArrayList<>();
+		}
+		records.add(record);
+	}
+
+	@Override
+	public synchronized boolean exists() {
+		return records != null;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+}
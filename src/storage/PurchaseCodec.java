@@ -0,0 +1,78 @@
+package storage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDateTime;
+
+import models.Purchase;
+
+import utils.RecordReader;
+
+// purchases.txt: username|productId|productName|pricePaid|timestamp|seq
+// seq numbers the purchases in the order they were committed (see PurchaseManager) and is missing in older rows.
+public class PurchaseCodec implements RecordCodec<Purchase> {
+	@Override
+	public String getHeader() {
+		return "// FORMAT: username|productId|productName|pricePaid|timestamp|seq";
+	}
+
+	@Override
+	public String[] toFields(Purchase purchase) {
+		return (purchase.toFileString() + "|" + purchase.getSeq()).split("\\|", -1);
+	}
+
+	@Override
+	public Purchase fromFields(String[] parts) {
+		BinaryFields.requireFields(parts, 5);
+
+		try {
+			Purchase purchase = new Purchase(parts[0], parts[1], parts[2], Double.parseDouble(parts[3]), parts[4]);
+			purchase.setSeq(parts.length > 5 ? Long.parseLong(parts[5]) : 0);
+			return purchase;
+		} catch (java.time.format.DateTimeParseException e) {
+			throw new IllegalArgumentException("Bad timestamp: " + parts[4], e);
+		}
+	}
+
+	@Override
+	public Purchase fromRecord(RecordReader record) {
+		record.requireFields(5);
+
+		try {
+			Purchase purchase = new Purchase(record.getSharedString(0), record.getSharedString(1),
+					record.getSharedString(2), record.getDouble(3), record.getString(4));
+			purchase.setSeq(record.getFieldCount() > 5 ? record.getLong(5) : 0);
+			return purchase;
+		} catch (java.time.format.DateTimeParseException e) {
+			throw new IllegalArgumentException("Bad timestamp: " + record.getString(4), e);
+		}
+	}
+
+	@Override
+	public void write(Purchase purchase, DataOutput out) throws IOException {
+		BinaryFields.writeString(out, purchase.getUsername());
+		BinaryFields.writeString(out, purchase.getProductId());
+		BinaryFields.writeString(out, purchase.getProductName());
+		out.writeDouble(purchase.getPricePaid());
+
+		// Stored as seconds + nanos instead of an ISO string
+		LocalDateTime timestamp = purchase.getTimestamp();
+		out.writeLong(timestamp.toEpochSecond(java.time.ZoneOffset.UTC));
+		out.writeInt(timestamp.getNano());
+		out.writeLong(purchase.getSeq());
+	}
+
+	@Override
+	public Purchase read(DataInput in) throws IOException {
+		String username = BinaryFields.readString(in);
+		String productId = BinaryFields.readString(in);
+		String productName = BinaryFields.readString(in);
+		double pricePaid = in.readDouble();
+		LocalDateTime timestamp = LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), java.time.ZoneOffset.UTC);
+
+		Purchase purchase = new Purchase(username, productId, productName, pricePaid, timestamp);
+		purchase.setSeq(BinaryFields.hasMore(in) ? in.readLong() : 0);
+		return purchase;
+	}
+}
@@ -0,0 +1,40 @@
+package storage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import utils.RecordReader;
+
+// Converts one model object to and from its stored form.
+// Every model has a text form (the pipe-delimited fields of our .txt files)
+// and a compact binary form (typed values, used by the .bin files).
+public interface RecordCodec<T> {
+	// The "// FORMAT: ..." comment written at the top of text files
+	String getHeader();
+
+	String[] toFields(T record);
+
+	// Throws IllegalArgumentException (e.g. NumberFormatException) for rows that cannot be used
+	T fromFields(String[] fields);
+
+	// Same as fromFields, but reads the fields in place, so only the Strings the record keeps are made.
+	// Used by the text stores for every line they load.
+	default T fromRecord(RecordReader record) {
+		return fromFields(record.toArray());
+	}
+
+	void write(T record, DataOutput out) throws IOException;
+
+	T read(DataInput in) throws IOException;
+
+	// The version of the binary form. Bump it when write() changes, and read the older
+	// versions in read(in, version): .bin files keep the version they were written with.
+	default int getBinaryVersion() {
+		return 1;
+	}
+
+	default T read(DataInput in, int version) throws IOException {
+		return read(in);
+	}
+}
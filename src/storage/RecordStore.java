@@ -0,0 +1,22 @@
+package storage;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+// A place where a list of records of one model is kept (a text file, a binary file, memory...).
+// The controllers only talk to this interface, so the backend can be swapped without touching them.
+public interface RecordStore<T> {
+	// Streams every stored record to the sink, in stored order
+	void load(Consumer<T> sink) throws IOException;
+
+	// Replaces everything stored with these records. Either all of them are saved or nothing changes.
+	void saveAll(Iterable<T> records) throws IOException;
+
+	// Adds one record to the end
+	void append(T record) throws IOException;
+
+	boolean exists();
+
+	// Human readable name for messages, e.g. "users.txt"
+	String getName();
+}
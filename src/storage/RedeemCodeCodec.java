@@ -0,0 +1,55 @@
+package storage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import models.RedeemCode;
+
+import utils.RecordReader;
+
+// codes.txt: codeString|goldValue|isUsed
+public class RedeemCodeCodec implements RecordCodec<RedeemCode> {
+	@Override
+	public String getHeader() {
+		return "// FORMAT: codeString|goldValue|isUsed";
+	}
+
+	@Override
+	public String[] toFields(RedeemCode code) {
+		return new String[] { code.getCodeString(), String.valueOf(code.getGoldValue()),
+				String.valueOf(code.isUsed()) };
+	}
+
+	@Override
+	public RedeemCode fromFields(String[] parts) {
+		BinaryFields.requireFields(parts, 3);
+
+		RedeemCode code = new RedeemCode(parts[0], Double.parseDouble(parts[1]));
+		code.setUsed(Boolean.parseBoolean(parts[2]));
+		return code;
+	}
+
+	@Override
+	public RedeemCode fromRecord(RecordReader record) {
+		record.requireFields(3);
+
+		RedeemCode code = new RedeemCode(record.getString(0), record.getDouble(1));
+		code.setUsed(record.getBoolean(2));
+		return code;
+	}
+
+	@Override
+	public void write(RedeemCode code, DataOutput out) throws IOException {
+		BinaryFields.writeString(out, code.getCodeString());
+		out.writeDouble(code.getGoldValue());
+		out.writeBoolean(code.isUsed());
+	}
+
+	@Override
+	public RedeemCode read(DataInput in) throws IOException {
+		RedeemCode code = new RedeemCode(BinaryFields.readString(in), in.readDouble());
+		code.setUsed(in.readBoolean());
+		return code;
+	}
+}
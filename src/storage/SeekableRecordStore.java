@@ -0,0 +1,18 @@
+package storage;
+
+import java.io.IOException;
+
+// A store that can read a single record back from where it sits in the file.
+// Lets a controller keep only record positions in memory and load the records when needed.
+// Positions are only valid until the next saveAll(), which rewrites the file.
+public interface SeekableRecordStore<T> extends RecordStore<T> {
+	interface PositionedSink<T> {
+		void accept(T record, long position, int length);
+	}
+
+	// Streams every stored record to the sink together with its position and length in the file
+	void scan(PositionedSink<T> sink) throws IOException;
+
+	// Reads the record at a position reported by scan(). Returns null if it is corrupt.
+	T readAt(long position, int length) throws IOException;
+}
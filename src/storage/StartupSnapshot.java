@@ -0,0 +1,274 @@
+package storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+// One binary image of every data set the controllers load at startup, written on a clean exit.
+// On the next start the whole file is read in one go, and as long as none of the data files
+// changed since, the stores hand out the records from the image instead of parsing their files.
+//
+// File layout:
+//   [int magic "HPS1"][int version]
+//   [int sourceCount] then per data file: [UTF name][boolean exists][long length][long lastModified][long crc32]
+//   [int sectionCount] then per data set: [UTF baseName][int recordCount][int byteLength][records written by the codec]
+//   [long crc32 of everything above]
+public class StartupSnapshot {
+	private static final int MAGIC = 0x48505331; // "HPS1"
+	// 2: users end with their goldSeq. 3: users' gold is a long (minor units).
+	// An image of another version is ignored (and rewritten on exit).
+	private static final int VERSION = 3;
+
+	// A data set's records, still encoded
+	private static class Section {
+		private int recordCount;
+		private byte[] data;
+		private int offset;
+		private int length;
+	}
+
+	// baseName -> section, in the order they were added
+	private Map<String, Section> sections = new LinkedHashMap<>();
+
+	// Encodes a data set into the snapshot, e.g. add("users", new UserCodec(), users)
+	public <T> void add(String baseName, RecordCodec<T> codec, Iterable<T> records) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		int count = 0;
+
+		for (T record : records) {
+			codec.write(record, out);
+			count++;
+		}
+		out.flush();
+
+		Section section = new Section();
+		section.recordCount = count;
+		section.data = bytes.toByteArray();
+		section.length = section.data.length;
+		sections.put(baseName, section);
+	}
+
+	public boolean has(String baseName) {
+		return sections.containsKey(baseName);
+	}
+
+	// Leaves a data set out, so its store reads the real file
+	public synchronized void discard(String baseName) {
+		sections.remove(baseName);
+	}
+
+	/**
+	 * Returns a store whose first load() comes from this snapshot; everything else goes to 'store'.
+	 * The section is handed out only once, so opening the same data set again reads the real file.
+	 */
+	public synchronized <T> RecordStore<T> wrap(String baseName, RecordCodec<T> codec, RecordStore<T> store) {
+		Section section = sections.remove(baseName);
+		return section == null ? store : new SnapshotRecordStore<>(section, codec, store);
+	}
+
+	// Writes the snapshot, recording the current state of the data files it stands in for.
+	// Written to a temp file first, so a crash never leaves half a snapshot behind.
+	public void save(String fileName, List<String> sourceFiles) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+
+		out.writeInt(sourceFiles.size());
+		for (String sourceFile : sourceFiles) {
+			File file = new File(sourceFile);
+			out.writeUTF(sourceFile);
+			out.writeBoolean(file.exists());
+			out.writeLong(file.exists() ? file.length() : 0);
+			out.writeLong(file.exists() ? file.lastModified() : 0);
+			out.writeLong(file.exists() ? checksum(file) : 0);
+		}
+
+		out.writeInt(sections.size());
+		for (Map.Entry<String, Section> entry : sections.entrySet()) {
+			Section section = entry.getValue();
+			out.writeUTF(entry.getKey());
+			out.writeInt(section.recordCount);
+			out.writeInt(section.length);
+			out.write(section.data, section.offset, section.length);
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(bytes.toByteArray());
+		out.writeLong(crc.getValue());
+		out.flush();
+
+		File file = new File(fileName);
+		File tempFile = new File(fileName + ".tmp");
+		try (FileOutputStream fileOut = new FileOutputStream(tempFile)) {
+			bytes.writeTo(fileOut);
+		}
+		Storage.replaceFile(tempFile, file);
+	}
+
+	/**
+	 * Reads the snapshot with a single read. Returns null if there is none, it is damaged,
+	 * or any of its data files changed since it was written (then the files must be parsed).
+	 */
+	public static StartupSnapshot load(String fileName) {
+		File file = new File(fileName);
+		if (!file.exists()) {
+			return null;
+		}
+
+		try {
+			byte[] data = Files.readAllBytes(file.toPath());
+			if (data.length < 16) {
+				System.err.println("[Warning]: " + file.getName() + " is damaged, loading from the data files.");
+				return null;
+			}
+
+			CRC32 crc = new CRC32();
+			crc.update(data, 0, data.length - 8);
+			if (ByteBuffer.wrap(data).getLong(data.length - 8) != crc.getValue()) {
+				System.err.println("[Warning]: " + file.getName() + " is damaged, loading from the data files.");
+				return null;
+			}
+
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, data.length - 8));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				return null;
+			}
+
+			int sourceCount = in.readInt();
+			for (int i = 0; i < sourceCount; i++) {
+				String sourceFile = in.readUTF();
+				boolean existed = in.readBoolean();
+				long length = in.readLong();
+				long lastModified = in.readLong();
+				long checksum = in.readLong();
+
+				if (!isUnchanged(new File(sourceFile), existed, length, lastModified, checksum)) {
+					System.out.println("[System]: " + sourceFile + " changed since the last exit, loading from the data files.");
+					return null;
+				}
+			}
+
+			StartupSnapshot snapshot = new StartupSnapshot();
+			int sectionCount = in.readInt();
+
+			for (int i = 0; i < sectionCount; i++) {
+				String baseName = in.readUTF();
+				Section section = new Section();
+				section.recordCount = in.readInt();
+				section.length = in.readInt();
+
+				// The section keeps pointing into the one buffer we read, nothing is copied
+				section.data = data;
+				section.offset = data.length - 8 - in.available();
+				in.skipBytes(section.length);
+				snapshot.sections.put(baseName, section);
+			}
+
+			return snapshot;
+		} catch (IOException e) {
+			System.err.println("[Warning]: Could not read " + file.getName() + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	// Size and modification time decide in the common case. If only the time differs
+	// (e.g. the file was rewritten with the same contents) the checksum settles it.
+	private static boolean isUnchanged(File file, boolean existed, long length, long lastModified, long checksum)
+			throws IOException {
+		if (file.exists() != existed) {
+			return false;
+		}
+		if (!existed) {
+			return true;
+		}
+		if (file.length() != length) {
+			return false;
+		}
+		return file.lastModified() == lastModified || checksum(file) == checksum;
+	}
+
+	private static long checksum(File file) throws IOException {
+		CRC32 crc = new CRC32();
+		byte[] buffer = new byte[1 << 16];
+
+		try (InputStream in = new FileInputStream(file)) {
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				crc.update(buffer, 0, read);
+			}
+		}
+		return crc.getValue();
+	}
+
+	// Reads its first load() from the snapshot section, then behaves exactly like the real store
+	private static class SnapshotRecordStore<T> implements RecordStore<T> {
+		private Section section;
+		private RecordCodec<T> codec;
+		private RecordStore<T> store;
+
+		private SnapshotRecordStore(Section section, RecordCodec<T> codec, RecordStore<T> store) {
+			this.section = section;
+			this.codec = codec;
+			this.store = store;
+		}
+
+		@Override
+		public void load(Consumer<T> sink) throws IOException {
+			Section loaded;
+			synchronized (this) {
+				loaded = section;
+				section = null;
+			}
+
+			if (loaded == null) {
+				store.load(sink);
+				return;
+			}
+
+			// The snapshot's CRC was checked on load, so the records are exactly what was written
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(loaded.data, loaded.offset, loaded.length));
+			for (int i = 0; i < loaded.recordCount; i++) {
+				T record = codec.read(in);
+				if (record != null) {
+					sink.accept(record);
+				}
+			}
+		}
+
+		@Override
+		public void saveAll(Iterable<T> records) throws IOException {
+			store.saveAll(records);
+		}
+
+		@Override
+		public void append(T record) throws IOException {
+			store.append(record);
+		}
+
+		@Override
+		public synchronized boolean exists() {
+			return section != null || store.exists();
+		}
+
+		@Override
+		public String getName() {
+			return store.getName();
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+// Hands out the RecordStore for each data set, in the format picked for this run.
+// The format comes from the "hangpies.storage" system property (text, binary or memory)
+// and defaults to text, e.g.  java -Dhangpies.storage=binary main.Main
+public class Storage {
+	public enum Format {
+		TEXT, BINARY, MEMORY
+	}
+
+	private static Format format = Format.valueOf(System.getProperty("hangpies.storage", "text").toUpperCase());
+
+	// Memory stores are shared by name, so a manager created twice sees the same data
+	private static Map<String, MemoryRecordStore<?>> memoryStores = new HashMap<>();
+
+	// Set while the controllers start up from a snapshot, see useSnapshot()
+	private static StartupSnapshot snapshot;
+
+	public static Format getFormat() {
+		return format;
+	}
+
+	public static void setFormat(Format newFormat) {
+		format = newFormat;
+	}
+
+	// While a snapshot is in use, the next store opened for each of its data sets loads from
+	// the snapshot instead of the file. Pass null once startup is done.
+	public static synchronized void useSnapshot(StartupSnapshot startupSnapshot) {
+		snapshot = startupSnapshot;
+	}
+
+	// Opens the store for a data set, e.g. open("users", new UserCodec()) -> users.txt or users.bin
+	public static <T> RecordStore<T> open(String baseName, RecordCodec<T> codec) {
+		return open(baseName, codec, format);
+	}
+
+	@SuppressWarnings("unchecked")
+	public static synchronized <T> RecordStore<T> open(String baseName, RecordCodec<T> codec, Format format) {
+		RecordStore<T> store;
+
+		switch (format) {
+		case BINARY:
+			// Falls back to the old text file until the first save writes the .bin file
+			store = new BinaryRecordStore<>(baseName + ".bin", codec, new TextRecordStore<>(baseName + ".txt", codec));
+			break;
+		case MEMORY:
+			return (RecordStore<T>) memoryStores.computeIfAbsent(baseName, MemoryRecordStore::new);
+		default:
+			store = new TextRecordStore<>(baseName + ".txt", codec);
+		}
+
+		return snapshot == null ? store : snapshot.wrap(baseName, codec, store);
+	}
+
+	// Moves a finished temp file over the real one, atomically where the file system allows it
+	public static void replaceFile(File source, File target) throws IOException {
+		try {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+}
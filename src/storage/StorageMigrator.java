@@ -0,0 +1,48 @@
+package storage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Copies every data set from one storage format to the other. Run from the project folder:
+//   java -cp bin storage.StorageMigrator binary   (the .txt files -> .bin files)
+//   java -cp bin storage.StorageMigrator text     (the .bin files -> .txt files)
+// The source files are left alone. purchases.txt and gold_ledger.txt are not migrated, they are
+// always kept as text, and the codes live in codes.dat whatever the format.
+public class StorageMigrator {
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("Usage: StorageMigrator <binary|text>");
+			return;
+		}
+
+		Storage.Format target = Storage.Format.valueOf(args[0].toUpperCase());
+		Storage.Format source = target == Storage.Format.BINARY ? Storage.Format.TEXT : Storage.Format.BINARY;
+
+		migrate("users", new UserCodec(), source, target);
+		migrate("inventories", new InventoryRowCodec(), source, target);
+		migrate("products", new HangpieCodec(), source, target);
+		migrate("listings", new ListingCodec(), source, target);
+		migrate("saves", new BattleStateCodec(), source, target);
+		migrate("buy_orders", new BuyOrderCodec(), source, target);
+	}
+
+	private static <T> void migrate(String baseName, RecordCodec<T> codec, Storage.Format source,
+			Storage.Format target) throws IOException {
+		RecordStore<T> from = Storage.open(baseName, codec, source);
+		RecordStore<T> to = Storage.open(baseName, codec, target);
+
+		if (!from.exists()) {
+			System.out.println("[System]: " + from.getName() + " not found, skipped.");
+			return;
+		}
+
+		long start = System.nanoTime();
+		List<T> records = new ArrayList<>();
+		from.load(records::add);
+		to.saveAll(records);
+
+		System.out.println("[System]: " + from.getName() + " -> " + to.getName() + ": " + records.size()
+				+ " records in " + (System.nanoTime() - start) / 1_000_000 + " ms.");
+	}
+}
@@ -0,0 +1,244 @@
+package storage;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import utils.RecordReader;
+
+// The original pipe-delimited .txt format: one record per line, "//" lines are comments
+public class TextRecordStore<T> implements SeekableRecordStore<T> {
+	private File file;
+	private RecordCodec<T> codec;
+
+	// For the single lines of decode() and readAt(), which sessions can call at the same time
+	private final ThreadLocal<RecordReader> readers = ThreadLocal.withInitial(RecordReader::new);
+
+	public TextRecordStore(String fileName, RecordCodec<T> codec) {
+		this.file = new File(fileName);
+		this.codec = codec;
+	}
+
+	// Reads the file in big chunks and parses every line in place, see RecordReader
+	@Override
+	public void load(Consumer<T> sink) throws IOException {
+		try (Reader reader = new FileReader(file)) {
+			RecordReader record = new RecordReader();
+			char[] buffer = new char[1 << 16];
+			int length = 0;		// chars in the buffer
+			int scanned = 0;	// chars already checked for a line break
+			int lineStart = 0;
+
+			while (true) {
+				if (length == buffer.length) {
+					if (lineStart > 0) {
+						// Move the unfinished line to the front
+						System.arraycopy(buffer, lineStart, buffer, 0, length - lineStart);
+						length -= lineStart;
+						scanned -= lineStart;
+						lineStart = 0;
+					} else {
+						// One line fills the whole buffer
+						buffer = Arrays.copyOf(buffer, buffer.length * 2);
+					}
+				}
+
+				int read = reader.read(buffer, length, buffer.length - length);
+				if (read < 0) {
+					break;
+				}
+				length += read;
+
+				for (; scanned < length; scanned++) {
+					if (buffer[scanned] == '\n') {
+						loadLine(record, buffer, lineStart, scanned - lineStart, sink);
+						lineStart = scanned + 1;
+					}
+				}
+			}
+
+			// Last line without a line break
+			loadLine(record, buffer, lineStart, length - lineStart, sink);
+		}
+	}
+
+	private void loadLine(RecordReader record, char[] line, int offset, int length, Consumer<T> sink) {
+		// Drop the '\r' of Windows line breaks
+		if (length > 0 && line[offset + length - 1] == '\r') {
+			length--;
+		}
+
+		// Skip "//" comments and blank lines
+		if (length >= 2 && line[offset] == '/' && line[offset + 1] == '/') {
+			return;
+		}
+		boolean blank = true;
+		for (int i = offset; i < offset + length && blank; i++) {
+			blank = line[i] <= ' ';
+		}
+		if (blank) {
+			return;
+		}
+
+		T decoded = decode(record.reset(line, offset, length));
+		if (decoded != null) {
+			sink.accept(decoded);
+		}
+	}
+
+	// Same as load(), but also reports each line's byte position and length (without the line break)
+	@Override
+	public void scan(PositionedSink<T> sink) throws IOException {
+		try (InputStream in = new FileInputStream(file)) {
+			RecordReader record = new RecordReader();
+			byte[] buffer = new byte[1 << 16];
+			byte[] line = new byte[256];
+			int length = 0;
+			long lineStart = 0;
+			long bufferStart = 0;
+			int read;
+
+			while ((read = in.read(buffer)) > 0) {
+				for (int i = 0; i < read; i++) {
+					if (buffer[i] != '\n') {
+						if (length == line.length) {
+							line = Arrays.copyOf(line, length * 2);
+						}
+						line[length++] = buffer[i];
+						continue;
+					}
+
+					scanLine(record, line, length, lineStart, sink);
+					length = 0;
+					lineStart = bufferStart + i + 1;
+				}
+				bufferStart += read;
+			}
+
+			// Last line without a line break
+			scanLine(record, line, length, lineStart, sink);
+		}
+	}
+
+	private void scanLine(RecordReader record, byte[] line, int length, long position, PositionedSink<T> sink) {
+		// Drop the '\r' of Windows line breaks
+		int lineLength = length > 0 && line[length - 1] == '\r' ? length - 1 : length;
+
+		if (lineLength >= 2 && line[0] == '/' && line[1] == '/') {
+			return;
+		}
+		boolean blank = true;
+		for (int i = 0; i < lineLength && blank; i++) {
+			blank = line[i] >= 0 && line[i] <= ' ';
+		}
+		if (blank) {
+			return;
+		}
+
+		// Same charset FileReader uses in load()
+		T decoded = decode(record.reset(line, 0, lineLength, Charset.defaultCharset()));
+		if (decoded != null) {
+			sink.accept(decoded, position, lineLength);
+		}
+	}
+
+	@Override
+	public T readAt(long position, int length) throws IOException {
+		byte[] line = new byte[length];
+
+		try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+			in.seek(position);
+			in.readFully(line);
+		}
+
+		// Same charset FileReader uses in load()
+		return decode(readers.get().reset(line, 0, length, Charset.defaultCharset()));
+	}
+
+	// Parses one line, or returns null (with a warning) if it is corrupt
+	public T decode(String line) {
+		return decode(readers.get().reset(line));
+	}
+
+	private T decode(RecordReader record) {
+		try {
+			return codec.fromRecord(record);
+		} catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+			// Use System.err.println for unrecoverable data corruption warning during loading
+			System.err.println("[Warning]: Bad data in " + file.getName() + " for line: " + record);
+			return null;
+		}
+	}
+
+	public String encode(T record) {
+		return String.join("|", codec.toFields(record));
+	}
+
+	@Override
+	public void saveAll(Iterable<T> records) throws IOException {
+		File tempFile = new File(file.getPath() + ".tmp");
+
+		try (BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile))) {
+			writer.write(codec.getHeader());
+			writer.newLine();
+
+			for (T record : records) {
+				writer.write(encode(record));
+				writer.newLine();
+			}
+		}
+
+		Storage.replaceFile(tempFile, file);
+	}
+
+	@Override
+	public void append(T record) throws IOException {
+		boolean isNew = !file.exists();
+
+		try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, true))) {
+			if (isNew) {
+				writer.write(codec.getHeader());
+				writer.newLine();
+			}
+
+			writer.write(encode(record));
+			writer.newLine();
+		}
+	}
+
+	// Adds records to the end with one write, e.g. a batch of ledger entries
+	public void appendAll(Iterable<T> records) throws IOException {
+		boolean isNew = !file.exists();
+
+		try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, true))) {
+			if (isNew) {
+				writer.write(codec.getHeader());
+				writer.newLine();
+			}
+
+			for (T record : records) {
+				writer.write(encode(record));
+				writer.newLine();
+			}
+		}
+	}
+
+	@Override
+	public boolean exists() {
+		return file.exists();
+	}
+
+	@Override
+	public String getName() {
+		return file.getName();
+	}
+}
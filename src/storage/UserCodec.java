@@ -0,0 +1,101 @@
+package storage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import models.Gold;
+import models.User;
+
+import utils.RecordReader;
+
+// users.txt: username|password|isAdmin|firstName|lastName|contactNum|goldBalance|worldLvl|progressLvl|goldSeq
+// goldBalance is written in Gold (e.g. 12.5) like before, goldSeq is the last ledger entry it
+// includes (see GoldLedger) and is missing in older files.
+public class UserCodec implements RecordCodec<User> {
+	@Override
+	public String getHeader() {
+		return "// FORMAT: username|password|isAdmin|firstName|lastName|contactNum|goldBalance|worldLvl|progressLvl|goldSeq";
+	}
+
+	@Override
+	public String[] toFields(User user) {
+		return new String[] { user.getUsername(), user.getPassword(), String.valueOf(user.isAdmin()),
+				user.getFirstName(), user.getLastName(), user.getContactNum(), String.valueOf(user.getGoldBalance()),
+				String.valueOf(user.getWorldLevel()), String.valueOf(user.getProgressLevel()),
+				String.valueOf(user.getGoldSeq()) };
+	}
+
+	@Override
+	public User fromFields(String[] parts) {
+		BinaryFields.requireFields(parts, 9);
+
+		User user = new User(parts[0], parts[1], Boolean.parseBoolean(parts[2]), parts[3], parts[4], parts[5]);
+
+		try {
+			user.setGold(Gold.toMinor(Double.parseDouble(parts[6])), parts.length > 9 ? Long.parseLong(parts[9]) : 0);
+			user.setWorldLevel(Integer.parseInt(parts[7]));
+			user.setProgressLevel(Integer.parseInt(parts[8]));
+		} catch (NumberFormatException e) {
+			// Keep the account, only its numbers are lost
+			System.err.println("[Warning]: Bad data for user " + parts[0]);
+		}
+
+		return user;
+	}
+
+	@Override
+	public User fromRecord(RecordReader record) {
+		record.requireFields(9);
+
+		User user = new User(record.getString(0), record.getString(1), record.getBoolean(2), record.getString(3),
+				record.getString(4), record.getString(5));
+
+		try {
+			user.setGold(Gold.toMinor(record.getDouble(6)), record.getFieldCount() > 9 ? record.getLong(9) : 0);
+			user.setWorldLevel(record.getInt(7));
+			user.setProgressLevel(record.getInt(8));
+		} catch (NumberFormatException e) {
+			// Keep the account, only its numbers are lost
+			System.err.println("[Warning]: Bad data for user " + user.getUsername());
+		}
+
+		return user;
+	}
+
+	// 2: gold is a long in minor units (version 1 had a double in Gold)
+	@Override
+	public int getBinaryVersion() {
+		return 2;
+	}
+
+	@Override
+	public void write(User user, DataOutput out) throws IOException {
+		BinaryFields.writeString(out, user.getUsername());
+		BinaryFields.writeString(out, user.getPassword());
+		out.writeBoolean(user.isAdmin());
+		BinaryFields.writeString(out, user.getFirstName());
+		BinaryFields.writeString(out, user.getLastName());
+		BinaryFields.writeString(out, user.getContactNum());
+		out.writeLong(user.getGold());
+		out.writeInt(user.getWorldLevel());
+		out.writeInt(user.getProgressLevel());
+		out.writeLong(user.getGoldSeq());
+	}
+
+	@Override
+	public User read(DataInput in) throws IOException {
+		return read(in, getBinaryVersion());
+	}
+
+	@Override
+	public User read(DataInput in, int version) throws IOException {
+		User user = new User(BinaryFields.readString(in), BinaryFields.readString(in), in.readBoolean(),
+				BinaryFields.readString(in), BinaryFields.readString(in), BinaryFields.readString(in));
+		long gold = version == 1 ? Gold.toMinor(in.readDouble()) : in.readLong();
+		user.setWorldLevel(in.readInt());
+		user.setProgressLevel(in.readInt());
+		user.setGold(gold, BinaryFields.hasMore(in) ? in.readLong() : 0);
+		return user;
+	}
+}
@@ -0,0 +1,69 @@
+package utils;
+
+// A Bloom filter for strings: a compact bit set that answers "definitely not added"
+// or "maybe added". Used in front of a real set/map so most lookups of new keys
+// never have to touch it. Not thread-safe, keep it on one thread.
+public class BloomFilter {
+	private long[] bits;
+	private long bitCount;
+	private int hashCount;
+
+	// Sized for 'expectedItems' at the given false positive rate (e.g. 0.01 for 1%)
+	public BloomFilter(long expectedItems, double falsePositiveRate) {
+		long n = Math.max(1, expectedItems);
+		double ln2 = Math.log(2);
+
+		long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (ln2 * ln2));
+		this.bitCount = Math.max(64, m);
+		this.bits = new long[(int) ((bitCount + 63) / 64)];
+		this.hashCount = Math.max(1, (int) Math.round((double) bitCount / n * ln2));
+	}
+
+	public void add(String key) {
+		long hash = hash(key);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+
+		for (int i = 0; i < hashCount; i++) {
+			long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+			bits[(int) (bit >>> 6)] |= 1L << bit;
+		}
+	}
+
+	// False means the key was never added. True means it probably was.
+	public boolean mightContain(String key) {
+		long hash = hash(key);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+
+		for (int i = 0; i < hashCount; i++) {
+			long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+			if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public long getBitCount() {
+		return bitCount;
+	}
+
+	public int getHashCount() {
+		return hashCount;
+	}
+
+	// 64-bit FNV-1a, with a final mix so both halves are usable as separate hashes
+	private static long hash(String key) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < key.length(); i++) {
+			hash ^= key.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
@@ -0,0 +1,268 @@
+package utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+// A persistent side index over an append-only text file.
+// It maps a key (e.g. a username) to the byte offset and length of every line that belongs to it,
+// so a lookup can seek straight to those lines instead of scanning the whole file.
+//
+// The index file is append-only too, one "offset|length|key" line per indexed line.
+// When it is behind the data file (or missing) the missing tail is scanned and indexed on load.
+//
+// Lines are read back through a read-only memory map of the data file, which is remapped
+// whenever the file has grown past the mapped part.
+public class OffsetIndex {
+	private File dataFile;
+	private File indexFile;
+	private Function<String, String> keyExtractor;
+
+	private Map<String, Positions> positionsByKey = new HashMap<>();
+	private long coveredLength;	// Everything before this byte of the data file is indexed
+	private BufferedWriter indexWriter;
+
+	// Read side
+	private FileChannel channel;
+	private MappedByteBuffer mapped;
+	private long mappedLength;
+
+	// Growable offset/length arrays for one key, oldest first
+	private static class Positions {
+		private long[] offsets = new long[4];
+		private int[] lengths = new int[4];
+		private int size;
+
+		private void add(long offset, int length) {
+			if (size == offsets.length) {
+				offsets = Arrays.copyOf(offsets, size * 2);
+				lengths = Arrays.copyOf(lengths, size * 2);
+			}
+			offsets[size] = offset;
+			lengths[size] = length;
+			size++;
+		}
+	}
+
+	// keyExtractor returns the key of a data line, or null if the line should not be indexed
+	public OffsetIndex(String dataFile, String indexFile, Function<String, String> keyExtractor) {
+		this.dataFile = new File(dataFile);
+		this.indexFile = new File(indexFile);
+		this.keyExtractor = keyExtractor;
+		load();
+	}
+
+	private void load() {
+		if (indexFile.exists()) {
+			try (BufferedReader reader = new BufferedReader(new FileReader(indexFile, StandardCharsets.UTF_8))) {
+				RecordReader record = new RecordReader();
+				String line;
+				while ((line = reader.readLine()) != null) {
+					record.reset(line);
+					if (record.getFieldCount() != 3) {
+						continue;
+					}
+
+					try {
+						long offset = record.getLong(0);
+						int length = record.getInt(1);
+						positionsByKey.computeIfAbsent(record.getSharedString(2), key -> new Positions()).add(offset, length);
+						coveredLength = Math.max(coveredLength, offset + length);
+					} catch (NumberFormatException e) {
+						// A torn last line from a crash, the catch-up scan below re-indexes it
+					}
+				}
+			} catch (IOException e) {
+				System.err.println("Error loading index " + indexFile.getName() + ": " + e.getMessage());
+			}
+		}
+
+		// The data file was replaced or truncated: the index is useless, start over
+		if (coveredLength > dataFile.length()) {
+			System.err.println("[Warning]: " + indexFile.getName() + " is out of date, rebuilding it.");
+			positionsByKey.clear();
+			coveredLength = 0;
+			indexFile.delete();
+		}
+
+		catchUp();
+	}
+
+	// Indexes every complete line of the data file past coveredLength
+	private void catchUp() {
+		if (!dataFile.exists() || dataFile.length() <= coveredLength) {
+			return;
+		}
+
+		try (InputStream in = new BufferedInputStream(new FileInputStream(dataFile))) {
+			in.skipNBytes(coveredLength);
+
+			ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+			long lineStart = coveredLength;
+			long position = coveredLength;
+			int b;
+
+			while ((b = in.read()) != -1) {
+				position++;
+
+				if (b != '\n') {
+					line.write(b);
+					continue;
+				}
+
+				byte[] bytes = line.toByteArray();
+				int length = bytes.length;
+				if (length > 0 && bytes[length - 1] == '\r') {
+					length--;
+				}
+
+				String key = keyExtractor.apply(new String(bytes, 0, length, StandardCharsets.UTF_8));
+				if (key != null) {
+					add(key, lineStart, length);
+				}
+
+				line.reset();
+				lineStart = position;
+				coveredLength = position;
+			}
+
+			flush();
+		} catch (IOException e) {
+			System.err.println("Error indexing " + dataFile.getName() + ": " + e.getMessage());
+		}
+	}
+
+	// Records a line that was just appended to the data file
+	public synchronized void add(String key, long offset, int length) {
+		positionsByKey.computeIfAbsent(key, k -> new Positions()).add(offset, length);
+		coveredLength = Math.max(coveredLength, offset + length);
+
+		try {
+			if (indexWriter == null) {
+				indexWriter = new BufferedWriter(new FileWriter(indexFile, StandardCharsets.UTF_8, true));
+			}
+
+			indexWriter.write(offset + "|" + length + "|" + key);
+			indexWriter.newLine();
+		} catch (IOException e) {
+			System.err.println("Error writing index " + indexFile.getName() + ": " + e.getMessage());
+		}
+	}
+
+	public synchronized void flush() {
+		if (indexWriter != null) {
+			try {
+				indexWriter.flush();
+			} catch (IOException e) {
+				System.err.println("Error writing index " + indexFile.getName() + ": " + e.getMessage());
+			}
+		}
+	}
+
+	public synchronized void close() {
+		mapped = null;
+		mappedLength = 0;
+
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				System.err.println("Error closing " + dataFile.getName() + ": " + e.getMessage());
+			}
+			channel = null;
+		}
+
+		if (indexWriter != null) {
+			try {
+				indexWriter.close();
+			} catch (IOException e) {
+				System.err.println("Error closing index " + indexFile.getName() + ": " + e.getMessage());
+			}
+			indexWriter = null;
+		}
+	}
+
+	public synchronized int count(String key) {
+		Positions positions = positionsByKey.get(key);
+		return positions == null ? 0 : positions.size;
+	}
+
+	// Returns up to 'limit' lines for the key, newest first, after skipping the 'skip' newest ones
+	public synchronized List<String> getNewest(String key, int skip, int limit) {
+		List<String> lines = new ArrayList<>();
+		Positions positions = positionsByKey.get(key);
+
+		if (positions == null || skip >= positions.size || limit <= 0) {
+			return lines;
+		}
+
+		try {
+			for (int i = positions.size - 1 - skip; i >= 0 && lines.size() < limit; i--) {
+				byte[] bytes = read(positions.offsets[i], positions.lengths[i]);
+				lines.add(new String(bytes, StandardCharsets.UTF_8));
+			}
+		} catch (IOException e) {
+			System.err.println("Error reading " + dataFile.getName() + ": " + e.getMessage());
+		}
+
+		return lines;
+	}
+
+	// Reads one line's bytes from the memory map
+	private byte[] read(long offset, int length) throws IOException {
+		long end = offset + length;
+
+		if (end > mappedLength && mappedLength < Integer.MAX_VALUE) {
+			remap();
+		}
+
+		byte[] bytes = new byte[length];
+
+		if (end <= mappedLength) {
+			mapped.get((int) offset, bytes);
+		} else {
+			// Past what a single map can hold (files over 2 GB): plain positional read
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, offset + buffer.position()) < 0) {
+					throw new IOException("Unexpected end of " + dataFile.getName());
+				}
+			}
+		}
+
+		return bytes;
+	}
+
+	private void remap() throws IOException {
+		if (channel == null) {
+			channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ);
+		}
+
+		long size = Math.min(channel.size(), Integer.MAX_VALUE);
+		mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		mappedLength = size;
+	}
+
+	// Length of the data file covered by the index
+	public synchronized long getCoveredLength() {
+		return coveredLength;
+	}
+}
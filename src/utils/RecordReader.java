@@ -0,0 +1,336 @@
+package utils;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+// Reads the fields of one delimited line (the '|' rows of our data files) in place.
+// reset() only records where each field starts and ends, nothing is copied. Numbers and
+// booleans are parsed straight from the line, and a field only becomes a String when asked.
+// One reader is reused for every line of a file, so reading a file allocates nothing but the
+// Strings the caller keeps. Not thread safe: use one per thread (or per load).
+//
+// The line can be a char[] (read through a Reader), a byte[] (read straight from the file, the
+// delimiter and digits are ASCII in every charset we use) or a String.
+public class RecordReader {
+	// Recently made Strings, so values that repeat from row to row (product IDs, pet names, the
+	// owner of a run of inventory rows) are shared instead of made again for every row
+	private static final int SHARED_SLOTS = 1024;
+
+	// 10^0 .. 10^22 are exact doubles, so digits / 10^n is correctly rounded
+	private static final double[] POWERS_OF_TEN = new double[23];
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	private final char delimiter;
+
+	// Exactly one of these holds the current line
+	private char[] chars;
+	private byte[] bytes;
+	private Charset charset;
+
+	private int[] starts = new int[16];
+	private int[] ends = new int[16];
+	private int fieldCount;
+	private int lineStart;
+	private int lineEnd;
+
+	private char[] lineBuffer;
+	private String[] shared;
+
+	public RecordReader() {
+		this('|');
+	}
+
+	public RecordReader(char delimiter) {
+		this.delimiter = delimiter;
+	}
+
+	// Copies the line into a buffer that is reused, so this allocates nothing either
+	public RecordReader reset(String line) {
+		return reset(line, 0, line.length());
+	}
+
+	// Part of a String, e.g. the fields after a journal record's type
+	public RecordReader reset(String line, int offset, int length) {
+		if (lineBuffer == null || lineBuffer.length < length) {
+			lineBuffer = new char[Math.max(128, length * 2)];
+		}
+		line.getChars(offset, offset + length, lineBuffer, 0);
+		return reset(lineBuffer, 0, length);
+	}
+
+	public RecordReader reset(char[] line, int offset, int length) {
+		this.chars = line;
+		this.bytes = null;
+		split(offset, offset + length);
+		return this;
+	}
+
+	public RecordReader reset(byte[] line, int offset, int length, Charset charset) {
+		this.chars = null;
+		this.bytes = line;
+		this.charset = charset;
+		split(offset, offset + length);
+		return this;
+	}
+
+	private void split(int start, int end) {
+		lineStart = start;
+		lineEnd = end;
+		fieldCount = 0;
+
+		int fieldStart = start;
+		if (chars != null) {
+			for (int i = start; i < end; i++) {
+				if (chars[i] == delimiter) {
+					addField(fieldStart, i);
+					fieldStart = i + 1;
+				}
+			}
+		} else {
+			for (int i = start; i < end; i++) {
+				if (bytes[i] == delimiter) {
+					addField(fieldStart, i);
+					fieldStart = i + 1;
+				}
+			}
+		}
+		// Like split("\\|", -1): the part after the last delimiter is a field, even if empty
+		addField(fieldStart, end);
+	}
+
+	private void addField(int start, int end) {
+		if (fieldCount == starts.length) {
+			starts = Arrays.copyOf(starts, fieldCount * 2);
+			ends = Arrays.copyOf(ends, fieldCount * 2);
+		}
+		starts[fieldCount] = start;
+		ends[fieldCount] = end;
+		fieldCount++;
+	}
+
+	private int charAt(int index) {
+		return chars != null ? chars[index] : bytes[index] & 0xFF;
+	}
+
+	private void check(int field) {
+		if (field >= fieldCount) {
+			throw new IndexOutOfBoundsException("Field " + field + " of a line with " + fieldCount + " fields");
+		}
+	}
+
+	public int getFieldCount() {
+		return fieldCount;
+	}
+
+	// Throws IllegalArgumentException if the line has fewer fields, like BinaryFields.requireFields
+	public void requireFields(int count) {
+		if (fieldCount < count) {
+			throw new IllegalArgumentException("Expected " + count + " fields but found " + fieldCount);
+		}
+	}
+
+	public int getLength(int field) {
+		check(field);
+		return ends[field] - starts[field];
+	}
+
+	public boolean isEmpty(int field) {
+		return getLength(field) == 0;
+	}
+
+	// One character of a field, for parsers of their own (e.g. PetId). A byte line gives the raw
+	// byte, so anything outside ASCII comes back as a char above 127.
+	public char getChar(int field, int index) {
+		check(field);
+		if (index < 0 || index >= ends[field] - starts[field]) {
+			throw new IndexOutOfBoundsException("Index " + index + " of a field with " + getLength(field) + " chars");
+		}
+		return (char) charAt(starts[field] + index);
+	}
+
+	// The field as a new String
+	public String getString(int field) {
+		check(field);
+		int length = ends[field] - starts[field];
+		if (chars != null) {
+			return new String(chars, starts[field], length);
+		}
+		return new String(bytes, starts[field], length, charset);
+	}
+
+	// The field as a String, reusing the one made last time the same text came by. For fields
+	// with few different values, so rows that repeat them share one String.
+	public String getSharedString(int field) {
+		check(field);
+		int hash = 0;
+		for (int i = starts[field]; i < ends[field]; i++) {
+			hash = 31 * hash + charAt(i);
+		}
+		if (shared == null) {
+			shared = new String[SHARED_SLOTS];
+		}
+
+		int slot = (hash ^ (hash >>> 16)) & (SHARED_SLOTS - 1);
+		String candidate = shared[slot];
+		if (candidate != null && fieldEquals(field, candidate)) {
+			return candidate;
+		}
+
+		String value = getString(field);
+		shared[slot] = value;
+		return value;
+	}
+
+	// Compares the field with a String without making one from the field
+	public boolean fieldEquals(int field, String value) {
+		check(field);
+		int start = starts[field];
+		int length = ends[field] - start;
+
+		if (chars == null) {
+			for (int i = 0; i < length; i++) {
+				if (bytes[start + i] < 0) {
+					// Not ASCII, let the charset decide
+					return getString(field).equals(value);
+				}
+			}
+		}
+
+		if (length != value.length()) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (charAt(start + i) != value.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Same results and exceptions as Integer.parseInt(getString(field))
+	public int getInt(int field) {
+		check(field);
+		int start = starts[field];
+		int end = ends[field];
+		boolean negative = start < end && charAt(start) == '-';
+		if (start < end && (negative || charAt(start) == '+')) {
+			start++;
+		}
+
+		// More than 9 digits could overflow, leave those to the JDK
+		if (start == end || end - start > 9) {
+			return Integer.parseInt(getString(field));
+		}
+
+		int value = 0;
+		for (int i = start; i < end; i++) {
+			int digit = charAt(i) - '0';
+			if (digit < 0 || digit > 9) {
+				// Not a plain ASCII number: the JDK throws (or reads other digit sets)
+				return Integer.parseInt(getString(field));
+			}
+			value = value * 10 + digit;
+		}
+		return negative ? -value : value;
+	}
+
+	// Same results and exceptions as Long.parseLong(getString(field))
+	public long getLong(int field) {
+		check(field);
+		int start = starts[field];
+		int end = ends[field];
+		boolean negative = start < end && charAt(start) == '-';
+		if (start < end && (negative || charAt(start) == '+')) {
+			start++;
+		}
+
+		if (start == end || end - start > 18) {
+			return Long.parseLong(getString(field));
+		}
+
+		long value = 0;
+		for (int i = start; i < end; i++) {
+			int digit = charAt(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return Long.parseLong(getString(field));
+			}
+			value = value * 10 + digit;
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Same results as Double.parseDouble(getString(field)). Plain decimals like "2577.0" with up to
+	 * 15 digits are parsed in place (exactly, as digits / 10^decimals); anything else (exponents,
+	 * long fractions, "NaN") goes through the JDK.
+	 */
+	public double getDouble(int field) {
+		check(field);
+		int start = starts[field];
+		int end = ends[field];
+		boolean negative = start < end && charAt(start) == '-';
+		if (start < end && (negative || charAt(start) == '+')) {
+			start++;
+		}
+
+		long digits = 0;
+		int digitCount = 0;
+		int decimals = -1;
+		for (int i = start; i < end; i++) {
+			int c = charAt(i);
+			if (c == '.' && decimals < 0) {
+				decimals = 0;
+				continue;
+			}
+			if (c < '0' || c > '9' || digitCount == 15) {
+				return Double.parseDouble(getString(field));
+			}
+			digits = digits * 10 + (c - '0');
+			digitCount++;
+			if (decimals >= 0) {
+				decimals++;
+			}
+		}
+
+		if (digitCount == 0) {
+			return Double.parseDouble(getString(field));
+		}
+
+		double value = decimals > 0 ? digits / POWERS_OF_TEN[decimals] : digits;
+		return negative ? -value : value;
+	}
+
+	// Same as Boolean.parseBoolean(getString(field)): true only for "true", ignoring case
+	public boolean getBoolean(int field) {
+		check(field);
+		int start = starts[field];
+		if (ends[field] - start != 4) {
+			return false;
+		}
+		return (charAt(start) | 0x20) == 't' && (charAt(start + 1) | 0x20) == 'r' && (charAt(start + 2) | 0x20) == 'u'
+				&& (charAt(start + 3) | 0x20) == 'e';
+	}
+
+	// Every field as a String, like line.split("\\|", -1)
+	public String[] toArray() {
+		String[] fields = new String[fieldCount];
+		for (int i = 0; i < fieldCount; i++) {
+			fields[i] = getString(i);
+		}
+		return fields;
+	}
+
+	// The whole line, e.g. for a warning
+	@Override
+	public String toString() {
+		if (chars != null) {
+			return new String(chars, lineStart, lineEnd - lineStart);
+		}
+		return new String(bytes, lineStart, lineEnd - lineStart, charset);
+	}
+}
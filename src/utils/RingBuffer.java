@@ -0,0 +1,88 @@
+package utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// A bounded, lock-free queue for many producer threads and ONE consumer thread.
+// Each slot carries a sequence number that tells producers and the consumer whose turn it is,
+// so offer() and poll() never block: offer() simply returns false when the buffer is full.
+public class RingBuffer<T>
+{
+	private final int mask;
+	private final AtomicReferenceArray<T> items;
+	private final AtomicLongArray sequences;
+
+	private final AtomicLong tail = new AtomicLong();	// Next slot producers will claim
+	private volatile long head;							// Next slot the consumer will read
+
+	// Capacity is rounded up to the next power of two
+	public RingBuffer(int capacity)
+	{
+		int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+
+		this.mask = size - 1;
+		this.items = new AtomicReferenceArray<>(size);
+		this.sequences = new AtomicLongArray(size);
+
+		for (int i = 0; i < size; i++)
+		{
+			sequences.set(i, i);
+		}
+	}
+
+	// Safe to call from any thread. Returns false if the buffer is full.
+	public boolean offer(T item)
+	{
+		while (true)
+		{
+			long position = tail.get();
+			int index = (int) (position & mask);
+			long difference = sequences.get(index) - position;
+
+			if (difference == 0)
+			{
+				// The slot is free, try to claim it
+				if (tail.compareAndSet(position, position + 1))
+				{
+					items.set(index, item);
+					sequences.set(index, position + 1);	// Publish to the consumer
+					return true;
+				}
+			}
+			else if (difference < 0)
+			{
+				return false;	// Still holds an item the consumer has not read yet
+			}
+		}
+	}
+
+	// Only the single consumer thread may call this. Returns null if the buffer is empty.
+	public T poll()
+	{
+		long position = head;
+		int index = (int) (position & mask);
+
+		if (sequences.get(index) != position + 1)
+		{
+			return null;
+		}
+
+		T item = items.get(index);
+		items.set(index, null);
+		sequences.set(index, position + mask + 1);	// Hand the slot back to producers
+		head = position + 1;
+		return item;
+	}
+
+	// Approximate number of queued items
+	public int size()
+	{
+		return (int) Math.max(0, tail.get() - head);
+	}
+
+	public int capacity()
+	{
+		return mask + 1;
+	}
+}
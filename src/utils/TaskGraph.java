@@ -0,0 +1,216 @@
+package utils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+// Runs a set of named tasks, each as soon as the tasks it depends on are done, so independent
+// tasks run at the same time. Remembers when every task started and finished and how much it
+// allocated, for report(). Used by Main to load the controllers.
+public class TaskGraph {
+	public static class Task {
+		private String name;
+		private List<Task> dependencies;
+		private volatile long startNanos;
+		private volatile long endNanos;
+		private volatile long allocatedBytes = -1;
+		private volatile long retainedBytes = -1;
+
+		public String getName() {
+			return name;
+		}
+
+		public long millis() {
+			return (endNanos - startNanos) / 1_000_000;
+		}
+
+		// Bytes allocated by the thread that ran the task, -1 if the JVM cannot tell
+		public long getAllocatedBytes() {
+			return allocatedBytes;
+		}
+
+		// Growth of the live heap over the task, -1 unless measureRetainedHeap() was called
+		public long getRetainedBytes() {
+			return retainedBytes;
+		}
+	}
+
+	private final long createdNanos = System.nanoTime();
+	private final ExecutorService pool;
+	private final Executor executor;
+	private final List<Task> tasks = new ArrayList<>();
+	private final List<CompletableFuture<?>> futures = new ArrayList<>();
+	private boolean measureRetainedHeap;
+
+	// 'parallel' false runs every task on the calling thread, in the order they were added
+	public TaskGraph(String threadName, boolean parallel) {
+		if (parallel) {
+			// A thread per ready task: the tasks are few, and mostly wait on the disk
+			this.pool = Executors.newCachedThreadPool(runnable -> {
+				Thread thread = new Thread(runnable, threadName);
+				thread.setDaemon(true);
+				return thread;
+			});
+			this.executor = pool;
+		} else {
+			this.pool = null;
+			this.executor = Runnable::run;
+		}
+	}
+
+	// Runs a full GC before and after every task to see how much of the heap it kept.
+	// Only meaningful when the tasks run one at a time (parallel = false), and slow, so benchmarks only.
+	public synchronized void measureRetainedHeap() {
+		this.measureRetainedHeap = true;
+	}
+
+	/**
+	 * Adds a task that runs once all of its dependencies are done.
+	 * The task can join() its dependencies' futures without blocking.
+	 */
+	public synchronized <T> CompletableFuture<T> add(String name, Supplier<T> work, CompletableFuture<?>... dependencies) {
+		Task task = new Task();
+		task.name = name;
+		task.dependencies = new ArrayList<>();
+		for (CompletableFuture<?> dependency : dependencies) {
+			task.dependencies.add(tasks.get(futures.indexOf(dependency)));
+		}
+
+		boolean measureHeap = measureRetainedHeap;
+		CompletableFuture<T> future = CompletableFuture.allOf(dependencies).thenApplyAsync(ignored -> {
+			long heapBefore = measureHeap ? usedHeapAfterGc() : 0;
+			long allocatedBefore = allocatedBytes();
+			task.startNanos = System.nanoTime();
+			try {
+				return work.get();
+			} finally {
+				task.endNanos = System.nanoTime();
+				long allocatedAfter = allocatedBytes();
+				if (allocatedBefore >= 0 && allocatedAfter >= 0) {
+					task.allocatedBytes = allocatedAfter - allocatedBefore;
+				}
+				if (measureHeap) {
+					task.retainedBytes = usedHeapAfterGc() - heapBefore;
+				}
+			}
+		}, executor);
+
+		tasks.add(task);
+		futures.add(future);
+		return future;
+	}
+
+	// Bytes allocated so far by the current thread (HotSpot only), or -1
+	private static long allocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getCurrentThreadAllocatedBytes();
+		}
+		return -1;
+	}
+
+	private static long usedHeapAfterGc() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	// Every task added so far, in the order they were added
+	public synchronized List<Task> getTasks() {
+		return new ArrayList<>(tasks);
+	}
+
+	// Time from creating the graph until the last task finished
+	public synchronized long getTotalMillis() {
+		long end = createdNanos;
+		for (Task task : tasks) {
+			end = Math.max(end, task.endNanos);
+		}
+		return (end - createdNanos) / 1_000_000;
+	}
+
+	// Waits for every task. If one failed, its exception is thrown here.
+	public void await() {
+		try {
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		} finally {
+			if (pool != null) {
+				pool.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * One line per task (when it ran, relative to the start) and the critical path:
+	 * the chain of dependencies that ended last, which no amount of parallelism can shorten.
+	 * Call after await().
+	 */
+	public synchronized List<String> report() {
+		List<String> lines = new ArrayList<>();
+		Task last = null;
+
+		for (Task task : tasks) {
+			StringBuilder line = new StringBuilder(String.format("%-14s %6d -> %6d ms  (%d ms)", task.name,
+					(task.startNanos - createdNanos) / 1_000_000, (task.endNanos - createdNanos) / 1_000_000, task.millis()));
+
+			if (!task.dependencies.isEmpty()) {
+				line.append("  after ");
+				for (int i = 0; i < task.dependencies.size(); i++) {
+					line.append(i > 0 ? ", " : "").append(task.dependencies.get(i).name);
+				}
+			}
+			lines.add(line.toString());
+
+			if (last == null || task.endNanos > last.endNanos) {
+				last = task;
+			}
+		}
+
+		if (last == null) {
+			return lines;
+		}
+
+		// Walk back from the task that finished last, always through the dependency that finished last
+		List<Task> path = new ArrayList<>();
+		for (Task task = last; task != null; ) {
+			path.add(task);
+
+			Task latest = null;
+			for (Task dependency : task.dependencies) {
+				if (latest == null || dependency.endNanos > latest.endNanos) {
+					latest = dependency;
+				}
+			}
+			task = latest;
+		}
+		Collections.reverse(path);
+
+		StringBuilder line = new StringBuilder("Critical path: ");
+		long pathMillis = 0;
+		for (int i = 0; i < path.size(); i++) {
+			line.append(i > 0 ? " -> " : "").append(path.get(i).name).append(" (").append(path.get(i).millis())
+					.append(" ms)");
+			pathMillis += path.get(i).millis();
+		}
+		line.append(" = ").append(pathMillis).append(" ms of ").append((last.endNanos - createdNanos) / 1_000_000)
+				.append(" ms total");
+		lines.add(line.toString());
+
+		return lines;
+	}
+}
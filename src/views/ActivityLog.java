@@ -3,17 +3,19 @@ package views;
 import static main.Main.currentUser;
 import static main.Main.scanner;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.IOException;
-import java.util.ArrayList;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 
+import controllers.LogManager;
 import interfaces.Colorable;
 import main.Main;
 
 public class ActivityLog
 {
+	private static final int PAGE_SIZE = 25;
+
 	public static void showActivityLog()
 	{
 		System.out.println("\n\n"
@@ -24,45 +26,102 @@ public class ActivityLog
 						 + "  |  " + Colorable.YELLOW + "░▀░▀░▀▀▀░░▀░░▀▀▀░░▀░░▀▀▀░░▀░░░▀░░░░▀▀▀░▀▀▀░▀▀▀" + Colorable.RESET + "                                                                                                                 |\n"
 						 + "  |_________________________________________________________________________________________________________________________________________________________________|\n");
 
-		System.out.println(Colorable.YELLOW + "      [DATE & TIME]\t      [USER]\t[Activity]" + Colorable.RESET);
-		List<String> userLogs = new ArrayList<>();
+		int page = 0;
 
-		try (BufferedReader reader = new BufferedReader(new FileReader("activity_log.txt")))
+		while (true)
 		{
-			String line;
+			// The index hands us only this page of the user's entries, newest first
+			int totalEntries = LogManager.getUserEntryCount(currentUser.getUsername());
+			int totalPages = Math.max(1, (totalEntries + PAGE_SIZE - 1) / PAGE_SIZE);
+			List<String> userLogs = LogManager.getUserEntries(currentUser.getUsername(), page * PAGE_SIZE, PAGE_SIZE);
+
+			System.out.println(Colorable.YELLOW + "      [DATE & TIME]\t      [USER]\t[Activity]" + Colorable.RESET);
+
+			if (userLogs.isEmpty())
+			{
+				System.out.println("You have no activity logged yet.");
+			}
 
-			while ((line = reader.readLine()) != null)
+			else
 			{
-				// We check if the line contains the user's name
-				if (line.contains("| " + currentUser.getUsername() + " |"))
+				for (String log : userLogs)
 				{
-					userLogs.add(line);
+					System.out.println("    ◉ " + log);
 				}
 			}
+
+			Main.fillUpList(PAGE_SIZE + 2, userLogs.size(), "");
+
+			System.out.println("\n    Page " + (page + 1) + " of " + totalPages);
+			System.out.print("    ([N] - Next Page, [P] - Previous Page, [D] - Search by Date, or press Enter to go back to the dashboard)");
+			String choice = scanner.nextLine().trim();
+
+			if (choice.equalsIgnoreCase("N") && page < totalPages - 1)
+			{
+				page++;
+			}
+
+			else if (choice.equalsIgnoreCase("P") && page > 0)
+			{
+				page--;
+			}
+
+			else if (choice.equalsIgnoreCase("D"))
+			{
+				showEntriesOnDate();
+			}
+
+			else if (choice.isEmpty())
+			{
+				break;
+			}
+
+			Main.clearScreen();
 		}
+	}
+
+	// Shows the user's entries of a single day. Only the log segments covering that day are opened.
+	private static void showEntriesOnDate()
+	{
+		System.out.print("\n    Enter a date (yyyy-MM-dd): ");
+		String input = scanner.nextLine().trim();
 
-		catch (IOException e)
+		LocalDate date;
+		try
 		{
-			System.err.println("Error reading activity log: " + e.getMessage());
+			date = LocalDate.parse(input);
 		}
+		catch (DateTimeParseException e)
+		{
+			System.out.println(Colorable.RED + "    Invalid date. Please use the format yyyy-MM-dd." + Colorable.RESET);
+			System.out.print("    (Press Enter to go back)");
+			scanner.nextLine();
+			return;
+		}
+
+		List<String> dayLogs = LogManager.query(currentUser.getUsername(), date.atStartOfDay(), date.atTime(LocalTime.MAX), PAGE_SIZE);
 
-		if (userLogs.isEmpty())
+		System.out.println("\n" + Colorable.YELLOW + "      [DATE & TIME]\t      [USER]\t[Activity]" + Colorable.RESET);
+
+		if (dayLogs.isEmpty())
 		{
-			System.out.println("You have no activity logged yet.");
+			System.out.println("    You have no activity logged on " + date + ".");
 		}
 
 		else
 		{
-			// Show the newest logs first
-			for (int i = userLogs.size() - 1; i >= 0; i--)
+			for (String log : dayLogs)
 			{
-				System.out.println("    ◉ " + userLogs.get(i));
+				System.out.println("    ◉ " + log);
 			}
-		}
 
-		Main.fillUpList(27, userLogs.size(), "");
+			if (dayLogs.size() == PAGE_SIZE)
+			{
+				System.out.println("    (Showing the latest " + PAGE_SIZE + " entries of that day)");
+			}
+		}
 
-		System.out.print("\n    (Press Enter to go back to the dashboard)");
+		System.out.print("\n    (Press Enter to go back)");
 		scanner.nextLine();
 	}
-}
\ No newline at end of file
+}
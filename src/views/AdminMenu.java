@@ -6,13 +6,10 @@ import static main.Main.purchaseManager;
 import static main.Main.codeManager;
 import static main.Main.userManager;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
 
 import controllers.AlertManager;
+import controllers.LogManager;
 import interfaces.Colorable;
 import main.Main;
 import models.Hangpie;
@@ -133,35 +130,17 @@ public class AdminMenu {
 	}
 
 	private static void showRecentAdminActivity() {
-		List<String> adminLogs = new ArrayList<>();
-
-		try (BufferedReader reader = new BufferedReader(new FileReader("activity_log.txt"))) {
-			String line;
-
-			while ((line = reader.readLine()) != null) {
-				// We check if the line contains the user's name
-				if (line.contains("| " + currentUser.getUsername() + " |")) {
-					adminLogs.add(line);
-				}
-			}
-		}
-
-		catch (IOException e) {
-			System.err.println("  |                              |\tError reading activity log: " + e.getMessage());
-		}
+		// Only the 5 newest entries are read, straight from the log index
+		List<String> adminLogs = LogManager.getUserEntries(currentUser.getUsername(), 0, 5);
 
 		if (adminLogs.isEmpty()) {
 			System.out.println("  |                              |\tYou have no activity logged yet.");
 		}
 
 		else {
-			// Show the newest logs first
-			for (int i = adminLogs.size() - 1; i >= 0; i--) {
-				if (i == adminLogs.size() - 6) {
-					break;
-				}
-
-				System.out.println("  |                              |\t◉ " + adminLogs.get(i));
+			// Already newest first
+			for (String log : adminLogs) {
+				System.out.println("  |                              |\t◉ " + log);
 			}
 		}
 	}
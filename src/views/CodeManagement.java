@@ -64,7 +64,8 @@ public class CodeManagement implements Colorable {
 
 			int created = codeManager.generateCodes(quantity, goldValue);
 
-			AlertManager.setSuccess("Successfully generated " + created + " new codes.");
+			AlertManager.setSuccess(String.format("Successfully generated %d new codes (%.0f codes/sec).", created,
+					codeManager.getLastGenerationRate()));
 
 		} catch (NumberFormatException e) {
 			AlertManager.setError("Invalid number. Please enter numeric values.");
@@ -1,14 +1,15 @@
 package views;
 
 import static main.Main.currentUser;
+import static main.Main.goldLedger;
 import static main.Main.scanner;
 import static main.Main.userManager;
-import static main.Main.listingManager;
+import static main.Main.transactionManager;
 
 import java.util.List;
 import models.Hangpie;
+import models.LedgerEntry;
 import controllers.AlertManager;
-import controllers.LogManager;
 import interfaces.Colorable;
 import main.Main;
 
@@ -200,18 +201,29 @@ public class Inventory
 		if (choice.equalsIgnoreCase("yes"))
 		{
 			// 1. Add gold to user
-			currentUser.addGold(sellPrice);
+			LedgerEntry payment = goldLedger.credit(currentUser, sellPrice, LedgerEntry.Reason.SHOP_SELL, petToSell.getUniqueId());
 
 			// 2. Remove pet from inventory
 			currentUser.removeToInventory(petToSell);
 
+			String logMsg = "Sold " + petToSell.getName() + " to the Shop for " + sellPrice + "G.";
+
 			// 3. Save all changes
-			userManager.updateUser(currentUser);
+			boolean saved = transactionManager.begin()
+					.updateUser(currentUser)
+					.gold(List.of(payment))
+					.log(currentUser.getUsername(), logMsg)
+					.commit();
 
-			AlertManager.setSuccess(petToSell.getName() + " has been sold. Your new balance: " + currentUser.getGoldBalance() + "G");
+			if (!saved)
+			{
+				currentUser.addToInventory(petToSell);
+				goldLedger.revert(List.of(payment));
+				AlertManager.setError("CRITICAL ERROR: The sale could not be saved. Please try again later.");
+				return;
+			}
 
-			String logMsg = "Sold " + petToSell.getName() + " to the Shop for " + sellPrice + "G.";
-			LogManager.log(currentUser.getUsername(), logMsg);
+			AlertManager.setSuccess(petToSell.getName() + " has been sold. Your new balance: " + currentUser.getGoldBalance() + "G");
 		}
 
 		else if (choice.equalsIgnoreCase("no"))
@@ -294,15 +306,22 @@ public class Inventory
 			// 3. Remove pet from user's inventory
 			currentUser.removeToInventory(petToList);
 
-			// 4. Create the new listing in the ListingManager
-			listingManager.createListing(currentUser, petToList, sellingPrice);
+			String logMsg = "Listed " + petToList.getName() + " on the P2P Marketplace for " + sellingPrice + "G.";
 
-			// 5. Save the user's updated inventory
-			userManager.updateUser(currentUser);
+			// 4. Create the new listing, save the user's updated inventory and add the
+			// Activity Log entry, all in one transaction
+			boolean saved = transactionManager.begin()
+					.createListing(currentUser, petToList, sellingPrice)
+					.updateUser(currentUser)
+					.log(currentUser.getUsername(), logMsg)
+					.commit();
 
-			// 6. Add new log to the Activity Log
-			String logMsg = "Listed " + petToList.getName() + " on the P2P Marketplace for " + sellingPrice + "G.";
-			LogManager.log(currentUser.getUsername(), logMsg);
+			if (!saved)
+			{
+				currentUser.addToInventory(petToList);
+				AlertManager.setError("CRITICAL ERROR: The listing could not be saved. Please try again later.");
+				return;
+			}
 			
 			AlertManager.setSuccess(petToList.getName() + " is now listed on the Marketplace for " + sellingPrice + "G!");
 		}
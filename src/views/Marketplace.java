@@ -1,25 +1,37 @@
 package views;
 
+import static main.Main.buyOrderManager;
 import static main.Main.currentUser;
 import static main.Main.listingManager;
+import static main.Main.marketEngine;
 import static main.Main.productManager;
 import static main.Main.scanner;
-import static main.Main.userManager;
 
 import java.util.ArrayList;
 import java.util.List;
+import models.BuyOrder;
 import models.Hangpie;
 import models.Listing;
-import models.User;
 import controllers.AlertManager;
-import controllers.LogManager;
+import controllers.ListingPage;
+import controllers.ListingQuery;
 import interfaces.Colorable;
 import main.Main;
 
 public class Marketplace
 {
+	private static final int PAGE_SIZE = 15;
+
 	public static void showMarketplace()
 	{
+		ListingQuery.Sort sort = ListingQuery.Sort.PRICE_LOW;
+		Hangpie productFilter = null;
+
+		// Where each page up to the current one starts (the last listing of the page before it),
+		// so [P] can go back. The first page starts at the beginning (null).
+		List<Listing> pageStarts = new ArrayList<>();
+		pageStarts.add(null);
+
 		while (true)
 		{
 			Main.clearScreen();
@@ -32,12 +44,19 @@ public class Marketplace
 
 			System.out.println("    Here you can buy unique Hangpies from other players. Your Gold Balance: " + Colorable.YELLOW+ currentUser.getGoldBalance() + " G" + Colorable.RESET + "\n");
 
-			// 1. Get the list of listings
-			List<Listing> listings = new ArrayList<>(listingManager.getAllListings());
+			// 1. Get this page of the listings
+			ListingPage page = listingManager.query(new ListingQuery()
+					.product(productFilter == null ? null : productFilter.getId())
+					.sort(sort)
+					.limit(PAGE_SIZE)
+					.after(pageStarts.get(pageStarts.size() - 1)));
+			List<Listing> listings = page.getListings();
+
+			System.out.println("    Sorted by " + describe(sort) + (productFilter == null ? "" : ", showing " + productFilter.getName() + " only") + "\n");
 			
 			if (listings.isEmpty())
 			{
-				System.out.println("    The marketplace is currently empty. Check back later!");
+				System.out.println(productFilter == null ? "    The marketplace is currently empty. Check back later!" : "    No listings of this Hangpie right now.");
 			}
 
 			else
@@ -52,15 +71,19 @@ public class Marketplace
 				
 			}
 			
-			Main.fillUpList(19, listings.size(), "");
+			Main.fillUpList(PAGE_SIZE + 2, listings.size(), "");
+
+			System.out.println("    Page " + pageStarts.size() + (page.hasNext() ? "" : " (last)") + "    ([N] - Next Page, [P] - Previous Page, [S] - Change Sorting, [F] - Filter by Hangpie)");
 			
 			System.out.println("\n  " + AlertManager.getAndClearAlert());
 
 			System.out.println("\n  [Options]:");
 			System.out.println("  [1] - Buy a Hangpie from a Player");
-			System.out.println("  [2] - Back to Dashboard");
+			System.out.println("  [2] - Place a Buy Order");
+			System.out.println("  [3] - My Buy Orders");
+			System.out.println("  [4] - Back to Dashboard");
 			System.out.print("  " + Colorable.BLUE + "[Enter your choice]: " + Colorable.RESET);
-			String choice = scanner.nextLine();
+			String choice = scanner.nextLine().trim();
 
 			if (choice.equals("1"))
 			{
@@ -71,16 +94,64 @@ public class Marketplace
 
 				else
 				{
-					// 3. Pass the list to the "buy" method
+					// 3. Pass the page to the "buy" method
 					doBuyFromMarketplace(listings);
 				}
 			}
 
 			else if (choice.equals("2"))
+			{
+				doPlaceBuyOrder();
+			}
+
+			else if (choice.equals("3"))
+			{
+				showMyBuyOrders();
+			}
+
+			else if (choice.equals("4"))
 			{
 				break;
 			}
 
+			else if (choice.equalsIgnoreCase("N"))
+			{
+				if (page.hasNext())
+				{
+					pageStarts.add(page.getLast());
+				}
+
+				else
+				{
+					AlertManager.setError("This is the last page.");
+				}
+			}
+
+			else if (choice.equalsIgnoreCase("P"))
+			{
+				if (pageStarts.size() > 1)
+				{
+					pageStarts.remove(pageStarts.size() - 1);
+				}
+
+				else
+				{
+					AlertManager.setError("This is the first page.");
+				}
+			}
+
+			else if (choice.equalsIgnoreCase("S"))
+			{
+				sort = nextSort(sort);
+				pageStarts.subList(1, pageStarts.size()).clear();
+			}
+
+			else if (choice.equalsIgnoreCase("F"))
+			{
+				productFilter = askProductFilter(productFilter);
+				pageStarts.subList(1, pageStarts.size()).clear();
+			}
+
 			else
 			{
 				AlertManager.setError("Invalid choice.");
@@ -89,6 +160,192 @@ public class Marketplace
 		}
 	}
 
+	private static ListingQuery.Sort nextSort(ListingQuery.Sort sort)
+	{
+		switch (sort)
+		{
+		case PRICE_LOW:
+			return ListingQuery.Sort.PRICE_HIGH;
+		case PRICE_HIGH:
+			return ListingQuery.Sort.LEVEL_HIGH;
+		case LEVEL_HIGH:
+			return ListingQuery.Sort.LEVEL_LOW;
+		default:
+			return ListingQuery.Sort.PRICE_LOW;
+		}
+	}
+
+	private static String describe(ListingQuery.Sort sort)
+	{
+		switch (sort)
+		{
+		case PRICE_HIGH:
+			return "price (highest first)";
+		case LEVEL_HIGH:
+			return "level (highest first)";
+		case LEVEL_LOW:
+			return "level (lowest first)";
+		default:
+			return "price (lowest first)";
+		}
+	}
+
+	// Asks for a Hangpie's name or product ID. Returns the product to show, or null for all.
+	private static Hangpie askProductFilter(Hangpie current)
+	{
+		System.out.print("  [Enter a Hangpie name or product ID, or press Enter to show all] : ");
+		String input = scanner.nextLine().trim();
+
+		if (input.isEmpty())
+		{
+			return null;
+		}
+
+		Hangpie product = findProduct(input);
+		return product != null ? product : current;
+	}
+
+	// Finds a product by its ID or name (any case). Sets the error and returns null if there is none.
+	private static Hangpie findProduct(String input)
+	{
+		for (Hangpie product : productManager.getAllProducts())
+		{
+			if (product.getId().equalsIgnoreCase(input) || product.getName().equalsIgnoreCase(input))
+			{
+				return product;
+			}
+		}
+
+		AlertManager.setError("No Hangpie called \"" + input + "\" was found.");
+		return null;
+	}
+
+	// A standing offer: bought automatically as soon as a matching Hangpie is listed
+	private static void doPlaceBuyOrder()
+	{
+		System.out.print("  [Enter the Hangpie name or product ID you want to buy] : ");
+		Hangpie product = findProduct(scanner.nextLine().trim());
+
+		if (product == null)
+		{
+			return;
+		}
+
+		double maxPrice;
+		int minLevel = 0;
+
+		try
+		{
+			System.out.print("  [Enter the most you will pay, in Gold] : ");
+			maxPrice = Double.parseDouble(scanner.nextLine().trim());
+
+			System.out.print("  [Enter the lowest level you accept, or press Enter for any level] : ");
+			String inputLevel = scanner.nextLine().trim();
+
+			if (!inputLevel.isEmpty())
+			{
+				minLevel = Integer.parseInt(inputLevel);
+			}
+		}
+
+		catch (NumberFormatException e)
+		{
+			AlertManager.setError("Invalid input. Please enter a number.");
+			return;
+		}
+
+		if (maxPrice <= 0 || minLevel < 0)
+		{
+			AlertManager.setError("The price must be more than 0 and the level cannot be negative.");
+			return;
+		}
+
+		switch (marketEngine.placeOrder(currentUser, product.getId(), maxPrice, minLevel).join())
+		{
+		case FILLED:
+			AlertManager.setSuccess("A matching " + product.getName() + " was for sale, and it is now yours!");
+			break;
+		case OPEN:
+			AlertManager.setSuccess("Buy order placed. You will get the first " + product.getName() + " listed for " + maxPrice + "G or less.");
+			break;
+		case NOT_ENOUGH_GOLD:
+			AlertManager.setError("Not enough gold. You need " + maxPrice + " G to place this order.");
+			break;
+		case NOT_SAVED:
+			AlertManager.setError("CRITICAL ERROR: The buy order could not be saved. Please try again later.");
+			break;
+		default:
+			AlertManager.setError("CRITICAL ERROR: That Hangpie no longer exists.");
+		}
+	}
+
+	private static void showMyBuyOrders()
+	{
+		List<BuyOrder> orders = buyOrderManager.getOrdersOf(currentUser.getUsername());
+
+		System.out.println("\n  " + Colorable.YELLOW + "[Your Buy Orders]" + Colorable.RESET);
+
+		if (orders.isEmpty())
+		{
+			System.out.println("    You have no open buy orders.");
+			System.out.print("    (Press Enter to go back)");
+			scanner.nextLine();
+			return;
+		}
+
+		int count = 1;
+
+		for (BuyOrder order : orders)
+		{
+			Hangpie product = productManager.getProductById(order.getProductId());
+			String name = product != null ? product.getName() : order.getProductId();
+			String level = order.getMinLevel() > 0 ? "Lvl " + order.getMinLevel() + "+" : "Any Level";
+
+			System.out.println(String.format("    %d. [BUY ORDER #%d] [%s] [%s] [Max Price: %.2fG]", count++, order.getId(), name, level, order.getMaxPrice()));
+		}
+
+		System.out.print("  [Enter the number of an order to cancel, or press Enter to go back] : ");
+		String input = scanner.nextLine().trim();
+
+		if (input.isEmpty())
+		{
+			return;
+		}
+
+		int orderNumber;
+
+		try
+		{
+			orderNumber = Integer.parseInt(input);
+
+			if (orderNumber < 1 || orderNumber > orders.size())
+			{
+				AlertManager.setError("Invalid number. Enter a valid number from the list");
+				return;
+			}
+		}
+
+		catch (NumberFormatException e)
+		{
+			AlertManager.setError("Invalid input. Please enter a number.");
+			return;
+		}
+
+		BuyOrder order = orders.get(orderNumber - 1);
+
+		switch (marketEngine.cancelOrder(currentUser, order.getId()).join())
+		{
+		case CANCELLED:
+			AlertManager.setSuccess("Buy order #" + order.getId() + " was cancelled.");
+			break;
+		case NOT_SAVED:
+			AlertManager.setError("CRITICAL ERROR: The cancellation could not be saved. Please try again later.");
+			break;
+		default:
+			AlertManager.setError("That order was just filled or is no longer open.");
+		}
+	}
+
 	private static void doBuyFromMarketplace(List<Listing> listings)
 	{
 		System.out.print("  [Enter the number of the pet you wish to buy] : ");	
@@ -114,6 +371,13 @@ public class Marketplace
 		}
 
 		Listing listing = listings.get(sellNumber - 1);
+
+		// The page may have been on screen for a while
+		if (listingManager.getListing(listing.getPetId()) != listing)
+		{
+			AlertManager.setError("Sorry, that Hangpie is no longer for sale.");
+			return;
+		}
 		
 		// Confirmation
 		System.out.print(Colorable.YELLOW + "  [Are you sure you want to buy " + listing.getPetName() + " for " + listing.getPrice() + "G? (YES / NO)]: " + Colorable.RESET);
@@ -121,70 +385,30 @@ public class Marketplace
 		
 		if (choice.equalsIgnoreCase("YES"))
 		{
-			if (listing.getSellerUsername().equals(currentUser.getUsername()))
+			// The market engine moves the gold and the pet and saves it all in one transaction
+			switch (marketEngine.buy(currentUser, listing).join())
 			{
+			case FILLED:
+				AlertManager.setSuccess("Congratulations! You have purchased " + listing.getPetName() + " from " + listing.getSellerUsername() + "!");
+				break;
+			case OWN_LISTING:
 				AlertManager.setError("You cannot buy your own item.");
-				return;
-			}
-
-			if (currentUser.getGoldBalance() < listing.getPrice())
-			{
+				break;
+			case NOT_ENOUGH_GOLD:
 				AlertManager.setError("Not enough gold. You need " + listing.getPrice() + " G.");
-				return;
-			}
-
-			User seller = userManager.getUserByUsername(listing.getSellerUsername());
-
-
-			if (seller == null)
-			{
+				break;
+			case SELLER_GONE:
 				AlertManager.setError("CRITICAL ERROR: The seller no longer exists. Cancelling sale.");
-				listingManager.removeListing(listing.getUniqueId());
-				return;
-			}
-			
-			// 1. Transfer Gold
-			currentUser.subtractGold(listing.getPrice());
-			seller.addGold(listing.getPrice());
-
-			// 2. "Rebuild" the Hangpie
-			Hangpie blueprint = productManager.getProductById(listing.getProductId());
-
-			if (blueprint == null)
-			{
+				break;
+			case NO_PRODUCT:
 				AlertManager.setError("CRITICAL ERROR: The original product blueprint no longer exists. Cancelling.");
-				return;
+				break;
+			case NOT_SAVED:
+				AlertManager.setError("CRITICAL ERROR: The purchase could not be saved. Please try again later.");
+				break;
+			default:
+				AlertManager.setError("Sorry, that Hangpie is no longer for sale.");
 			}
-
-			// Create a new copy
-			Hangpie purchasedPet = new Hangpie(blueprint);
-
-			purchasedPet.setUniqueId(listing.getUniqueId());
-			purchasedPet.setName(listing.getPetName());
-			purchasedPet.setLevel(listing.getPetLevel());
-			purchasedPet.setMaxHealth(listing.getPetHealth());
-			purchasedPet.setAttackPower(listing.getPetAttack());
-			purchasedPet.setCurrentExp(listing.getPetExp());
-
-			// 3. Add pet to buyer's inventory
-			currentUser.addToInventory(purchasedPet);
-
-			// 4. Remove listing from marketplace
-			listingManager.removeListing(listing.getUniqueId());
-
-			// 5. Save both users and the listings
-			userManager.updateUser(currentUser);
-			userManager.updateUser(seller);
-
-			// Update Buyer's Activity Log
-			String logMsg = "Bought " + purchasedPet.getName() + " from " + seller.getUsername() + " for " + listing.getPrice() + "G.";
-			LogManager.log(currentUser.getUsername(), logMsg);
-
-			// Update Seller's Activity Log
-			String sellerLogMsg = "Sold " + purchasedPet.getName() + " to " + currentUser.getUsername() + " for " + listing.getPrice() + "G.";
-			LogManager.log(seller.getUsername(), sellerLogMsg);
-
-			AlertManager.setSuccess("Congratulations! You have purchased " + purchasedPet.getName() + " from " + seller.getUsername() + "!");
 		}
 		
 		else if (choice.equalsIgnoreCase("NO"))
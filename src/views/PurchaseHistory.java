@@ -12,6 +12,8 @@ import models.Purchase;
 
 public class PurchaseHistory
 {
+	private static final int PAGE_SIZE = 26;
+
 	public static void showPurchaseHistory()
 	{
 		System.out.println("\n\n   _________________________________________________________________________________________________________________________________________________________________ \n"
@@ -21,24 +23,47 @@ public class PurchaseHistory
 						 + "  |  " + Colorable.YELLOW + "░▀░▀░░▀░░░░▀░░░▀▀▀░▀░▀░▀▀▀░▀░▀░▀░▀░▀▀▀░▀▀▀░░░▀░▀░▀▀▀░▀▀▀░░▀░░▀▀▀░▀░▀░░▀░" + Colorable.RESET + "                                                                                       |\n"
 						 + "  |_________________________________________________________________________________________________________________________________________________________________|\n");
 
-		List<Purchase> history = purchaseManager.getPurchasesForUser(currentUser.getUsername());
+		int page = 0;
 
-		if (history.isEmpty())
-		{
-			System.out.println("You have not purchased any items yet.");
-		}
-		else
+		while (true)
 		{
-			// Loop in reverse to show newest first
-			for (int i = history.size() - 1; i >= 0; i--)
+			// Only this page of purchases is read, newest first
+			int totalPurchases = purchaseManager.getPurchaseCountForUser(currentUser.getUsername());
+			int totalPages = Math.max(1, (totalPurchases + PAGE_SIZE - 1) / PAGE_SIZE);
+			List<Purchase> history = purchaseManager.getPurchasesForUser(currentUser.getUsername(), page * PAGE_SIZE, PAGE_SIZE);
+
+			if (history.isEmpty())
 			{
-				System.out.println("    ◉ " + history.get(i).toString());
+				System.out.println("You have not purchased any items yet.");
 			}
-		}
-		
-		Main.fillUpList(28, history.size(), "");
+			else
+			{
+				for (Purchase purchase : history)
+				{
+					System.out.println("    ◉ " + purchase.toString());
+				}
+			}
+			
+			Main.fillUpList(PAGE_SIZE + 2, history.size(), "");
+
+			System.out.println("\n    Page " + (page + 1) + " of " + totalPages);
+			System.out.print("    ([N] - Next Page, [P] - Previous Page, or press Enter to go back to the dashboard)");
+			String choice = scanner.nextLine().trim(); // Wait for user to press Enter
 
-		System.out.print("\n    (Press Enter to go back to the dashboard)");
-		scanner.nextLine(); // Wait for user to press Enter
+			if (choice.equalsIgnoreCase("N") && page < totalPages - 1)
+			{
+				page++;
+			}
+			else if (choice.equalsIgnoreCase("P") && page > 0)
+			{
+				page--;
+			}
+			else if (choice.isEmpty())
+			{
+				break;
+			}
+
+			Main.clearScreen();
+		}
 	}
-}
\ No newline at end of file
+}
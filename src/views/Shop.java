@@ -1,19 +1,19 @@
 package views;
 
 import static main.Main.currentUser;
+import static main.Main.goldLedger;
 import static main.Main.productManager;
-import static main.Main.purchaseManager;
 import static main.Main.scanner;
-import static main.Main.userManager;
+import static main.Main.transactionManager;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
 import models.Hangpie;
+import models.LedgerEntry;
 import models.Purchase;
 import controllers.AlertManager;
-import controllers.LogManager;
 import interfaces.Colorable;
 import main.Main;
 
@@ -138,7 +138,10 @@ public class Shop implements Colorable
 				return;
 			}
 
-			if (currentUser.subtractGold(product.getPrice()))
+			// Holds the gold now; it leaves the balance when the purchase below is saved
+			LedgerEntry payment = goldLedger.debit(currentUser, product.getPrice(), LedgerEntry.Reason.SHOP_BUY, product.getId());
+
+			if (payment != null)
 			{
 				// Create the local copy
 				Hangpie ownedPet = new Hangpie(product);
@@ -146,16 +149,29 @@ public class Shop implements Colorable
 				// Add to inventory
 				currentUser.addToInventory(ownedPet);
 				
-				// Update the user data (which saves their inventory)
-				userManager.updateUser(currentUser);
-				
 				// Create purchase record
 				Purchase newPurchase = new Purchase(currentUser.getUsername(), ownedPet.getId(), ownedPet.getName(), ownedPet.getPrice());
-				purchaseManager.addPurchase(newPurchase);
 				
 				// Log the activity
 				String logMsg = "Bought " + ownedPet.getName() + " from the Shop for " + ownedPet.getPrice() + "G.";
-				LogManager.log(currentUser.getUsername(), logMsg);
+				
+				// Save the user data (which saves their inventory) and the purchase together
+				boolean saved = transactionManager.begin()
+						.updateUser(currentUser)
+						.gold(List.of(payment))
+						.addPurchase(newPurchase)
+						.log(currentUser.getUsername(), logMsg)
+						.commit();
+				
+				if (!saved)
+				{
+					// Nothing was saved, so undo the changes in memory too
+					currentUser.removeToInventory(ownedPet);
+					goldLedger.revert(List.of(payment));
+					
+					AlertManager.setError("CRITICAL ERROR: The purchase could not be saved. Please try again later.");
+					return;
+				}
 				
 				AlertManager.setSuccess("Congratulations! You have successfully purchased: " + ownedPet.getName() + ", the item is added to the inventory. Your new balance: " + currentUser.getGoldBalance() + " G");
 			}
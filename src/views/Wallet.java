@@ -2,22 +2,23 @@ package views;
 
 import static main.Main.codeManager;
 import static main.Main.currentUser;
+import static main.Main.goldLedger;
 import static main.Main.scanner;
-import static main.Main.userManager;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 import controllers.AlertManager;
 import controllers.LogManager;
+import models.LedgerEntry;
 import interfaces.Colorable;
 import main.Main;
 
 public class Wallet
 {
+	// Only the newest redemptions fit on the screen
+	private static final int MAX_REDEEM_HISTORY = 15;
+
 	public static void showWalletMenu()
 	{
 		while (true)
@@ -71,8 +72,16 @@ public class Wallet
 		// IF goldValue is greater than 0
 		if (goldValue > 0)
 		{
-			currentUser.addGold(goldValue);
-			userManager.updateUser(currentUser);
+			// Only the ledger entry is written, the user's row is left as it is
+			LedgerEntry credit = goldLedger.credit(currentUser, goldValue, LedgerEntry.Reason.CODE_REDEEM, codeString);
+			if (!goldLedger.post(List.of(credit)))
+			{
+				// The code was already marked used, so give it back too
+				goldLedger.revert(List.of(credit));
+				codeManager.releaseCode(codeString);
+				AlertManager.setError("CRITICAL ERROR: The gold could not be saved, so the code was not used. Please try again later.");
+				return;
+			}
 			
 			AlertManager.setSuccess("Success! " + goldValue + "G has been added to your wallet.");
 
@@ -92,23 +101,29 @@ public class Wallet
 	private static void showRedeemHistory()
 	{
 		List<String> redeemHistory = new ArrayList<>();
-		
-		try (BufferedReader reader = new BufferedReader(new FileReader("activity_log.txt")))
+
+		// Walk only this user's log entries (newest first), one page at a time
+		int scanned = 0;
+		int total = LogManager.getUserEntryCount(currentUser.getUsername());
+
+		while (scanned < total && redeemHistory.size() < MAX_REDEEM_HISTORY)
 		{
-			String line;
-			
-			while ((line = reader.readLine()) != null)
+			List<String> page = LogManager.getUserEntries(currentUser.getUsername(), scanned, 100);
+
+			if (page.isEmpty())
 			{
-				if (line.contains("| " + currentUser.getUsername() + " |") && line.contains("Redeemed code"))
+				break;
+			}
+
+			for (String line : page)
+			{
+				if (line.contains("Redeemed code") && redeemHistory.size() < MAX_REDEEM_HISTORY)
 				{
 					redeemHistory.add(line);
 				}
 			}
-		}
-		
-		catch (IOException e)
-		{
-			AlertManager.setError("Error reading activity log: " + e.getMessage());
+
+			scanned += page.size();
 		}
 		
 		if (redeemHistory.isEmpty())
@@ -118,12 +133,12 @@ public class Wallet
 		
 		else
 		{
-			// Show the newest logs first
+			// The list is already newest first
 			System.out.println(Colorable.YELLOW + "   [REDEEMED CODE HISTORY]\n" + Colorable.RESET);
 			
-			for (int i = redeemHistory.size() - 1; i >= 0; i--)
+			for (String line : redeemHistory)
 			{
-				System.out.println("   " + redeemHistory.get(i));
+				System.out.println("   " + line);
 			}
 		}
 		